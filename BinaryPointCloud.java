@@ -0,0 +1,348 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads and writes point clouds in a compact binary columnar format ('.pcb'),
+ * so that a cloud that is clustered many times is parsed from text only once.
+ *
+ * All values are little-endian. The file is a 32 byte header followed by the columns:
+ * - header: magic "PCB1", int version (1), int flags, int reserved, long number of points n, 8 reserved bytes
+ *   flags bit 0: coordinates are float64 (else float32), flags bit 1: the file has a label column
+ * - x[n], y[n], z[n]: coordinates as float64 or float32
+ * - label[n]: optional int32 cluster id of every point (0 for noise)
+ *
+ * Reading memory-maps the file and copies every column with one bulk get into the coordinate
+ * arrays of a PointCloud, there is no per-point parsing.
+ *
+ * It can also be run to convert a '.csv' file:
+ * java BinaryPointCloud <input.csv> <output.pcb> [--float32] [--header-lines <n>]
+ * @author Aksh Babbar (300034042)
+ */
+public class BinaryPointCloud {
+
+    public static final int MAGIC = 0x31424350; //"PCB1" read as a little-endian int
+    public static final int VERSION = 1;
+    public static final int FLAG_FLOAT64 = 1;
+    public static final int FLAG_LABELS = 2;
+    public static final int HEADER_SIZE = 32;
+    private static final int MAX_MAP = 1 << 30; //largest part of a column mapped at once
+    private static final int BUFFER_SIZE = 1 << 20; //size of the write buffer
+
+/**
+ * Reads the coordinates of a '.pcb' file
+ * @param filename  the input '.pcb' file
+ * @return PointCloud of the points in file order
+ * @throws IOException if the file cannot be read or is not a '.pcb' file
+ */
+    public static PointCloud read(String filename) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            ByteBuffer header = readHeader(channel);
+            int flags = header.getInt(8);
+            int n = count(header);
+            int width = (flags & FLAG_FLOAT64) != 0 ? 8 : 4;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double[] z = new double[n];
+            readColumn(channel, HEADER_SIZE, width, x);
+            readColumn(channel, HEADER_SIZE + (long) n * width, width, y);
+            readColumn(channel, HEADER_SIZE + 2L * n * width, width, z);
+            return new PointCloud(x, y, z, n);
+        }
+    }
+
+/**
+ * Reads the coordinates of a range of points of a '.pcb' file, so that a file larger than the heap can be
+ * read in parts (see PartitionedDBScan)
+ * @param filename  the input '.pcb' file
+ * @param from  position of the first point read
+ * @param count  number of points read, fewer if the file ends before
+ * @return PointCloud of the points in file order
+ * @throws IOException if the file cannot be read or is not a '.pcb' file
+ */
+    public static PointCloud read(String filename, int from, int count) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            ByteBuffer header = readHeader(channel);
+            int flags = header.getInt(8);
+            int n = count(header);
+            int width = (flags & FLAG_FLOAT64) != 0 ? 8 : 4;
+            int size = Math.max(0, Math.min(count, n - from));
+            double[] x = new double[size];
+            double[] y = new double[size];
+            double[] z = new double[size];
+            readColumn(channel, HEADER_SIZE + (long) from * width, width, x);
+            readColumn(channel, HEADER_SIZE + ((long) n + from) * width, width, y);
+            readColumn(channel, HEADER_SIZE + (2L * n + from) * width, width, z);
+            return new PointCloud(x, y, z, size);
+        }
+    }
+
+/**
+ * Reads the number of points of a '.pcb' file from its header
+ * @param filename  the input '.pcb' file
+ * @return int the number of points
+ * @throws IOException if the file cannot be read or is not a '.pcb' file
+ */
+    public static int size(String filename) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            return count(readHeader(channel));
+        }
+    }
+
+/**
+ * Reads the label column of a '.pcb' file
+ * @param filename  the input '.pcb' file
+ * @return int[] cluster id of every point, null if the file has no label column
+ * @throws IOException if the file cannot be read or is not a '.pcb' file
+ */
+    public static int[] readLabels(String filename) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            ByteBuffer header = readHeader(channel);
+            int flags = header.getInt(8);
+            if((flags & FLAG_LABELS) == 0){
+                return null;
+            }
+            int n = count(header);
+            int width = (flags & FLAG_FLOAT64) != 0 ? 8 : 4;
+            int[] labels = new int[n];
+            long offset = HEADER_SIZE + 3L * n * width;
+            for(int done = 0; done < n; ){
+                int part = Math.min(n - done, MAX_MAP / 4);
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset + 4L * done, 4L * part);
+                map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(labels, done, part);
+                done += part;
+            }
+            return labels;
+        }
+    }
+
+/**
+ * Writes a point cloud, and optionally the label of every point, to a '.pcb' file
+ * @param filename  the output '.pcb' file
+ * @param cloud  the coordinates of the points
+ * @param labels  cluster id of every point, null to write no label column
+ * @param float64  true to store the coordinates as float64, false for float32 (half the size, less precise)
+ * @throws IOException if the file cannot be written
+ */
+    public static void write(String filename, PointCloud cloud, int[] labels, boolean float64) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            write(channel, cloud, labels, float64);
+        }
+    }
+
+/**
+ * Writes a point cloud, and optionally the label of every point, in the '.pcb' format to a channel,
+ * e.g. a socket (see DistributedDBScan). The channel is not closed
+ * @param channel  the output channel
+ * @param cloud  the coordinates of the points
+ * @param labels  cluster id of every point, null to write no label column
+ * @param float64  true to store the coordinates as float64, false for float32 (half the size, less precise)
+ * @throws IOException if the channel cannot be written
+ */
+    public static void write(WritableByteChannel channel, PointCloud cloud, int[] labels, boolean float64) throws IOException{
+        int n = cloud.size();
+        if(labels != null && labels.length < n){
+            throw new IllegalArgumentException("labels has " + labels.length + " values for " + n + " points");
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt((float64 ? FLAG_FLOAT64 : 0) | (labels != null ? FLAG_LABELS : 0));
+        buf.putInt(0);
+        buf.putLong(n);
+        buf.putLong(0);
+        for(int axis = 0; axis < 3; axis++){
+            for(int i = 0; i < n; i++){
+                if(buf.remaining() < 8){
+                    flush(channel, buf);
+                }
+                double v = axis == 0 ? cloud.getX(i) : (axis == 1 ? cloud.getY(i) : cloud.getZ(i));
+                if(float64){
+                    buf.putDouble(v);
+                }
+                else{
+                    buf.putFloat((float) v);
+                }
+            }
+        }
+        if(labels != null){
+            for(int i = 0; i < n; i++){
+                if(buf.remaining() < 4){
+                    flush(channel, buf);
+                }
+                buf.putInt(labels[i]);
+            }
+        }
+        flush(channel, buf);
+    }
+
+/**
+ * Reads a point cloud in the '.pcb' format from a channel, e.g. a socket, as written by write(channel, ...).
+ * The columns are read through a buffer, nothing is mapped
+ * @param channel  the input channel, positioned at the header
+ * @param labels  cleared and filled with the label column, if the data has one
+ * @return PointCloud of the points
+ * @throws IOException if the channel cannot be read or does not hold '.pcb' data
+ */
+    public static PointCloud read(ReadableByteChannel channel, IntList labels) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fill(channel, header);
+        checkHeader(header);
+        int flags = header.getInt(8);
+        int n = count(header);
+        int width = (flags & FLAG_FLOAT64) != 0 ? 8 : 4;
+        long left = 3L * n * width + ((flags & FLAG_LABELS) != 0 ? 4L * n : 0); //bytes of the columns not read yet
+        double[][] columns = new double[3][n];
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+        for(double[] column: columns){
+            for(int i = 0; i < n; i++){
+                if(buf.remaining() < width){
+                    left -= refill(channel, buf, width, left);
+                }
+                column[i] = width == 8 ? buf.getDouble() : buf.getFloat();
+            }
+        }
+        labels.clear();
+        if((flags & FLAG_LABELS) != 0){
+            for(int i = 0; i < n; i++){
+                if(buf.remaining() < 4){
+                    left -= refill(channel, buf, 4, left);
+                }
+                labels.add(buf.getInt());
+            }
+        }
+        return new PointCloud(columns[0], columns[1], columns[2], n);
+    }
+
+/**
+ * Moves the unread bytes of the buffer to its start and reads until at least 'needed' bytes are available,
+ * never more than the 'left' bytes of the point cloud, so the data that follows it in the channel is not consumed
+ * @return int the number of bytes read
+ */
+    private static int refill(ReadableByteChannel channel, ByteBuffer buf, int needed, long left) throws IOException{
+        buf.compact();
+        if(buf.position() + left < needed){
+            throw new EOFException("Point cloud data ends too early");
+        }
+        buf.limit((int) Math.min(buf.capacity(), buf.position() + left));
+        int read = 0;
+        while(buf.position() < needed){
+            int r = channel.read(buf);
+            if(r < 0){
+                throw new EOFException("Point cloud data ends too early");
+            }
+            read += r;
+        }
+        buf.flip();
+        return read;
+    }
+
+    private static void fill(ReadableByteChannel channel, ByteBuffer buf) throws IOException{
+        while(buf.hasRemaining()){
+            if(channel.read(buf) < 0){
+                throw new EOFException("Point cloud data ends too early");
+            }
+        }
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buf) throws IOException{
+        buf.flip();
+        while(buf.hasRemaining()){
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+/**
+ * Reads and checks the header of a '.pcb' file
+ * @return the header as a little-endian buffer
+ */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                break;
+            }
+        }
+        if(header.hasRemaining()){
+            throw new IOException("Not a point cloud binary file");
+        }
+        checkHeader(header);
+        return header;
+    }
+
+    private static void checkHeader(ByteBuffer header) throws IOException{
+        if(header.getInt(0) != MAGIC){
+            throw new IOException("Not a point cloud binary file");
+        }
+        if(header.getInt(4) != VERSION){
+            throw new IOException("Unsupported point cloud binary version " + header.getInt(4));
+        }
+    }
+
+    private static int count(ByteBuffer header) throws IOException{
+        long n = header.getLong(16);
+        if(n < 0 || n > Integer.MAX_VALUE - 8){
+            throw new IOException("Too many points for one cloud: " + n);
+        }
+        return (int) n;
+    }
+
+/**
+ * Copies one coordinate column into the array, mapping it in parts of at most MAX_MAP bytes
+ * @param offset  position of the column in the file
+ * @param width  8 for float64, 4 for float32
+ */
+    private static void readColumn(FileChannel channel, long offset, int width, double[] column) throws IOException{
+        int n = column.length;
+        float[] floats = width == 4 ? new float[Math.min(n, MAX_MAP / 4)] : null;
+        for(int done = 0; done < n; ){
+            int part = Math.min(n - done, MAX_MAP / width);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset + (long) width * done, (long) width * part);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if(width == 8){
+                map.asDoubleBuffer().get(column, done, part);
+            }
+            else{
+                map.asFloatBuffer().get(floats, 0, part);
+                for(int i = 0; i < part; i++){
+                    column[done + i] = floats[i];
+                }
+            }
+            done += part;
+        }
+    }
+
+/**
+ * Converts a '.csv' point cloud to a '.pcb' file
+ * java BinaryPointCloud <input.csv> <output.pcb> [--float32] [--header-lines <n>]
+ */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 2){
+            System.out.println("java BinaryPointCloud <input.csv> <output.pcb> [--float32] [--header-lines <n>]");
+            return;
+        }
+        boolean float64 = true;
+        int headerLines = 2;
+        for(int i = 2; i < args.length; i++){
+            if(args[i].equals("--float32")){
+                float64 = false;
+            }
+            else if(args[i].equals("--header-lines")){
+                headerLines = Integer.parseInt(args[++i]);
+            }
+        }
+        PointCloud cloud = MappedCSVReader.read(args[0], headerLines, Runtime.getRuntime().availableProcessors());
+        write(args[1], cloud, null, float64);
+        System.out.println("Converted " + cloud.size() + " points to " + args[1]);
+    }
+}
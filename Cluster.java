@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Random;
 
 
@@ -6,11 +7,16 @@ import java.util.Random;
  * This data structure is used to create a Cluster object that
  * contains the points in the cluster, the id of the cluster
  * and the color associated with the cluster
+ * Membership is kept in a BitSet over the indices of the points (Point3D.getIndex()),
+ * so adding, removing and checking a point take constant time whatever the size of the cluster
  * @author Aksh Babbar (300034042)
  */
 public class Cluster implements Comparable<Cluster> {
 
-    private ArrayList<Point3D> clusterPoints; //List of points in the cluster
+    private ArrayList<Point3D> clusterPoints; //List of points in the cluster, may still hold removed points
+    private BitSet members; //indices of the points in the cluster
+    private int stale; //entries of clusterPoints that were removed and not dropped yet
+    private int size; //number of points in the cluster
     private int clusterID;
     private String[] rgb; //Color associated with the cluster
 
@@ -23,6 +29,9 @@ public class Cluster implements Comparable<Cluster> {
     public Cluster(int clusterID){ 
         this.clusterID = clusterID;
         this.clusterPoints = new ArrayList<Point3D>();
+        this.members = new BitSet();
+        this.stale = 0;
+        this.size = 0;
         this.rgb = generateRGB();
     }
 
@@ -40,17 +49,42 @@ public class Cluster implements Comparable<Cluster> {
      * @return integer size of the cluster
      */
     public int getSize(){ 
-        return this.clusterPoints.size();
+        return this.size;
     }
 
     /** 
      * Geter for all points that belong to this Cluster
+     * The points removed since the last call are dropped from the list here, in one pass
      * @return ArrayList<Point3D> of points in cluster
      */
     public ArrayList<Point3D> getPointsInCluster(){ 
+        if(this.stale > 0){
+            compact();
+        }
         return this.clusterPoints;
     }
 
+    /** 
+     * Drops the removed entries from the list of points. An entry is kept if its index is a member and the
+     * point still has the id of this cluster, once per index: a point removed and added again is in the
+     * list twice, and a removed point may have left its index to another point
+     */
+    private void compact(){ 
+        BitSet kept = new BitSet();
+        this.clusterPoints.removeIf(pt -> {
+            int index = pt.getIndex();
+            if(index < 0){
+                return false;
+            }
+            if(!this.members.get(index) || pt.getClusterId() != this.clusterID || kept.get(index)){
+                return true;
+            }
+            kept.set(index);
+            return false;
+        });
+        this.stale = 0;
+    }
+
     /** 
      * Helper Function to add a point to this Cluster
      * Checks if the point already exists in the Cluster
@@ -58,18 +92,29 @@ public class Cluster implements Comparable<Cluster> {
      * @param point  the point to be added to the cluster
      */
     public void addPoint(Point3D point){ 
-        if(!hasPoint(point)){
-            this.clusterPoints.add(point);
-            point.setClusterId(this.clusterID);
+        if(hasPoint(point)){
+            return;
+        }
+        int index = point.getIndex();
+        if(index >= 0){
+            this.members.set(index);
         }
+        this.clusterPoints.add(point);
+        this.size++;
+        point.setClusterId(this.clusterID);
     }
 
     /** 
      * Checks if the 3D point is already a part of this Cluster
+     * Points that are in a point list are looked up by index in constant time,
+     * other points (index -1) are compared with equals to every point of the cluster
      * @param point  the 3D point to be checked
      * @return boolean -> true if the 3D point is a part of the Cluster, else false
      */
     public boolean hasPoint(Point3D point){ 
+        if(point.getIndex() >= 0){
+            return this.members.get(point.getIndex());
+        }
         for(Point3D pt: this.clusterPoints){
             if(point.equals(pt)){
                 return true;
@@ -80,13 +125,31 @@ public class Cluster implements Comparable<Cluster> {
 
     /** 
      * Checks if the 3D point is already a part of this Cluster and then 
-     * removes it
+     * removes it. For a point with an index the entry in the list of points
+     * is only dropped by the next call to getPointsInCluster, or once the removed
+     * entries outnumber the points, so the list stays at most about twice the size
+     * of the cluster even if getPointsInCluster is never called
      * @param point  the 3D point to be removed
      */
     public void removePoint(Point3D point){ 
-        if(hasPoint(point)){
+        if(!hasPoint(point)){
+            return;
+        }
+        int index = point.getIndex();
+        if(index >= 0){
+            this.members.clear(index);
+            this.stale++;
+        }
+        else{
             this.clusterPoints.remove(point);
         }
+        this.size--;
+        if(point.getClusterId() == this.clusterID){
+            point.setClusterId(-1);
+        }
+        if(this.stale > this.size + 16){
+            compact();
+        }
     }
 
     /** 
@@ -0,0 +1,179 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class writes the output '.csv' file (x,y,z,C,R,G,B) of DBScan.
+ * Every line is formatted straight into one large byte buffer that is reused for the whole file and
+ * written to a FileChannel when full. Doubles are formatted with DoubleFormatter and the R,G,B part of
+ * the line is encoded once per cluster, so no String is created per point.
+ *
+ * Clusters can also be given to writeClusterAsync while the clustering goes on: they are then formatted
+ * and written by a background thread, in the order they were given
+ * @author Aksh Babbar (300034042)
+ */
+public class ClusterWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 22; //bytes formatted before each write to the file
+    private static final int MAX_LINE = 4 * DoubleFormatter.MAX_CHARS + 64; //longest line except the R,G,B part
+
+    private final FileChannel channel;
+    private final byte[] buffer; //reused for the whole file
+    private final ByteBuffer wrapped; //the same buffer, as given to the channel
+    private int pos; //number of bytes in the buffer
+    private ExecutorService background; //thread of writeClusterAsync, created on first use
+    private IOException failure; //first error of the background thread
+
+/**
+ * Creates the output file and writes the 2 header lines
+ * @param filename  the output '.csv' filename
+ * @throws IOException if the file cannot be created
+ */
+    public ClusterWriter(String filename) throws IOException{
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.wrapped = ByteBuffer.wrap(this.buffer);
+        this.pos = 0;
+        writeAscii("x,y,z,C,R,G,B\n");
+        writeAscii("0,0,0,0,0,0,0\n");
+    }
+
+/**
+ * Encodes the end of the lines of a cluster, ",R,G,B\n"
+ * @param rgb  the color of the cluster, as returned by Cluster.getRGB()
+ * @return byte[] of the ASCII text
+ */
+    public static byte[] encodeRGB(String[] rgb){
+        return ("," + String.join(",", rgb) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+/**
+ * Writes one line for every point of the cluster, in the order of the cluster
+ * @param cluster  the cluster to be written, nothing is written if it is empty
+ * @throws IOException if the file cannot be written
+ */
+    public void writeCluster(Cluster cluster) throws IOException{
+        byte[] rgb = encodeRGB(cluster.getRGB());
+        for(Point3D point: cluster.getPointsInCluster()){
+            writePoint(point.getX(), point.getY(), point.getZ(), point.getClusterId(), rgb);
+        }
+    }
+
+/**
+ * Writes the clustered points in the order of the point list rather than cluster by cluster.
+ * Points that are in no cluster (cluster ID -1) are skipped
+ * @param points  the point list
+ * @param clusters  the clusters, giving the color of every cluster ID
+ * @param noise  the noise, giving the color of the cluster ID 0
+ * @throws IOException if the file cannot be written
+ */
+    public void writeInPointOrder(List<Point3D> points, List<Cluster> clusters, Cluster noise) throws IOException{
+        int maxID = noise.getClusterID();
+        for(Cluster c: clusters){
+            maxID = Math.max(maxID, c.getClusterID());
+        }
+        byte[][] rgbByID = new byte[maxID + 1][];
+        for(Cluster c: clusters){
+            rgbByID[c.getClusterID()] = encodeRGB(c.getRGB());
+        }
+        rgbByID[noise.getClusterID()] = encodeRGB(noise.getRGB());
+        for(Point3D point: points){
+            int id = point.getClusterId();
+            if(id < 0 || id > maxID || rgbByID[id] == null){
+                continue;
+            }
+            writePoint(point.getX(), point.getY(), point.getZ(), id, rgbByID[id]);
+        }
+    }
+
+/**
+ * Writes the line of one point
+ * @param rgb  the end of the line, as returned by encodeRGB
+ * @throws IOException if the file cannot be written
+ */
+    public void writePoint(double x, double y, double z, int clusterID, byte[] rgb) throws IOException{
+        if(this.pos + MAX_LINE + rgb.length > this.buffer.length){
+            flush();
+        }
+        byte[] out = this.buffer;
+        int p = DoubleFormatter.format(x, out, this.pos);
+        out[p++] = ',';
+        p = DoubleFormatter.format(y, out, p);
+        out[p++] = ',';
+        p = DoubleFormatter.format(z, out, p);
+        out[p++] = ',';
+        p = DoubleFormatter.format(clusterID, out, p);
+        System.arraycopy(rgb, 0, out, p, rgb.length);
+        this.pos = p + rgb.length;
+    }
+
+/**
+ * Hands a finished cluster to the background thread, which formats and writes it while the
+ * caller goes on. The points of the cluster must not change anymore
+ * @param cluster  the cluster to be written
+ */
+    public synchronized void writeClusterAsync(Cluster cluster){
+        if(this.background == null){
+            this.background = Executors.newSingleThreadExecutor();
+        }
+        this.background.execute(() -> {
+            if(this.failure != null){
+                return;
+            }
+            try{
+                writeCluster(cluster);
+            }catch(IOException e){
+                this.failure = e;
+            }
+        });
+    }
+
+    private void writeAscii(String text) throws IOException{
+        if(this.pos + text.length() > this.buffer.length){
+            flush();
+        }
+        for(int i = 0; i < text.length(); i++){
+            this.buffer[this.pos++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void flush() throws IOException{
+        this.wrapped.clear().limit(this.pos);
+        while(this.wrapped.hasRemaining()){
+            this.channel.write(this.wrapped);
+        }
+        this.pos = 0;
+    }
+
+/**
+ * Waits for the clusters given to writeClusterAsync, writes what is left in the buffer and closes the file
+ * @throws IOException if the file could not be written
+ */
+    @Override
+    public void close() throws IOException{
+        try{
+            if(this.background != null){
+                this.background.shutdown();
+                this.background.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            }
+            if(this.failure != null){
+                throw this.failure;
+            }
+            flush();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        }finally{
+            this.channel.close();
+        }
+    }
+}
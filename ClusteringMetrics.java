@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class collects the statistics of a DBScan run, given to it with DBScan.setMetrics:
+ * - the wall time of the phases: read, index build, cluster and save
+ * - the number of range queries (full neighbour lists) and of counts (countWithin, stopped at minPts)
+ * - the KD tree nodes visited by those queries, for the KD, flat KD and bucket KD indexes
+ * - the histogram of the number of neighbours returned by the range queries, in powers of 2
+ * - the peak size of the frontier of the sequential findClusters
+ * The counters can be updated by several threads (ParallelDBScan). Without a ClusteringMetrics nothing is counted:
+ * the index is not wrapped and the KD trees have no visit counter, so a run without it costs the same as before.
+ *
+ * Every phase is also a JDK Flight Recorder event (dbscan.Phase), and a run with metrics ends with a dbscan.Queries
+ * event holding the counters, so they show up in a recording (java -XX:StartFlightRecording ...) next to the GC and
+ * the allocation events. A JFR event that is not recorded only costs a check, so the phase events are always emitted
+ * @author Aksh Babbar (300034042)
+ */
+public class ClusteringMetrics {
+
+    /**
+     * Timed phases of a run
+     */
+    public enum Phase { READ, INDEX, CLUSTER, SAVE }
+
+    private static final int BUCKETS = 32; //0 neighbours, then one bucket per power of 2 up to 2^31
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final LongAdder rangeQueries = new LongAdder();
+    private final LongAdder counts = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS); //range queries by number of neighbours
+    private int peakFrontier;
+    private int points;
+
+/**
+ * JFR event of one phase of a run, its duration is the one of the phase
+ */
+    @Name("dbscan.Phase")
+    @Label("DBScan Phase")
+    @Category("DBScan")
+    @Description("Read, index build, cluster or save phase of a DBScan run")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Points")
+        long points;
+        transient Phase kind; //not recorded, used to add the duration to the metrics
+        transient long start;
+    }
+
+/**
+ * JFR event with the counters of a run, committed at the end of findClusters
+ */
+    @Name("dbscan.Queries")
+    @Label("DBScan Queries")
+    @Category("DBScan")
+    @Description("Range queries, KD tree nodes visited and neighbour counts of a DBScan run")
+    static final class QueriesEvent extends Event {
+        @Label("Points")
+        long points;
+        @Label("Range Queries")
+        long rangeQueries;
+        @Label("Counts")
+        long counts;
+        @Label("Nodes Visited")
+        long nodesVisited;
+        @Label("Peak Frontier")
+        int peakFrontier;
+        @Label("Cluster Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long clusterTime;
+        @Label("Neighbour Histogram")
+        String histogram;
+    }
+
+/**
+ * Starts a phase: its JFR event is begun and its start time taken
+ * @param phase  the phase started
+ * @return the event to give to end when the phase is over
+ */
+    public static PhaseEvent begin(Phase phase){
+        PhaseEvent event = new PhaseEvent();
+        event.kind = phase;
+        event.phase = phase.name().toLowerCase();
+        event.begin();
+        event.start = System.nanoTime();
+        return event;
+    }
+
+/**
+ * Ends a phase: its duration is added to the metrics, if any, and its JFR event is committed
+ * @param event  the event returned by begin
+ * @param metrics  the metrics of the run, null if they are not collected
+ * @param points  the number of points of the phase
+ */
+    public static void end(PhaseEvent event, ClusteringMetrics metrics, long points){
+        long nanos = System.nanoTime() - event.start;
+        if(metrics != null){
+            metrics.phaseNanos[event.kind.ordinal()] += nanos;
+        }
+        event.points = points;
+        event.commit();
+    }
+
+/**
+ * Wraps an index so that its queries are counted in these metrics. A KD index is also given the visit counter.
+ * Done by DBScan when it builds the index of a run with metrics
+ * @param index  the index built by DBScan
+ * @return the index counting its queries
+ */
+    SpatialIndex instrument(SpatialIndex index){
+        if(index instanceof NearestNeighboursKD){
+            ((NearestNeighboursKD) index).setVisitCounter(this.nodesVisited);
+        }
+        else if(index instanceof NearestNeighboursFlatKD){
+            ((NearestNeighboursFlatKD) index).setVisitCounter(this.nodesVisited);
+        }
+        else if(index instanceof NearestNeighboursBucketKD){
+            ((NearestNeighboursBucketKD) index).setVisitCounter(this.nodesVisited);
+        }
+        return new CountingIndex(index, this);
+    }
+
+/**
+ * SpatialIndex that forwards the queries to another index and counts them
+ */
+    private static final class CountingIndex implements SpatialIndex {
+        private final SpatialIndex index;
+        private final ClusteringMetrics metrics;
+
+        private CountingIndex(SpatialIndex index, ClusteringMetrics metrics){
+            this.index = index;
+            this.metrics = metrics;
+        }
+
+        public ArrayList<Point3D> RangeQuery(Point3D point, double eps){
+            ArrayList<Point3D> neighbours = this.index.RangeQuery(point, eps);
+            this.metrics.countQuery(neighbours.size());
+            return neighbours;
+        }
+
+        public int rangeQuery(int pointIndex, double eps, IntList neighbours){
+            int found = this.index.rangeQuery(pointIndex, eps, neighbours);
+            this.metrics.countQuery(found);
+            return found;
+        }
+
+        public int countWithin(int pointIndex, double eps, int limit){
+            this.metrics.counts.increment();
+            return this.index.countWithin(pointIndex, eps, limit);
+        }
+    }
+
+    private void countQuery(int found){
+        this.rangeQueries.increment();
+        this.histogram.incrementAndGet(found == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(found));
+    }
+
+/**
+ * Records the end of a findClusters: its peak frontier and number of points, and commits the dbscan.Queries event
+ */
+    void finish(int points, int peakFrontier){
+        this.points = points;
+        this.peakFrontier = Math.max(this.peakFrontier, peakFrontier);
+        QueriesEvent event = new QueriesEvent();
+        if(event.shouldCommit()){
+            event.points = points;
+            event.rangeQueries = getRangeQueries();
+            event.counts = getCounts();
+            event.nodesVisited = getNodesVisited();
+            event.peakFrontier = this.peakFrontier;
+            event.clusterTime = getPhaseNanos(Phase.CLUSTER);
+            event.histogram = histogramString();
+            event.commit();
+        }
+    }
+
+/**
+ * Getter for the wall time of a phase, summed over the runs with these metrics
+ * @return the time in nanoseconds
+ */
+    public long getPhaseNanos(Phase phase){
+        return this.phaseNanos[phase.ordinal()];
+    }
+
+/**
+ * Getter for the number of range queries, which return the full neighbour list
+ */
+    public long getRangeQueries(){
+        return this.rangeQueries.sum();
+    }
+
+/**
+ * Getter for the number of countWithin calls, which stop at minPts neighbours
+ */
+    public long getCounts(){
+        return this.counts.sum();
+    }
+
+/**
+ * Getter for the KD tree nodes visited by the range queries and the counts, 0 with the grid index
+ */
+    public long getNodesVisited(){
+        return this.nodesVisited.sum();
+    }
+
+/**
+ * Getter for the mean number of KD tree nodes visited by a query, range query or count
+ */
+    public double getNodesPerQuery(){
+        long queries = getRangeQueries() + getCounts();
+        return queries == 0 ? 0 : (double) getNodesVisited() / queries;
+    }
+
+/**
+ * Getter for the histogram of the number of neighbours found by the range queries:
+ * entry 0 counts the queries with no neighbour, entry b > 0 the ones with 2^(b-1) to 2^b - 1 neighbours
+ * @return the counts, trailing empty buckets removed
+ */
+    public long[] getNeighbourHistogram(){
+        int last = 0;
+        for(int b = 0; b < BUCKETS; b++){
+            if(this.histogram.get(b) != 0){
+                last = b + 1;
+            }
+        }
+        long[] counts = new long[last];
+        for(int b = 0; b < last; b++){
+            counts[b] = this.histogram.get(b);
+        }
+        return counts;
+    }
+
+/**
+ * Getter for the peak frontier size of the sequential findClusters, 0 on more than 1 thread
+ */
+    public int getPeakFrontier(){
+        return this.peakFrontier;
+    }
+
+/**
+ * Histogram as "lo-hi:count" entries, the empty buckets are left out
+ */
+    private String histogramString(){
+        long[] counts = getNeighbourHistogram();
+        StringBuilder text = new StringBuilder();
+        for(int b = 0; b < counts.length; b++){
+            if(counts[b] == 0){
+                continue;
+            }
+            if(text.length() > 0){
+                text.append(' ');
+            }
+            long lo = b == 0 ? 0 : 1L << (b - 1);
+            long hi = b == 0 ? 0 : (1L << b) - 1;
+            text.append(lo == hi ? String.valueOf(lo) : lo + "-" + hi).append(':').append(counts[b]);
+        }
+        return text.toString();
+    }
+
+/**
+ * Summary printed by the --stats option of DBScan
+ * @return the lines of the summary
+ */
+    public String summary(){
+        StringBuilder text = new StringBuilder("Statistics:\n");
+        for(Phase phase: Phase.values()){
+            text.append(String.format("  %-8s %10.1f ms%n", phase.name().toLowerCase(), getPhaseNanos(phase) / 1e6));
+        }
+        text.append(String.format("  points: %d, range queries: %d, counts: %d%n", this.points, getRangeQueries(), getCounts()));
+        if(getNodesVisited() > 0){
+            text.append(String.format("  KD nodes visited: %d (%.1f per query)%n", getNodesVisited(), getNodesPerQuery()));
+        }
+        text.append("  peak frontier: ").append(this.peakFrontier).append('\n');
+        text.append("  neighbours per range query: ").append(histogramString());
+        return text.toString();
+    }
+}
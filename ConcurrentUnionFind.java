@@ -0,0 +1,66 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This data structure is a lock-free union-find (disjoint sets) over the
+ * positions 0..n-1 that can be updated by several threads at the same time.
+ * Parents are stored in an AtomicIntegerArray and changed with compare-and-set.
+ * A root is always linked under the smaller root, so the root of a set is
+ * the smallest position in the set
+ * @author Aksh Babbar (300034042)
+ */
+public class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent; //parent of each element, roots are their own parent
+
+    /** 
+     * Constructor that creates n singleton sets
+     * @param n  number of elements
+     */
+    public ConcurrentUnionFind(int n){ 
+        this.parent = new AtomicIntegerArray(n);
+        for(int i = 0; i < n; i++){
+            this.parent.set(i, i);
+        }
+    }
+
+    /** 
+     * Finds the root of the set containing the element.
+     * Uses path halving: the visited elements are linked to their grandparent,
+     * a failed compare-and-set only means another thread shortened the path first
+     * @param i  the element
+     * @return the root of its set, which is the smallest element of the set once all unions are done
+     */
+    public int find(int i){ 
+        while(true){
+            int p = this.parent.get(i);
+            if(p == i){
+                return i;
+            }
+            int gp = this.parent.get(p);
+            if(gp != p){
+                this.parent.compareAndSet(i, p, gp);
+            }
+            i = gp;
+        }
+    }
+
+    /** 
+     * Merges the sets containing the 2 elements
+     * @param a  first element
+     * @param b  second element
+     */
+    public void union(int a, int b){ 
+        while(true){
+            int ra = find(a);
+            int rb = find(b);
+            if(ra == rb){
+                return;
+            }
+            int lo = Math.min(ra, rb);
+            int hi = Math.max(ra, rb);
+            if(this.parent.compareAndSet(hi, hi, lo)){ //fails if hi stopped being a root, then retry
+                return;
+            }
+        }
+    }
+}
@@ -2,11 +2,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Stack;
 import java.lang.System;
 
 
@@ -32,11 +36,36 @@ import java.lang.System;
  */ 
 public class DBScan {
 
+    /**
+     * Nearest neighbour index used by findClusters
+     * KD: KD Tree of linked nodes (NearestNeighboursKD)
+     * FLAT_KD: KD Tree stored in flat arrays (NearestNeighboursFlatKD)
+     * GRID: grid of cells of side eps (NearestNeighboursGrid)
+     * BUCKET_KD: KD Tree with leaf buckets scanned by a vectorizable kernel (NearestNeighboursBucketKD)
+     */
+    public enum IndexType { KD, FLAT_KD, GRID, BUCKET_KD }
+
     private ArrayList<Point3D> pointList;
+    private PointCloud cloud; //coordinates of the points as primitive arrays, null until needed
     private ArrayList<Cluster> clusters;
     private Noise noise;
     private double eps;
     private double minPts;
+    private boolean widestSplit; //split the KD tree on the axis of largest spread
+    private int treeDepth; //depth of the KD tree built by the last call to findClusters
+    private int peakFrontier; //largest number of points waiting on the frontier during the last findClusters
+    private String streamFile; //output file written during the next findClusters, null if none
+    private ClusterWriter streamWriter; //writer of streamFile while findClusters runs
+    private boolean[] knownCore; //points found to be core points while building the index, null if none
+    private IndexType indexType = IndexType.KD;
+    private int threads = 1; //number of threads used by findClusters, 1 runs the sequential algorithm
+    private double voxelSize; //side of the voxels of the downsampling done by findClusters, 0 for none
+    private int bucketSize = NearestNeighboursBucketKD.DEFAULT_BUCKET_SIZE; //points per leaf of the BUCKET_KD index
+    private ClusteringMetrics metrics; //statistics of the runs, null when they are not collected
+    private int[] inputPosition; //position in the input of the point at every position of the point list, null if not reordered
+    private String graphFile; //neighbour graph file used by findClusters, null to query the index directly
+    private NeighbourGraph graph; //neighbour graph of the last findClusters, null if none was used
+    private boolean graphLoaded; //the last findClusters loaded its neighbour graph instead of building it
 
 /** 
  * Constructor for DBScan class that initializes the list of points,
@@ -45,10 +74,90 @@ public class DBScan {
  */
     public DBScan(ArrayList<Point3D> pointList){ 
         this.pointList = pointList;
+        for(int i = 0; i < pointList.size(); i++){
+            pointList.get(i).setIndex(i);
+        }
         clusters = new ArrayList<Cluster>();
         noise = new Noise(0);
     }
 
+/** 
+ * Constructor for DBScan class over the points of a PointCloud, as read by readCloud.
+ * A Point3D is created for every point to hold its cluster ID, but the flat KD, bucket KD and grid
+ * indexes are built from the coordinate arrays of the cloud
+ * @param cloud the coordinates of the points
+ */
+    public DBScan(PointCloud cloud){ 
+        this(cloud.toPoints());
+        this.cloud = cloud;
+    }
+
+/** 
+ * Reorders the points along a space-filling curve (see SpaceFillingCurve), so that points close in space are
+ * close in the point list, in the coordinate arrays and in memory: new Point3D objects are created in curve order.
+ * Call it before findClusters, the index and the clusters are then built on the new order.
+ * save and saveBinary still write the points in input order when asked for point order, through the inverse
+ * permutation kept here; getPoints returns the points in curve order
+ * @param curve  MORTON or HILBERT
+ */
+    public void orderAlongCurve(SpaceFillingCurve.Curve curve){ 
+        PointCloud input = this.cloud != null ? this.cloud : PointCloud.fromPoints(this.pointList);
+        int[] order = SpaceFillingCurve.order(input, curve);
+        this.cloud = input.permute(order);
+        this.pointList = this.cloud.toPoints();
+        if(this.inputPosition != null){ //already reordered, keep the positions in the input
+            for(int i = 0; i < order.length; i++){
+                order[i] = this.inputPosition[order[i]];
+            }
+        }
+        this.inputPosition = order;
+        this.clusters = new ArrayList<Cluster>();
+        this.noise = new Noise(0);
+    }
+
+/** 
+ * Getter for the points in the order of the input, which is the order of getPoints unless orderAlongCurve was called
+ * @return the list of 3D points in input order
+ */
+    public ArrayList<Point3D> getPointsInInputOrder(){ 
+        if(this.inputPosition == null){
+            return this.pointList;
+        }
+        Point3D[] points = new Point3D[this.pointList.size()];
+        for(int i = 0; i < points.length; i++){
+            points[this.inputPosition[i]] = this.pointList.get(i);
+        }
+        return new ArrayList<Point3D>(Arrays.asList(points));
+    }
+
+/** 
+ * Makes findClusters cluster over the eps-neighbourhood graph of the points (NeighbourGraph) stored in the given file:
+ * if the file holds the graph of these points for this eps it is loaded and no spatial query is done at all,
+ * otherwise the graph is built in parallel from the index and saved to the file for the next runs, e.g. with another minPts.
+ * The clustering is then a traversal of the rows of the graph. Not used by the voxel downsampling of setVoxelSize
+ * @param filename  the '.nbg' file of the graph, null to query the index directly (the default)
+ */
+    public void useNeighbourGraph(String filename){ 
+        this.graphFile = filename;
+    }
+
+/** 
+ * Getter for the neighbour graph used by the last findClusters
+ * @return the graph, null if useNeighbourGraph was not called, the points were downsampled in voxels
+ *         or the graph did not fit in memory
+ */
+    public NeighbourGraph getNeighbourGraph(){ 
+        return this.graph;
+    }
+
+/** 
+ * Getter for where the neighbour graph of the last findClusters came from
+ * @return true if it was loaded from the file of useNeighbourGraph, false if it was built (or not used)
+ */
+    public boolean isGraphLoaded(){ 
+        return this.graphLoaded;
+    }
+
 /** 
  * Sets the value of eps
  * @param eps minimum distance between points
@@ -65,31 +174,254 @@ public class DBScan {
         this.minPts = minPts;
     }
 
+/** 
+ * Sets how the split axis of the KD tree is chosen
+ * @param widestSplit true to split every node on the axis with the largest spread,
+ *                    false to cycle through x, y, z
+ */
+    public void setWidestSplit(boolean widestSplit){ 
+        this.widestSplit = widestSplit;
+    }
+
+/** 
+ * Sets the nearest neighbour index used by findClusters
+ * @param indexType the type of index, KD by default
+ */
+    public void setIndexType(IndexType indexType){ 
+        this.indexType = indexType;
+    }
+
+/** 
+ * Sets the largest number of points of a leaf of the BUCKET_KD index
+ * @param bucketSize points per leaf, 32 by default
+ */
+    public void setBucketSize(int bucketSize){ 
+        if(bucketSize < 1){
+            throw new IllegalArgumentException("bucket size must be at least 1: " + bucketSize);
+        }
+        this.bucketSize = bucketSize;
+    }
+
+/** 
+ * Sets the number of threads used by findClusters.
+ * With more than 1 thread the clusters are found by ParallelDBScan
+ * @param threads number of worker threads, 1 by default
+ */
+    public void setThreads(int threads){ 
+        if(threads < 1){
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+/** 
+ * Makes findClusters downsample the points first: the points of every voxel of the given side are
+ * clustered as one point weighted by their number (see VoxelGrid), and take the label of their voxel.
+ * On very dense clouds this cuts the number of range queries by orders of magnitude, with a voxel side
+ * well below eps the clusters are almost the same
+ * @param voxelSize side of the voxels, 0 to cluster every point (the default)
+ */
+    public void setVoxelSize(double voxelSize){ 
+        if(voxelSize < 0){
+            throw new IllegalArgumentException("voxel size must not be negative: " + voxelSize);
+        }
+        this.voxelSize = voxelSize;
+    }
+
+/** 
+ * Makes findClusters, computeOptics and save collect their statistics in the given metrics: phase times,
+ * range queries, KD tree nodes visited, neighbour counts and peak frontier. Without metrics (the default)
+ * the queries are not counted at all
+ * @param metrics the metrics to add to, null to stop collecting
+ */
+    public void setMetrics(ClusteringMetrics metrics){ 
+        this.metrics = metrics;
+    }
+
+/** 
+ * Getter for the metrics given with setMetrics
+ * @return the metrics, null if they are not collected
+ */
+    public ClusteringMetrics getMetrics(){ 
+        return this.metrics;
+    }
+
+/** 
+ * Getter for the largest number of points waiting to be expanded at the same time
+ * during the last call to findClusters (0 with more than 1 thread, which has no frontier)
+ * @return the peak size of the frontier
+ */
+    public int getPeakFrontierSize(){ 
+        return this.peakFrontier;
+    }
+
+/** 
+ * Getter for the depth of the KD tree used by the last call to findClusters
+ * @return the depth of the tree, 0 if findClusters has not been called
+ */
+    public int getTreeDepth(){ 
+        return this.treeDepth;
+    }
+
+/** 
+ * Creates the nearest neighbour index selected with setIndexType over the list of points
+ * @return SpatialIndex the index used to find neighbours
+ */
+    private SpatialIndex createIndex(){ 
+        return createIndex(getPoints());
+    }
+
+/** 
+ * Creates the nearest neighbour index selected with setIndexType over the given points
+ * @param points  the points, with their position in the list as index
+ * @return SpatialIndex the index used to find neighbours
+ */
+    private SpatialIndex createIndex(ArrayList<Point3D> points){ 
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.INDEX);
+        SpatialIndex finder = buildIndex(points);
+        ClusteringMetrics.end(phase, this.metrics, points.size());
+        return this.metrics != null ? this.metrics.instrument(finder) : finder;
+    }
+
+/** 
+ * Loads the neighbour graph of useNeighbourGraph, or builds and saves it if the file does not hold the graph
+ * of these points for this eps. Falls back to the index if the graph would not fit in half of the free memory
+ * @return SpatialIndex the graph, or the index
+ */
+    private SpatialIndex createGraph(){ 
+        ArrayList<Point3D> points = getPoints();
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.INDEX);
+        this.graph = null;
+        try{
+            this.graph = NeighbourGraph.load(this.graphFile, points, this.eps);
+        }catch(IOException e){
+            System.out.println("Cannot read the neighbour graph " + this.graphFile + ", it is built again: " + e.getMessage());
+        }
+        this.graphLoaded = this.graph != null;
+        SpatialIndex finder = this.graph;
+        if(this.graphLoaded){
+            this.knownCore = null;
+            this.treeDepth = 0;
+        }
+        else{
+            SpatialIndex index = buildIndex(points);
+            Runtime rt = Runtime.getRuntime();
+            long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            this.graph = NeighbourGraph.build(points, index, this.eps, this.threads, free / 2 / 8);
+            finder = this.graph != null ? this.graph : index;
+            if(this.graph != null){
+                try{
+                    this.graph.save(this.graphFile);
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        ClusteringMetrics.end(phase, this.metrics, points.size());
+        return this.metrics != null ? this.metrics.instrument(finder) : finder;
+    }
+
+/** 
+ * Builds the index of createIndex, without the metrics. The flat KD, bucket KD and grid indexes copy their
+ * coordinates from the PointCloud of the points when there is one (e.g. a mapped .pcb file), not from the Point3D objects
+ */
+    private SpatialIndex buildIndex(ArrayList<Point3D> points){ 
+        this.knownCore = null;
+        this.treeDepth = 0;
+        if(this.indexType == IndexType.GRID){
+            NearestNeighboursGrid finder = new NearestNeighboursGrid(cloudOf(points), this.eps);
+            this.knownCore = new boolean[points.size()];
+            finder.markDenseCells(this.eps, (int) Math.ceil(this.minPts), this.knownCore); //core points of dense cells need no query
+            return finder;
+        }
+        if(this.indexType == IndexType.FLAT_KD){
+            NearestNeighboursFlatKD finder = new NearestNeighboursFlatKD(cloudOf(points), this.widestSplit);
+            this.treeDepth = finder.getTreeDepth();
+            return finder;
+        }
+        if(this.indexType == IndexType.BUCKET_KD){
+            NearestNeighboursBucketKD finder = new NearestNeighboursBucketKD(cloudOf(points), this.bucketSize, this.widestSplit);
+            this.treeDepth = finder.getTreeDepth();
+            return finder;
+        }
+        NearestNeighboursKD finder = new NearestNeighboursKD(points, this.widestSplit); //Nearest Neighbour KD class
+        this.treeDepth = finder.getTreeDepth();
+        return finder;
+    }
+
+/** 
+ * The coordinates of the given points: the PointCloud of the point list if there is one, a copy otherwise
+ */
+    private PointCloud cloudOf(ArrayList<Point3D> points){ 
+        return points == this.pointList && this.cloud != null ? this.cloud : PointCloud.fromPoints(points);
+    }
+
 /** 
  * Find clusters method is the algorithm that creates the list of clusters
  * and determine noise points.
  * Its implementation is based on the document: Programming Exercise P2
  * provided by the professor
- * The newly created NearestNeighbourKD class is used to find neighbours
- * The Stack class used here is from the Java API
+ * The index selected with setIndexType is used to find neighbours. Neighbours are
+ * returned as positions in the point list in a reused buffer, so no list is created per query
+ * and the indexes compare squared distances, so the queries themselves do not allocate memory.
+ * A point is first tested as a seed with countWithin, which stops after minPts neighbours
+ * (or not at all if the grid index already found it to be a core point);
+ * the full neighbour list is only fetched when the point turns out to be a core point.
+ * In the expansion loop the list is needed whenever the point is a core point, so the
+ * size of the range query itself is used for the decision.
+ * The points to expand are kept in a primitive int stack (IntList) of point positions, and a
+ * BitSet records every position ever pushed, so each point enters the stack at most once
+ * and the stack never holds more than the number of points.
+ * With useNeighbourGraph the queries read the rows of the precomputed neighbour graph instead of the index
  */
     public void findClusters(){ 
-        NearestNeighboursKD finder = new NearestNeighboursKD(getPoints()); //Nearest Neighbour KD class
-        for(Point3D point: getPoints()){
+        if(this.voxelSize > 0){
+            findVoxelClusters();
+            return;
+        }
+        SpatialIndex finder = this.graphFile != null ? createGraph() : createIndex();
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.CLUSTER);
+        clusterPoints(finder);
+        endClusterPhase(phase, getPoints().size());
+    }
+
+/** 
+ * The clustering of findClusters over the index built for it
+ */
+    private void clusterPoints(SpatialIndex finder){ 
+        int corePts = (int) Math.ceil(this.minPts); //number of neighbours that makes a core point
+        this.peakFrontier = 0;
+        openStream();
+        if(this.threads > 1){
+            ParallelDBScan parallel = new ParallelDBScan(finder, getPoints().size(), this.eps, corePts, this.threads);
+            parallel.setKnownCore(this.knownCore);
+            setClusters(parallel.findClusters());
+            for(Cluster cluster: this.clusters){
+                streamCluster(cluster);
+            }
+            closeStream();
+            return;
+        }
+        ArrayList<Point3D> points = getPoints();
+        IntList neighbours = new IntList(); //reused by every range query
+        IntList frontier = new IntList(); //positions of the points to expand, empty after each cluster
+        BitSet enqueued = new BitSet(points.size()); //positions that have already been pushed on the frontier
+        for(Point3D point: points){
             if(point.getClusterId() != -1){
                 continue;
             }
-            ArrayList<Point3D> firstNeighbours = finder.RangeQuery(point, this.eps);
-            if(firstNeighbours.size() < this.minPts){
+            boolean core = this.knownCore != null && this.knownCore[point.getIndex()];
+            if(!core && finder.countWithin(point.getIndex(), this.eps, corePts) < corePts){ //no neighbour list needed to reject a seed
                 this.noise.addPoint(point);
                 continue;
             }
+            finder.rangeQuery(point.getIndex(), this.eps, neighbours);
             Cluster cluster = new Cluster(this.clusters.size() + 1);
             cluster.addPoint(point);
-            Stack<Point3D> neighbourStack = new Stack<Point3D>();
-            neighbourStack.addAll(firstNeighbours);
-            while(!neighbourStack.isEmpty()){
-                Point3D neighbourElem = neighbourStack.pop();
+            enqueued.set(point.getIndex());
+            pushNew(frontier, neighbours, enqueued);
+            while(!frontier.isEmpty()){
+                Point3D neighbourElem = points.get(frontier.pop());
                 if(this.noise.hasPoint(neighbourElem)){
                     cluster.addPoint(neighbourElem);
                     this.noise.removePoint(neighbourElem);
@@ -98,15 +430,133 @@ public class DBScan {
                     continue;
                 }
                 cluster.addPoint(neighbourElem);
-                ArrayList<Point3D> secondNeighbours = finder.RangeQuery(neighbourElem, eps);
-                if(secondNeighbours.size() >= this.minPts){
-                    neighbourStack.addAll(secondNeighbours);
+                if(finder.rangeQuery(neighbourElem.getIndex(), this.eps, neighbours) >= this.minPts){
+                    pushNew(frontier, neighbours, enqueued);
                 }
             }
             this.clusters.add(cluster);
+            streamCluster(cluster);
         }
+        closeStream();
     }
 
+/** 
+ * Computes the OPTICS ordering of the points for the eps and minPts set, with the index
+ * selected with setIndexType. The clustering for any eps up to that one is then given by
+ * extractClusters, without querying the index again
+ * @return Optics the ordering, core distances and reachability distances of the points
+ */
+    public Optics computeOptics(){ 
+        SpatialIndex finder = createIndex();
+        Optics optics = new Optics(finder, getPoints().size(), this.eps, (int) Math.ceil(this.minPts));
+        optics.run(cloudOf(getPoints()));
+        return optics;
+    }
+
+/** 
+ * Replaces the clusters and the noise with the clustering extracted from an OPTICS ordering,
+ * so that save and displayClusters work on it like on the result of findClusters
+ * @param optics  the ordering computed by computeOptics
+ * @param eps  the eps of the clustering, at most the eps of the ordering
+ */
+    public void extractClusters(Optics optics, double eps){ 
+        this.clusters = new ArrayList<Cluster>();
+        this.noise = new Noise(0);
+        setClusters(optics.extract(eps));
+    }
+
+/** 
+ * Replaces the clusters and the noise with the given labels, e.g. merged from the partitions clustered
+ * by the workers of DistributedDBScan, so that save and displayClusters work on them
+ * @param labels  cluster id (1, 2, ...) of each point in the point list, 0 for noise
+ */
+    public void setLabels(int[] labels){ 
+        this.clusters = new ArrayList<Cluster>();
+        this.noise = new Noise(0);
+        setClusters(labels);
+    }
+
+/**
+ * Replaces the clusters and the noise with a clustering without eps, of clusters of different densities
+ * (HDBSCAN over the mutual reachability distance, see Hdbscan), with the minPts set as the number of
+ * neighbours of the core distance
+ * @param minClusterSize  the smallest number of points of a cluster, at least 2
+ */
+    public void findHierarchicalClusters(int minClusterSize){
+        this.clusters = new ArrayList<Cluster>();
+        this.noise = new Noise(0);
+        Hdbscan hdbscan = new Hdbscan(getPoints(), (int) Math.ceil(this.minPts), minClusterSize, this.threads);
+        setClusters(hdbscan.findClusters());
+    }
+
+/** 
+ * Creates the clusters and the noise from the label of every point,
+ * as computed by ParallelDBScan or extracted from an Optics ordering
+ * @param labels  cluster id (1, 2, ...) of each point in the point list, 0 for noise
+ */
+    private void setClusters(int[] labels){ 
+        ArrayList<Point3D> points = getPoints();
+        for(int i = 0; i < labels.length; i++){
+            if(labels[i] == 0){
+                this.noise.addPoint(points.get(i));
+                continue;
+            }
+            while(this.clusters.size() < labels[i]){
+                this.clusters.add(new Cluster(this.clusters.size() + 1));
+            }
+            this.clusters.get(labels[i] - 1).addPoint(points.get(i));
+        }
+    }
+
+/** 
+ * findClusters on the voxels of setVoxelSize: the representative points are clustered by ParallelDBScan
+ * (on 1 thread too) with their weights, then every point gets the label of its voxel
+ */
+    private void findVoxelClusters(){ 
+        VoxelGrid voxels = new VoxelGrid(cloudOf(getPoints()), this.voxelSize);
+        ArrayList<Point3D> representatives = voxels.getVoxels().toPoints();
+        SpatialIndex finder = createIndex(representatives);
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.CLUSTER);
+        ParallelDBScan weighted = new ParallelDBScan(finder, representatives.size(), this.eps, (int) Math.ceil(this.minPts), this.threads);
+        weighted.setKnownCore(this.knownCore); //a dense cell of representatives is dense in points too
+        weighted.setWeights(voxels.getWeights());
+        this.peakFrontier = 0;
+        openStream();
+        setClusters(voxels.expand(weighted.findClusters()));
+        for(Cluster cluster: this.clusters){
+            streamCluster(cluster);
+        }
+        closeStream();
+        endClusterPhase(phase, getPoints().size());
+    }
+
+/** 
+ * Ends the cluster phase of findClusters and hands the peak frontier to the metrics, if any
+ */
+    private void endClusterPhase(ClusteringMetrics.PhaseEvent phase, int points){ 
+        ClusteringMetrics.end(phase, this.metrics, points);
+        if(this.metrics != null){
+            this.metrics.finish(points, this.peakFrontier);
+        }
+    }
+
+/** 
+ * Pushes on the frontier the positions of the buffer that have never been pushed before
+ * and updates the peak size of the frontier
+ * @param frontier  the stack of positions to be expanded
+ * @param indices  positions of the neighbours in the point list
+ * @param enqueued  positions already pushed, updated with the new ones
+ */
+    private void pushNew(IntList frontier, IntList indices, BitSet enqueued){ 
+        for(int i = 0; i < indices.size(); i++){
+            int index = indices.get(i);
+            if(!enqueued.get(index)){
+                enqueued.set(index);
+                frontier.add(index);
+            }
+        }
+        this.peakFrontier = Math.max(this.peakFrontier, frontier.size());
+    }
 
 /** 
  * Getter for number of clusters
@@ -158,44 +608,153 @@ public class DBScan {
         return pointList;
     }
 
+/** 
+ * Reads the '.csv' file with MappedCSVReader: the file is memory-mapped and parsed in parallel
+ * chunks straight into primitive coordinate arrays, without a String per line
+ * @param filename  the input '.csv' file
+ * @param headerLines  number of lines skipped at the start of the file, 2 like read()
+ *                     (the x,y,z header and the 0.0,0.0,0.0 row)
+ * @param threads  number of threads parsing the file
+ * @return PointCloud of the points from the file
+ */
+    public static PointCloud readCloud(String filename, int headerLines, int threads){ 
+        try{
+            return MappedCSVReader.read(filename, headerLines, threads);
+        }catch(NoSuchFileException e){
+            System.out.println("FileNotFoundException!");
+            System.exit(0);
+        }catch(IOException e){
+            System.out.println("IOException!");
+            System.exit(0);
+        }
+        return null;
+    }
+
+/** 
+ * Reads a binary '.pcb' file written by saveBinary or converted with BinaryPointCloud.
+ * The columns are memory-mapped and copied in bulk into the coordinate arrays, nothing is parsed
+ * @param filename  the input '.pcb' file
+ * @return PointCloud of the points from the file
+ */
+    public static PointCloud readBinary(String filename){ 
+        try{
+            return BinaryPointCloud.read(filename);
+        }catch(NoSuchFileException e){
+            System.out.println("FileNotFoundException!");
+            System.exit(0);
+        }catch(IOException e){
+            System.out.println("IOException!");
+            System.exit(0);
+        }
+        return null;
+    }
+
+/** 
+ * Creates a binary '.pcb' file with the coordinates of the points, in input order,
+ * and the cluster ID of every point as label column (0 for noise)
+ * @param filename  the output '.pcb' filename
+ */
+    public void saveBinary(String filename) { 
+        ArrayList<Point3D> points = getPointsInInputOrder();
+        int[] labels = new int[points.size()];
+        for(int i = 0; i < labels.length; i++){
+            labels[i] = Math.max(points.get(i).getClusterId(), 0);
+        }
+        PointCloud coordinates = this.cloud != null && this.inputPosition == null ? this.cloud : PointCloud.fromPoints(points);
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.SAVE);
+        try{
+            BinaryPointCloud.write(filename, coordinates, labels, true);
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        ClusteringMetrics.end(phase, this.metrics, points.size());
+    }
+
 /** 
  * This method creates an output file and writes the cluster information
- * along with RGB values. We add the noise to the cluster information
- * so that it is printed out in the output file and then the noise points 
- * is removed.
+ * along with RGB values, cluster by cluster and then the noise points.
+ * The lines are formatted by ClusterWriter into a reused byte buffer,
+ * without a String per point
  * @param filename  the output '.csv' filename
  */
     public void save(String filename) { 
-        ArrayList<Cluster> clusters = this.clusters;
-        clusters.add(noise);
+        save(filename, false);
+    }
+
+/** 
+ * This method creates an output file and writes the cluster information
+ * along with RGB values
+ * @param filename  the output '.csv' filename
+ * @param pointOrder  true to write the points in the input order (the point list order unless orderAlongCurve was called),
+ *                    false to write them cluster by cluster and then the noise points
+ */
+    public void save(String filename, boolean pointOrder) { 
+        ClusteringMetrics.PhaseEvent phase = ClusteringMetrics.begin(ClusteringMetrics.Phase.SAVE);
+        try(ClusterWriter writer = new ClusterWriter(filename)){
+            if(pointOrder){
+                writer.writeInPointOrder(getPointsInInputOrder(), this.clusters, this.noise);
+                return;
+            }
+            for(Cluster c: this.clusters){
+                writer.writeCluster(c);
+            }
+            writer.writeCluster(this.noise);
+        }catch(IOException e){
+            e.printStackTrace();
+        }finally{
+            ClusteringMetrics.end(phase, this.metrics, getPoints().size());
+        }
+    }
+
+/** 
+ * Makes the next call to findClusters write its output file while it runs: every cluster is handed to a
+ * background ClusterWriter as soon as it is complete, so formatting and writing overlap with the search
+ * for the next clusters. The noise points are written last, when findClusters returns.
+ * The file is written cluster by cluster like save(filename)
+ * @param filename  the output '.csv' filename
+ */
+    public void streamClustersTo(String filename) { 
+        this.streamFile = filename;
+    }
+
+/** 
+ * Opens the ClusterWriter for streamClustersTo, if it was called
+ */
+    private void openStream() { 
+        if(this.streamFile == null){
+            return;
+        }
         try{
-            FileWriter csvWriter = new FileWriter(filename);
-            csvWriter.append("x,y,z,C,R,G,B\n");
-            csvWriter.append("0,0,0,0,0,0,0\n");
-            for(Cluster c: clusters){
-                if(c.getSize() == 0){
-                    continue;
-                }
-                String[] rgb = c.getRGB();
-                for(Point3D point: c.getPointsInCluster()){
-                    String[] out = new String[7];
-                    out[0] = Double.toString(point.getX());
-                    out[1] = Double.toString(point.getY());
-                    out[2] = Double.toString(point.getZ());
-                    out[3] = Integer.toString(point.getClusterId());
-                    out[4] = rgb[0];
-                    out[5] = rgb[1]; 
-                    out[6] = rgb[2];
-                    csvWriter.append(String.join(",", out));
-                    csvWriter.append("\n");
-                }
-            }
-            csvWriter.flush();
-            csvWriter.close();
-            clusters.remove(noise);
-        }catch(Exception e){
+            this.streamWriter = new ClusterWriter(this.streamFile);
+        }catch(IOException e){
             e.printStackTrace();
-        }    
+        }
+        this.streamFile = null;
+    }
+
+/** 
+ * Hands a complete cluster to the stream writer, if any
+ */
+    private void streamCluster(Cluster cluster) { 
+        if(this.streamWriter != null){
+            this.streamWriter.writeClusterAsync(cluster);
+        }
+    }
+
+/** 
+ * Writes the noise points to the stream writer, if any, and closes it
+ */
+    private void closeStream() { 
+        if(this.streamWriter == null){
+            return;
+        }
+        this.streamWriter.writeClusterAsync(this.noise);
+        try{
+            this.streamWriter.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        this.streamWriter = null;
     }
 
 
@@ -219,32 +778,187 @@ public class DBScan {
         }
     }
 
+/** 
+ * Converts the value of the --index option to the type of index
+ * @param name  kd, flat, grid or bucket
+ * @return the IndexType
+ */
+    private static IndexType parseIndexType(String name){ 
+        switch(name.toLowerCase()){
+            case "kd": return IndexType.KD;
+            case "flat": return IndexType.FLAT_KD;
+            case "grid": return IndexType.GRID;
+            case "bucket": return IndexType.BUCKET_KD;
+            default: throw new IllegalArgumentException("Unknown index: " + name);
+        }
+    }
+
     public static void main(String[] args) { 
         //Default Values
         String fileName = "Point_Cloud_1.csv";
         double eps = 1.8;
         int minPts = 12;
+        int threads = 1;
+        int headerLines = 2;
+        boolean binaryOutput = false;
+        boolean pointOrder = false;
+        boolean stream = false;
+        boolean stats = false;
+        String opticsEps = null; //eps values extracted from one OPTICS ordering, null to run findClusters
+        int minClusterSize = 0; //smallest cluster of the hierarchical clustering, 0 to run findClusters
+        double voxelSize = 0; //side of the voxels of the downsampling, 0 for none
+        IndexType indexType = IndexType.KD;
+        int bucketSize = NearestNeighboursBucketKD.DEFAULT_BUCKET_SIZE;
+        SpaceFillingCurve.Curve curve = null; //order of the points before clustering, null for the input order
+        boolean graph = false;
+        ArrayList<String> values = new ArrayList<String>(); //arguments that are not options
         try{
+            for(int i = 0; i < args.length; i++){
+                if(args[i].equals("--threads")){
+                    threads = Integer.parseInt(args[++i]);
+                }
+                else if(args[i].equals("--header-lines")){
+                    headerLines = Integer.parseInt(args[++i]);
+                }
+                else if(args[i].equals("--point-order")){
+                    pointOrder = true;
+                }
+                else if(args[i].equals("--stream")){
+                    stream = true;
+                }
+                else if(args[i].equals("--stats")){
+                    stats = true;
+                }
+                else if(args[i].equals("--binary-out")){
+                    binaryOutput = true;
+                }
+                else if(args[i].equals("--optics")){
+                    opticsEps = args[++i];
+                }
+                else if(args[i].equals("--voxel")){
+                    voxelSize = Double.parseDouble(args[++i]);
+                }
+                else if(args[i].equals("--hdbscan")){
+                    minClusterSize = Integer.parseInt(args[++i]);
+                }
+                else if(args[i].equals("--index")){
+                    indexType = parseIndexType(args[++i]);
+                }
+                else if(args[i].equals("--bucket-size")){
+                    bucketSize = Integer.parseInt(args[++i]);
+                }
+                else if(args[i].equals("--graph")){
+                    graph = true;
+                }
+                else if(args[i].equals("--curve")){
+                    curve = SpaceFillingCurve.parse(args[++i]);
+                }
+                else{
+                    values.add(args[i]);
+                }
+            }
             //override default values with user inputs values
-            fileName = args[0];
-            eps = Double.parseDouble(args[1]);
-            minPts = Integer.parseInt(args[2]);
+            fileName = values.get(0);
+            eps = Double.parseDouble(values.get(1));
+            minPts = Integer.parseInt(values.get(2));
         }
         catch(Exception e){
             System.out.println(
                 "Running program using default values! \n" +
                 "If you want to use custom values, you can run the program as: \n" +
-                "java DBScan <file-name.csv> <epsilon> <minimum-points>"
+                "java DBScan <file-name.csv> <epsilon> <minimum-points> [--threads <n>] [--index kd|flat|grid|bucket] [--bucket-size <n>]\n" +
+                "[--header-lines <n>] [--binary-out] [--point-order] [--stream] [--optics <eps1,eps2,...>] [--hdbscan <min-cluster-size>]\n" +
+                "[--voxel <size>] [--curve morton|hilbert] [--graph] [--stats]\n" +
+                "<file-name> can also be a binary '.pcb' file made with: java BinaryPointCloud <in.csv> <out.pcb>"
                 );
         }
-        DBScan db = new DBScan(read("PointClouds/" + fileName));
+        ClusteringMetrics metrics = stats ? new ClusteringMetrics() : null;
+        ClusteringMetrics.PhaseEvent readPhase = ClusteringMetrics.begin(ClusteringMetrics.Phase.READ);
+        PointCloud cloud = fileName.endsWith(".pcb") ? readBinary("PointClouds/" + fileName)
+            : readCloud("PointClouds/" + fileName, headerLines, threads);
+        ClusteringMetrics.end(readPhase, metrics, cloud.size());
+        DBScan db = new DBScan(cloud);
+        db.setMetrics(metrics);
+        if(curve != null){
+            db.orderAlongCurve(curve);
+        }
         db.setEps(eps);
         db.setMinPts(minPts);
-        System.out.println("\nRunning DBScan with eps = " + eps + " and minpts = " + minPts);
+        db.setThreads(threads);
+        db.setIndexType(indexType);
+        db.setBucketSize(bucketSize);
+        db.setVoxelSize(voxelSize);
+        if(opticsEps != null){
+            System.out.println("\nRunning OPTICS with eps = " + eps + " and minpts = " + minPts);
+            Optics optics = db.computeOptics();
+            for(String value: opticsEps.split(",")){
+                double extractEps = Double.parseDouble(value);
+                db.extractClusters(optics, extractEps);
+                String outFileName = fileName.substring(0, fileName.length()-4)
+                +"_clusters_"+extractEps+"_"+minPts+ "_" + db.getNumberOfClusters() + ".csv";
+                db.save("Output/" + outFileName, pointOrder);
+                System.out.println("\neps = " + extractEps + ": " + db.getNumberOfClusters() + " clusters, "
+                    + db.noise.getSize() + " noise points\nOutput file created: " + outFileName);
+            }
+            return;
+        }
+        if(minClusterSize > 0){
+            System.out.println("\nRunning HDBSCAN with minpts = " + minPts + " and min cluster size = " + minClusterSize);
+            db.findHierarchicalClusters(minClusterSize);
+            String outFileName = fileName.substring(0, fileName.length()-4)
+            +"_hdbscan_"+minPts+"_"+minClusterSize+ "_" + db.getNumberOfClusters() + ".csv";
+            db.save("Output/" + outFileName, pointOrder);
+            System.out.println("\n" + db.getNumberOfClusters() + " clusters, " + db.noise.getSize()
+                + " noise points\nOutput file created: " + outFileName);
+            return;
+        }
+        System.out.println("\nRunning DBScan with eps = " + eps + " and minpts = " + minPts + " on " + threads + " thread(s)");
+        //the number of clusters is part of the file name, so a streamed file is renamed at the end
+        String streamFileName = fileName.substring(0, fileName.length()-4) + "_clusters_" + eps + "_" + minPts + ".part";
+        boolean streamed = stream && !binaryOutput && !pointOrder; //only the cluster order can be streamed
+        if(streamed){
+            db.streamClustersTo("Output/" + streamFileName);
+        }
+        String graphFileName = fileName.substring(0, fileName.length()-4) + "_graph_" + eps + ".nbg";
+        if(graph && voxelSize > 0){ //the voxels are clustered by ParallelDBScan, which queries the index
+            System.out.println("\nThe neighbour graph is not used with --voxel, the index is queried directly");
+            graph = false;
+        }
+        if(graph){
+            db.useNeighbourGraph("Output/" + graphFileName);
+        }
         db.findClusters();
+        if(graph && db.getNeighbourGraph() == null){
+            System.out.println("\nThe neighbour graph does not fit in memory, the index was queried directly");
+        }
+        else if(graph){
+            System.out.println("\nNeighbour graph " + (db.isGraphLoaded() ? "loaded from " : "built and saved to ") + graphFileName
+                + " (" + db.getNeighbourGraph().getEntryCount() + " entries)");
+        }
         String outFileName = fileName.substring(0, fileName.length()-4)
-        +"_clusters_"+eps+"_"+minPts+ "_" + db.getNumberOfClusters() +".csv";
-        db.save("Output/" + outFileName);
+        +"_clusters_"+eps+"_"+minPts+ "_" + db.getNumberOfClusters() + (binaryOutput ? ".pcb" : ".csv");
+        if(binaryOutput){
+            db.saveBinary("Output/" + outFileName);
+        }
+        else if(streamed){
+            try{
+                Files.move(Paths.get("Output", streamFileName), Paths.get("Output", outFileName), StandardCopyOption.REPLACE_EXISTING);
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+        else{
+            db.save("Output/" + outFileName, pointOrder);
+        }
+        if(db.getTreeDepth() > 0){
+            System.out.println("\nKD tree depth = " + db.getTreeDepth());
+        }
+        if(db.getPeakFrontierSize() > 0){
+            System.out.println("\nPeak frontier size = " + db.getPeakFrontierSize());
+        }
+        if(metrics != null){
+            System.out.println("\n" + metrics.summary());
+        }
         System.out.println("\nOutput file created: "+ outFileName);
         System.out.println("\nAfter running the algorithm:\nNumber or clusters found= " + db.getNumberOfClusters());
         System.out.println("\nHere are the Clusters arranged according to size:");
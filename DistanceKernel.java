@@ -0,0 +1,151 @@
+/**
+ * This class holds the squared distance kernel that scans runs of points stored as structure of arrays
+ * (one double[] per coordinate), e.g. the leaf buckets of NearestNeighboursBucketKD and the whole cloud
+ * in the brute-force NearestNeighbours.
+ *
+ * There are 2 implementations of the Kernel, chosen once when the class is loaded:
+ * - vector: VectorDistanceKernel, written with the jdk.incubator.vector API on DoubleVector.SPECIES_PREFERRED
+ *   (4 doubles per AVX2 instruction, 8 with AVX-512). It is used when the JVM runs with
+ *   --add-modules jdk.incubator.vector and the class was compiled, which the Maven build does (it is in the vector
+ *   directory, so javac *.java leaves it out and still builds without the incubator module)
+ * - scalar: one loop without branches that reads the 3 arrays and writes the squared distances to a scratch array:
+ *   consecutive elements, no dependency between iterations and no call, which is the shape the JIT compiler
+ *   auto-vectorizes (superword). The comparisons against the bound are done afterwards in a second loop, so the branch
+ *   of a neighbour does not stop the first one
+ * Both add the squares in the same order, so they return the same distances and the same neighbours.
+ * The static methods use the chosen kernel; getScalarKernel and getVectorKernel give each one, for the benchmarks
+ * @author Aksh Babbar (300034042)
+ */
+public class DistanceKernel {
+
+    /**
+     * Implementation of the distance kernel, see the static methods of DistanceKernel
+     */
+    public interface Kernel {
+        void squaredDistances(double[] xs, double[] ys, double[] zs, int from, int to,
+                double x, double y, double z, double[] out);
+
+        int collect(double[] xs, double[] ys, double[] zs, int[] ids, int from, int to,
+                double x, double y, double z, double bound, double[] scratch, IntList neighbours);
+
+        int count(double[] xs, double[] ys, double[] zs, int from, int to,
+                double x, double y, double z, double bound, double[] scratch);
+    }
+
+    private static final Kernel SCALAR = new ScalarKernel();
+    private static final Kernel VECTOR = loadVectorKernel();
+    private static final Kernel KERNEL = VECTOR != null ? VECTOR : SCALAR; //used by the static methods
+
+/**
+ * Creates the VectorDistanceKernel if the jdk.incubator.vector module is in the JVM. The class is loaded by name,
+ * so that DistanceKernel does not depend on it and works without it
+ * @return the vector kernel, null if the module or the class is missing
+ */
+    private static Kernel loadVectorKernel(){
+        if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            return null;
+        }
+        try{
+            return (Kernel) Class.forName("VectorDistanceKernel").getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException | LinkageError e){ //compiled without the vector directory
+            return null;
+        }
+    }
+
+/**
+ * Getter for the kernel used by the static methods
+ * @return the vector kernel if it is available, the scalar one otherwise
+ */
+    public static Kernel getKernel(){
+        return KERNEL;
+    }
+
+/**
+ * Getter for the scalar kernel, always available
+ */
+    public static Kernel getScalarKernel(){
+        return SCALAR;
+    }
+
+/**
+ * Getter for the vector kernel
+ * @return the kernel, null if the JVM runs without --add-modules jdk.incubator.vector or the class is missing
+ */
+    public static Kernel getVectorKernel(){
+        return VECTOR;
+    }
+
+/**
+ * Squared distances from (x, y, z) to the points [from, to) of the arrays
+ * @param xs, ys, zs  coordinates of the points
+ * @param from  first point (inclusive)
+ * @param to  last point (exclusive)
+ * @param out  receives the distance of point from + i at position i, at least to - from entries
+ */
+    public static void squaredDistances(double[] xs, double[] ys, double[] zs, int from, int to,
+            double x, double y, double z, double[] out){
+        KERNEL.squaredDistances(xs, ys, zs, from, to, x, y, z, out);
+    }
+
+/**
+ * Appends to the buffer the ids of the points [from, to) whose squared distance to (x, y, z) is at most bound
+ * @param ids  id of every point, appended for the neighbours
+ * @param scratch  at least to - from entries, overwritten
+ * @param bound  largest squared distance of a neighbour, Point3D.strictSquaredBound(eps)
+ * @return the number of ids appended
+ */
+    public static int collect(double[] xs, double[] ys, double[] zs, int[] ids, int from, int to,
+            double x, double y, double z, double bound, double[] scratch, IntList neighbours){
+        return KERNEL.collect(xs, ys, zs, ids, from, to, x, y, z, bound, scratch, neighbours);
+    }
+
+/**
+ * Counts the points [from, to) whose squared distance to (x, y, z) is at most bound
+ * @param scratch  at least to - from entries, overwritten
+ * @param bound  largest squared distance of a neighbour, Point3D.strictSquaredBound(eps)
+ * @return the number of points counted
+ */
+    public static int count(double[] xs, double[] ys, double[] zs, int from, int to,
+            double x, double y, double z, double bound, double[] scratch){
+        return KERNEL.count(xs, ys, zs, from, to, x, y, z, bound, scratch);
+    }
+
+/**
+ * Kernel of plain loops, auto-vectorized by the JIT compiler
+ */
+    private static final class ScalarKernel implements Kernel {
+
+        public void squaredDistances(double[] xs, double[] ys, double[] zs, int from, int to,
+                double x, double y, double z, double[] out){
+            for(int i = from; i < to; i++){
+                double dx = xs[i] - x;
+                double dy = ys[i] - y;
+                double dz = zs[i] - z;
+                out[i - from] = dx * dx + dy * dy + dz * dz;
+            }
+        }
+
+        public int collect(double[] xs, double[] ys, double[] zs, int[] ids, int from, int to,
+                double x, double y, double z, double bound, double[] scratch, IntList neighbours){
+            squaredDistances(xs, ys, zs, from, to, x, y, z, scratch);
+            int found = 0;
+            for(int i = 0; i < to - from; i++){
+                if(scratch[i] <= bound){
+                    neighbours.add(ids[from + i]);
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        public int count(double[] xs, double[] ys, double[] zs, int from, int to,
+                double x, double y, double z, double bound, double[] scratch){
+            squaredDistances(xs, ys, zs, from, to, x, y, z, scratch);
+            int found = 0;
+            for(int i = 0; i < to - from; i++){
+                found += scratch[i] <= bound ? 1 : 0;
+            }
+            return found;
+        }
+    }
+}
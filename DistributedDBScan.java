@@ -0,0 +1,545 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class spreads a DBScan clustering over worker processes, on this machine or on others.
+ *
+ * The coordinator splits the cloud in x and y into partitions, with KD splits (at the median of the longer side,
+ * so the partitions have the same number of points) or with a regular grid. Every partition is sent with a halo:
+ * the points within 2 eps of it. Every point of a partition has a role, sent as the label column of the '.pcb' data:
+ * - OWNED: the point is in the partition, OWNED_BORDER: it is also within eps of its border
+ * - INNER_HALO: the point is within eps of the partition, all its neighbours are in the halo,
+ *   so the worker finds whether it is a core point exactly
+ * - OUTER_HALO: the point is only there to complete the neighbourhoods of the inner halo
+ * The worker runs DBScan.findClusters on the partition and answers with the cluster of every point and, for the
+ * points of the inner halo and of the border, whether they are core points. The clusters of a worker never join
+ * points of different clusters, as the halo can only hide core points. 2 core points within eps of each other are
+ * in the same cluster of the partition of one of them, and one of them is a boundary core point reported by
+ * both partitions, so a union-find over the clusters of all partitions sharing a boundary core point gives
+ * the clustering of the whole cloud.
+ *
+ * Protocol, on one socket per worker: the coordinator sends double eps, int minPts and the partition as '.pcb'
+ * data (BinaryPointCloud.write); the worker answers int n and n ints (label << 1 | core). The coordinator closes
+ * the socket when no partition is left.
+ *
+ * java DistributedDBScan worker [--port <p>] [--threads <n>]
+ * java DistributedDBScan <file> <eps> <minPts> (--workers <host:port,...> | --spawn <n>) [--partitions <n>] [--split kd|grid] [--header-lines <n>]
+ * @author Aksh Babbar (300034042)
+ */
+public class DistributedDBScan {
+
+    public static final int OUTER_HALO = 0;
+    public static final int INNER_HALO = 1;
+    public static final int OWNED = 2;
+    public static final int OWNED_BORDER = 3;
+
+    private final PointCloud cloud;
+    private final double eps;
+    private final int minPts;
+    private final double slack; //margin for the rounding of the distances to the partition bounds
+    private final ArrayList<Partition> partitions = new ArrayList<Partition>();
+    private int clusterCount; //number of clusters after the merge
+
+/**
+ * A partition: its bounds (infinite on the outside of the cloud), its points and their roles
+ */
+    private static class Partition {
+        final double x0, x1, y0, y1; //owned points: x0 <= x < x1 and y0 <= y < y1
+        final IntList points = new IntList(); //positions of the points in the cloud
+        final IntList roles = new IntList();
+        int[] result; //answer of the worker
+        int labelBase; //number of the first cluster of the partition in the union-find
+
+        Partition(double x0, double x1, double y0, double y1){
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        double distance(double x, double y){ //distance in x and y to the box, 0 inside
+            double dx = Math.max(0, Math.max(this.x0 - x, x - this.x1));
+            double dy = Math.max(0, Math.max(this.y0 - y, y - this.y1));
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        boolean nearBorder(double x, double y, double width){
+            return x - this.x0 <= width || this.x1 - x <= width || y - this.y0 <= width || this.y1 - y <= width;
+        }
+    }
+
+/**
+ * Constructor for the distributed clustering of a cloud
+ * @param cloud  the points
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ */
+    public DistributedDBScan(PointCloud cloud, double eps, int minPts){
+        this.cloud = cloud;
+        this.eps = eps;
+        this.minPts = minPts;
+        double largest = eps;
+        for(int i = 0; i < cloud.size(); i++){
+            largest = Math.max(largest, Math.max(Math.abs(cloud.getX(i)), Math.abs(cloud.getY(i))));
+        }
+        this.slack = 16 * Math.ulp(largest);
+    }
+
+/**
+ * Splits the cloud into partitions and gives every partition its points and their roles
+ * @param count  the number of partitions wanted
+ * @param kd  true for KD splits at the median, false for a regular grid
+ */
+    public void partition(int count, boolean kd){
+        this.partitions.clear();
+        int n = this.cloud.size();
+        int[] owner = new int[n];
+        if(kd){
+            int[] ids = new int[n];
+            for(int i = 0; i < n; i++){
+                ids[i] = i;
+            }
+            split(ids, 0, n, count, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, owner);
+        }
+        else{
+            grid(count, owner);
+        }
+        for(int i = 0; i < n; i++){
+            double x = this.cloud.getX(i);
+            double y = this.cloud.getY(i);
+            for(int p = 0; p < this.partitions.size(); p++){
+                Partition part = this.partitions.get(p);
+                int role;
+                if(owner[i] == p){
+                    role = part.nearBorder(x, y, this.eps + this.slack) ? OWNED_BORDER : OWNED;
+                }
+                else{
+                    double d = part.distance(x, y);
+                    if(d > 2 * this.eps + this.slack){
+                        continue;
+                    }
+                    role = d <= this.eps + this.slack ? INNER_HALO : OUTER_HALO;
+                }
+                part.points.add(i);
+                part.roles.add(role);
+            }
+        }
+        this.partitions.removeIf(part -> part.points.isEmpty());
+    }
+
+/**
+ * KD split of ids[lo, hi) into count partitions: the longer side of the points is cut so that both parts
+ * get a number of points proportional to the number of partitions they are split into
+ */
+    private void split(int[] ids, int lo, int hi, int count, double x0, double x1, double y0, double y1, int[] owner){
+        if(count <= 1 || hi - lo < 2){
+            for(int k = lo; k < hi; k++){
+                owner[ids[k]] = this.partitions.size();
+            }
+            this.partitions.add(new Partition(x0, x1, y0, y1));
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(int k = lo; k < hi; k++){
+            minX = Math.min(minX, this.cloud.getX(ids[k]));
+            maxX = Math.max(maxX, this.cloud.getX(ids[k]));
+            minY = Math.min(minY, this.cloud.getY(ids[k]));
+            maxY = Math.max(maxY, this.cloud.getY(ids[k]));
+        }
+        boolean alongX = maxX - minX >= maxY - minY;
+        double[] values = new double[hi - lo];
+        for(int k = lo; k < hi; k++){
+            values[k - lo] = alongX ? this.cloud.getX(ids[k]) : this.cloud.getY(ids[k]);
+        }
+        Arrays.sort(values);
+        int leftCount = count / 2;
+        double cut = values[(int) ((long) values.length * leftCount / count)];
+        int mid = lo; //points below the cut first
+        for(int k = lo; k < hi; k++){
+            double v = alongX ? this.cloud.getX(ids[k]) : this.cloud.getY(ids[k]);
+            if(v < cut){
+                int tmp = ids[mid];
+                ids[mid++] = ids[k];
+                ids[k] = tmp;
+            }
+        }
+        if(alongX){
+            split(ids, lo, mid, leftCount, x0, cut, y0, y1, owner);
+            split(ids, mid, hi, count - leftCount, cut, x1, y0, y1, owner);
+        }
+        else{
+            split(ids, lo, mid, leftCount, x0, x1, y0, cut, owner);
+            split(ids, mid, hi, count - leftCount, x0, x1, cut, y1, owner);
+        }
+    }
+
+/**
+ * Regular grid of about count cells over the bounding box, with square-ish cells
+ */
+    private void grid(int count, int[] owner){
+        int n = this.cloud.size();
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < n; i++){
+            minX = Math.min(minX, this.cloud.getX(i));
+            maxX = Math.max(maxX, this.cloud.getX(i));
+            minY = Math.min(minY, this.cloud.getY(i));
+            maxY = Math.max(maxY, this.cloud.getY(i));
+        }
+        double width = Math.max(maxX - minX, this.eps);
+        double height = Math.max(maxY - minY, this.eps);
+        int nx = (int) Math.max(1, Math.min(count, Math.round(Math.sqrt(count * width / height))));
+        int ny = Math.max(1, count / nx);
+        double cellWidth = width / nx;
+        double cellHeight = height / ny;
+        for(int j = 0; j < ny; j++){
+            for(int i = 0; i < nx; i++){
+                this.partitions.add(new Partition(i == 0 ? Double.NEGATIVE_INFINITY : minX + i * cellWidth,
+                    i == nx - 1 ? Double.POSITIVE_INFINITY : minX + (i + 1) * cellWidth,
+                    j == 0 ? Double.NEGATIVE_INFINITY : minY + j * cellHeight,
+                    j == ny - 1 ? Double.POSITIVE_INFINITY : minY + (j + 1) * cellHeight));
+            }
+        }
+        for(int k = 0; k < n; k++){
+            int i = Math.max(0, Math.min(nx - 1, (int) Math.floor((this.cloud.getX(k) - minX) / cellWidth)));
+            int j = Math.max(0, Math.min(ny - 1, (int) Math.floor((this.cloud.getY(k) - minY) / cellHeight)));
+            owner[k] = j * nx + i;
+        }
+    }
+
+/**
+ * Getter for the number of partitions made by partition()
+ * @return int number of partitions
+ */
+    public int getPartitionCount(){
+        return this.partitions.size();
+    }
+
+/**
+ * Getter for the number of clusters found by the last run
+ * @return int number of clusters
+ */
+    public int getClusterCount(){
+        return this.clusterCount;
+    }
+
+/**
+ * Sends the partitions to the workers, one connection per worker, each taking the next partition
+ * as soon as it is done, and merges their answers
+ * @param workers  addresses of the workers
+ * @return int[] the cluster id of every point (1, 2, ... in the order of their first point), 0 for noise
+ * @throws IOException if a worker cannot be reached or fails
+ */
+    public int[] run(List<InetSocketAddress> workers) throws IOException{
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try{
+            ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+            for(InetSocketAddress worker: workers){
+                tasks.add(pool.submit(() -> {
+                    send(worker, next);
+                    return null;
+                }));
+            }
+            for(Future<Void> task: tasks){
+                task.get();
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Distributed clustering interrupted", e);
+        }catch(ExecutionException e){
+            throw new IOException("A worker failed", e.getCause());
+        }finally{
+            pool.shutdown();
+        }
+        return merge();
+    }
+
+    private void send(InetSocketAddress worker, AtomicInteger next) throws IOException{
+        try(Socket socket = new Socket(worker.getAddress(), worker.getPort());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))){
+            int p;
+            while((p = next.getAndIncrement()) < this.partitions.size()){
+                Partition part = this.partitions.get(p);
+                int size = part.points.size();
+                double[] x = new double[size];
+                double[] y = new double[size];
+                double[] z = new double[size];
+                for(int k = 0; k < size; k++){
+                    int i = part.points.get(k);
+                    x[k] = this.cloud.getX(i);
+                    y[k] = this.cloud.getY(i);
+                    z[k] = this.cloud.getZ(i);
+                }
+                out.writeDouble(this.eps);
+                out.writeInt(this.minPts);
+                BinaryPointCloud.write(Channels.newChannel(out), new PointCloud(x, y, z, size), part.roles.toArray(), true);
+                out.flush();
+                int count = in.readInt();
+                if(count != size){
+                    throw new IOException("Worker " + worker + " answered " + count + " labels for " + size + " points");
+                }
+                part.result = new int[count];
+                for(int k = 0; k < count; k++){
+                    part.result[k] = in.readInt();
+                }
+            }
+        }
+    }
+
+/**
+ * Merges the clusters of the partitions sharing a boundary core point, and labels the owned points
+ */
+    private int[] merge(){
+        int total = 0;
+        int records = 0;
+        for(Partition part: this.partitions){
+            part.labelBase = total;
+            for(int k = 0; k < part.result.length; k++){
+                total = Math.max(total, part.labelBase + (part.result[k] >> 1));
+                if((part.result[k] & 1) != 0){
+                    records++;
+                }
+            }
+        }
+        long[] boundary = new long[records]; //point << 32 | cluster of the partition, for the boundary core points
+        records = 0;
+        for(Partition part: this.partitions){
+            for(int k = 0; k < part.result.length; k++){
+                if((part.result[k] & 1) != 0){
+                    boundary[records++] = (long) part.points.get(k) << 32 | (part.labelBase + (part.result[k] >> 1) - 1);
+                }
+            }
+        }
+        Arrays.sort(boundary);
+        ConcurrentUnionFind sets = new ConcurrentUnionFind(total);
+        for(int k = 1; k < boundary.length; k++){
+            if(boundary[k] >>> 32 == boundary[k - 1] >>> 32){
+                sets.union((int) boundary[k], (int) boundary[k - 1]);
+            }
+        }
+        int[] labels = new int[this.cloud.size()];
+        int[] clusterOf = new int[this.cloud.size()]; //merged cluster of every owned point, -1 for noise
+        Arrays.fill(clusterOf, -1);
+        for(Partition part: this.partitions){
+            for(int k = 0; k < part.result.length; k++){
+                int role = part.roles.get(k);
+                int label = part.result[k] >> 1;
+                if((role == OWNED || role == OWNED_BORDER) && label > 0){
+                    clusterOf[part.points.get(k)] = sets.find(part.labelBase + label - 1);
+                }
+            }
+        }
+        int[] ids = new int[total]; //cluster ids in the order of the first point of each cluster
+        int count = 0;
+        for(int i = 0; i < labels.length; i++){
+            int c = clusterOf[i];
+            if(c < 0){
+                continue;
+            }
+            if(ids[c] == 0){
+                ids[c] = ++count;
+            }
+            labels[i] = ids[c];
+        }
+        this.clusterCount = count;
+        return labels;
+    }
+
+/**
+ * Clusters one partition on a worker
+ * @param part  the points of the partition
+ * @param roles  the role of every point
+ * @param threads  the number of threads of findClusters
+ * @return int[] label << 1 | core of every point, core is only set for the points of the inner halo and of the border
+ */
+    public static int[] clusterPartition(PointCloud part, IntList roles, double eps, int minPts, int threads){
+        DBScan db = new DBScan(part);
+        db.setEps(eps);
+        db.setMinPts(minPts);
+        db.setThreads(threads);
+        db.findClusters();
+        ArrayList<Point3D> points = db.getPoints();
+        NearestNeighboursKD index = null; //built only if a point needs its core flag
+        int[] result = new int[points.size()];
+        for(int i = 0; i < result.length; i++){
+            int label = Math.max(points.get(i).getClusterId(), 0);
+            boolean core = false;
+            int role = roles.get(i);
+            if(label > 0 && (role == INNER_HALO || role == OWNED_BORDER)){
+                if(index == null){
+                    index = new NearestNeighboursKD(points);
+                }
+                core = index.countWithin(i, eps, minPts) >= minPts;
+            }
+            result[i] = label << 1 | (core ? 1 : 0);
+        }
+        return result;
+    }
+
+/**
+ * Runs a worker: answers the partitions sent on every connection until the process is stopped
+ * @param port  the port listened to, 0 for any free port
+ * @param threads  the number of threads of findClusters
+ */
+    public static void serve(int port, int threads) throws IOException{
+        try(ServerSocket server = new ServerSocket(port)){
+            System.out.println("Worker listening on port " + server.getLocalPort());
+            System.out.flush();
+            while(true){
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> handle(socket, threads));
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+    }
+
+    private static void handle(Socket socket, int threads){
+        try(Socket s = socket;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))){
+            IntList roles = new IntList();
+            while(true){
+                double eps;
+                try{
+                    eps = in.readDouble();
+                }catch(EOFException e){ //the coordinator has no partition left
+                    return;
+                }
+                int minPts = in.readInt();
+                PointCloud part = BinaryPointCloud.read(Channels.newChannel(in), roles);
+                int[] result = clusterPartition(part, roles, eps, minPts, threads);
+                out.writeInt(result.length);
+                for(int value: result){
+                    out.writeInt(value);
+                }
+                out.flush();
+            }
+        }catch(IOException e){
+            System.out.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+/**
+ * Starts a worker process on this machine, with the class path of this one, and waits for its port
+ * @return Process the worker, its port is written in port[0]
+ */
+    private static Process spawn(int[] port) throws IOException{
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            "DistributedDBScan", "worker", "--port", "0");
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line = reader.readLine();
+        if(line == null){
+            process.destroy();
+            throw new IOException("Worker process ended before listening");
+        }
+        port[0] = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+        return process;
+    }
+
+    public static void main(String[] args) throws IOException{
+        if(args.length >= 1 && args[0].equals("worker")){
+            int port = 0;
+            int threads = 1;
+            for(int i = 1; i < args.length; i++){
+                if(args[i].equals("--port")){
+                    port = Integer.parseInt(args[++i]);
+                }
+                else if(args[i].equals("--threads")){
+                    threads = Integer.parseInt(args[++i]);
+                }
+            }
+            serve(port, threads);
+            return;
+        }
+        if(args.length < 4){
+            System.out.println("java DistributedDBScan worker [--port <p>] [--threads <n>]\n" +
+                "java DistributedDBScan <file> <eps> <minPts> (--workers <host:port,...> | --spawn <n>) [--partitions <n>] [--split kd|grid] [--header-lines <n>]");
+            return;
+        }
+        ArrayList<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+        int spawn = 0;
+        int partitions = 0;
+        boolean kd = true;
+        int headerLines = 2;
+        for(int i = 3; i < args.length; i++){
+            if(args[i].equals("--workers")){
+                for(String address: args[++i].split(",")){
+                    int colon = address.lastIndexOf(':');
+                    workers.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+                }
+            }
+            else if(args[i].equals("--spawn")){
+                spawn = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--partitions")){
+                partitions = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--split")){
+                kd = !args[++i].equalsIgnoreCase("grid");
+            }
+            else if(args[i].equals("--header-lines")){
+                headerLines = Integer.parseInt(args[++i]);
+            }
+        }
+        String fileName = args[0];
+        double eps = Double.parseDouble(args[1]);
+        int minPts = Integer.parseInt(args[2]);
+        ArrayList<Process> processes = new ArrayList<Process>();
+        try{
+            for(int k = 0; k < spawn; k++){
+                int[] port = new int[1];
+                processes.add(spawn(port));
+                workers.add(new InetSocketAddress("localhost", port[0]));
+            }
+            if(workers.isEmpty()){
+                System.out.println("No worker: use --workers <host:port,...> or --spawn <n>");
+                return;
+            }
+            PointCloud cloud = fileName.endsWith(".pcb") ? DBScan.readBinary("PointClouds/" + fileName)
+                : DBScan.readCloud("PointClouds/" + fileName, headerLines, 1);
+            long begin = System.nanoTime();
+            DistributedDBScan coordinator = new DistributedDBScan(cloud, eps, minPts);
+            coordinator.partition(partitions > 0 ? partitions : workers.size(), kd);
+            int[] labels = coordinator.run(workers);
+            System.out.println(coordinator.getPartitionCount() + " partitions on " + workers.size() + " workers: "
+                + coordinator.getClusterCount() + " clusters (" + (System.nanoTime() - begin) / 1000000 + " ms)");
+            DBScan db = new DBScan(cloud);
+            db.setLabels(labels);
+            String outFileName = fileName.substring(0, fileName.length()-4)
+                +"_clusters_"+eps+"_"+minPts+ "_" + db.getNumberOfClusters() + ".csv";
+            db.save("Output/" + outFileName);
+            System.out.println("\nOutput file created: " + outFileName);
+        }finally{
+            for(Process process: processes){
+                process.destroy();
+            }
+        }
+    }
+}
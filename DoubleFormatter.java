@@ -0,0 +1,244 @@
+import java.math.BigInteger;
+
+/**
+ * This class writes the decimal text of a double into a byte array without creating any object,
+ * so that millions of coordinates can be written without a String per value.
+ *
+ * The digits are the shortest decimal that reads back to the same double, found with the
+ * Schubfach algorithm (R. Giulietti, "The Schubfach way to render doubles"), and the layout is the one
+ * of Double.toString: plain notation for 10^-3 <= |v| < 10^7 (e.g. -5.057771786205823, 12.0) and
+ * computerized scientific notation otherwise (e.g. 9.341438758872844E-5)
+ * @author Aksh Babbar (300034042)
+ */
+public class DoubleFormatter {
+
+    public static final int MAX_CHARS = 24; //longest text written for one double
+
+    private static final int P = 53; //precision of a double
+    private static final int Q_MIN = -1074; //exponent of the smallest subnormal
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long C_TINY = 3; //subnormals below this get one more digit of precision
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final int K_MIN = flog10pow2(Q_MIN);
+    private static final int K_MAX = flog10pow2(1024 - P);
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)]; //g1(k), g0(k): 126 bit approximations of 10^-k
+
+    static{
+        for(int k = K_MIN; k <= K_MAX; k++){
+            //g = floor(10^-k 2^(125 - flog2pow10(-k))) + 1, with 2^125 <= g < 2^126
+            int r = 125 - flog2pow10(-k);
+            BigInteger num = BigInteger.ONE;
+            BigInteger den = BigInteger.ONE;
+            if(k < 0){
+                num = num.multiply(BigInteger.TEN.pow(-k));
+            }
+            else{
+                den = den.multiply(BigInteger.TEN.pow(k));
+            }
+            if(r >= 0){
+                num = num.shiftLeft(r);
+            }
+            else{
+                den = den.shiftLeft(-r);
+            }
+            BigInteger g = num.divide(den).add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private static int flog10pow2(int e){ //floor(e log10(2))
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int e){ //floor(log10(3/4 2^e))
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    private static int flog2pow10(int e){ //floor(e log2(10))
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+/**
+ * Writes the text of the double at the given position
+ * @param v  the value
+ * @param out  destination array, needs MAX_CHARS free bytes from pos
+ * @param pos  position of the first byte written
+ * @return the position after the last byte written
+ */
+    public static int format(double v, byte[] out, int pos){
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> (P - 1)) & 0x7FF;
+        if(bq == 0x7FF){
+            return t != 0 ? ascii("NaN", out, pos) : ascii(bits > 0 ? "Infinity" : "-Infinity", out, pos);
+        }
+        if(bits < 0){
+            out[pos++] = '-';
+        }
+        if(bq != 0){ //normal value
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if(0 < mq && mq < P){ //integer values are written as they are
+                long f = c >> mq;
+                if(f << mq == c){
+                    return layout(f, 0, out, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, out, pos);
+        }
+        if(t != 0){ //subnormal value
+            return t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, out, pos) : toDecimal(Q_MIN, t, 0, out, pos);
+        }
+        return ascii("0.0", out, pos);
+    }
+
+/**
+ * Finds the shortest decimal f 10^e in the rounding interval of c 2^q and writes it
+ */
+    private static int toDecimal(int q, long c, int dk, byte[] out, int pos){
+        int odd = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if(c != C_MIN || q == Q_MIN){
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }
+        else{ //the interval is narrower below a power of 2
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if(s >= 100){ //try one digit less
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + odd <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + odd <= vbr;
+            if(upin != wpin){
+                return layout(upin ? sp10 : tp10, k, out, pos);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + odd <= s << 2;
+        boolean win = (t << 2) + odd <= vbr;
+        if(uin != win){
+            return layout(uin ? s : t, k + dk, out, pos);
+        }
+        long cmp = vb - (s + t << 1); //both in the interval, take the closest
+        return layout(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, pos);
+    }
+
+/**
+ * Rounded-to-odd product of the 126 bit g with cp, scaled down by 2^127
+ */
+    private static long rop(long g1, long g0, long cp){
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+/**
+ * Writes f 10^e with the layout of Double.toString
+ */
+    private static int layout(long f, int e, byte[] out, int pos){
+        //digits of f without trailing zeros, written at the end of the free space first
+        while(f % 10 == 0 && f != 0){
+            f /= 10;
+            e++;
+        }
+        int end = pos + MAX_CHARS - 1;
+        int start = end;
+        do{
+            out[--start] = (byte) ('0' + f % 10);
+            f /= 10;
+        }while(f != 0);
+        int len = end - start;
+        int point = len + e; //value = 0.digits 10^point
+        if(0 < point && point <= 7){ //ddd.ddd
+            for(int i = 0; i < point; i++){
+                out[pos++] = i < len ? out[start + i] : (byte) '0';
+            }
+            out[pos++] = '.';
+            if(point >= len){
+                out[pos++] = '0';
+            }
+            for(int i = point; i < len; i++){
+                out[pos++] = out[start + i];
+            }
+            return pos;
+        }
+        if(-3 < point && point <= 0){ //0.00ddd
+            out[pos++] = '0';
+            out[pos++] = '.';
+            for(int i = point; i < 0; i++){
+                out[pos++] = '0';
+            }
+            for(int i = 0; i < len; i++){
+                out[pos++] = out[start + i];
+            }
+            return pos;
+        }
+        out[pos++] = out[start]; //d.dddE-n
+        out[pos++] = '.';
+        if(len == 1){
+            out[pos++] = '0';
+        }
+        for(int i = 1; i < len; i++){
+            out[pos++] = out[start + i];
+        }
+        out[pos++] = 'E';
+        int exp = point - 1;
+        if(exp < 0){
+            out[pos++] = '-';
+            exp = -exp;
+        }
+        if(exp >= 100){
+            out[pos++] = (byte) ('0' + exp / 100);
+        }
+        if(exp >= 10){
+            out[pos++] = (byte) ('0' + exp / 10 % 10);
+        }
+        out[pos++] = (byte) ('0' + exp % 10);
+        return pos;
+    }
+
+/**
+ * Writes an int at the given position
+ * @return the position after the last byte written
+ */
+    public static int format(int v, byte[] out, int pos){
+        long value = v;
+        if(value < 0){
+            out[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for(long p = 10; p <= value; p *= 10){
+            digits++;
+        }
+        for(int i = pos + digits - 1; i >= pos; i--){
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static int ascii(String text, byte[] out, int pos){
+        for(int i = 0; i < text.length(); i++){
+            out[pos++] = (byte) text.charAt(i);
+        }
+        return pos;
+    }
+}
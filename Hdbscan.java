@@ -0,0 +1,505 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * This class finds clusters of different densities without an eps, in the way of HDBSCAN
+ * (Campello, Moulavi and Sander, "Density-Based Clustering Based on Hierarchical Density Estimates"):
+ * - core distance of every point: distance to its minPts-th nearest neighbour (itself included),
+ *   found with exact k-NN queries on a KDtree, in parallel
+ * - mutual reachability distance of 2 points: max(core distance of a, core distance of b, distance(a, b));
+ *   its minimum spanning tree is built with Boruvka's algorithm: in every round each component gets its
+ *   lightest edge to another component, found with nearest neighbour searches on the implicit tree of a
+ *   NearestNeighboursFlatKD. A sub-tree is skipped when all its points are in the component of the query,
+ *   or when the bounding box and the smallest core distance of the sub-tree bound the distance by the best edge
+ *   so far. There are at most log2(n) rounds, which keeps 100k+ points tractable
+ * - the edges in increasing order merge the points into a single linkage hierarchy, which is condensed:
+ *   going down from the root at lambda = 1 / distance, a split in 2 parts of at least minClusterSize points
+ *   creates 2 clusters, smaller parts are points falling out of their cluster
+ * - the stability of a cluster is the sum over its points of (lambda when the point leaves - lambda of birth);
+ *   the selected clusters are the ones more stable than their selected descendants together
+ * The root is never selected, points that are in no selected cluster are noise
+ * @author Aksh Babbar (300034042)
+ */
+public class Hdbscan {
+
+    private static final double MAX_LAMBDA = 1e12; //lambda of a merge at distance 0 (duplicate points)
+
+    private final ArrayList<Point3D> pointList;
+    private final int n; //number of points
+    private final int minPts; //k of the core distance
+    private final int minClusterSize;
+    private final int threads;
+    private double[] coreDistance; //squared core distance of every point
+
+    private int[] edgeA; //minimum spanning tree: the 2 points and the squared mutual reachability of every edge
+    private int[] edgeB;
+    private double[] edgeWeight;
+    private int edgeCount;
+
+    private double[] coords; //implicit tree used by Boruvka: x, y, z in tree order
+    private int[] treeIds; //point at each tree position
+    private byte[] axes; //split axis at each tree position
+    private double[] slotCore; //squared core distance at each tree position
+    private double[] boxMin; //bounding box of the sub-tree of each node (x, y, z)
+    private double[] boxMax;
+    private double[] minCore; //smallest squared core distance in the sub-tree of each node
+    private int[] comp; //component of the point at each tree position
+    private int[] nodeComp; //component of all points of the sub-tree of each node, -1 if mixed
+    private double[] bestWeight; //lightest edge found to leave each component (indexed by its root)
+    private int[] bestFrom;
+    private int[] bestTo;
+
+/**
+ * Constructor for the clustering of a list of points
+ * @param pointList  the points
+ * @param minPts  the number of neighbours (the point itself included) of the core distance
+ * @param minClusterSize  the smallest number of points of a cluster, at least 2
+ * @param threads  the number of threads of the core distance queries
+ */
+    public Hdbscan(ArrayList<Point3D> pointList, int minPts, int minClusterSize, int threads){
+        if(minClusterSize < 2){
+            throw new IllegalArgumentException("minClusterSize must be at least 2: " + minClusterSize);
+        }
+        if(minPts < 1){
+            throw new IllegalArgumentException("minPts must be at least 1: " + minPts);
+        }
+        this.pointList = pointList;
+        this.n = pointList.size();
+        this.minPts = minPts;
+        this.minClusterSize = minClusterSize;
+        this.threads = threads;
+    }
+
+/**
+ * Runs the whole algorithm
+ * @return int[] the cluster id of every point (1, 2, ... in the order of their first point), 0 for noise
+ */
+    public int[] findClusters(){
+        computeCoreDistances();
+        buildSpanningTree();
+        return extractClusters();
+    }
+
+/**
+ * Getter for the core distances computed by findClusters
+ * @return double[] core distance of every point
+ */
+    public double[] getCoreDistances(){
+        double[] values = new double[this.n];
+        for(int i = 0; i < this.n; i++){
+            values[i] = Math.sqrt(this.coreDistance[i]);
+        }
+        return values;
+    }
+
+    private void computeCoreDistances(){
+        KDtree tree = KDtree.build(this.pointList);
+        int k = Math.min(this.minPts, this.n);
+        double[] core = new double[this.n];
+        ThreadLocal<int[]> ids = ThreadLocal.withInitial(() -> new int[k]);
+        ThreadLocal<double[]> distances = ThreadLocal.withInitial(() -> new double[k]);
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try{
+            pool.submit(() -> IntStream.range(0, this.n).parallel().forEach(i -> {
+                Point3D point = this.pointList.get(i);
+                double[] d = distances.get();
+                int found = tree.nearest(point.getX(), point.getY(), point.getZ(), k, ids.get(), d);
+                core[i] = found > 0 ? d[found - 1] : 0;
+            })).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Core distances interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Core distances failed", e.getCause());
+        }finally{
+            pool.shutdown();
+        }
+        this.coreDistance = core;
+    }
+
+/**
+ * Boruvka's algorithm over the mutual reachability distance
+ */
+    private void buildSpanningTree(){
+        int size = this.n;
+        this.edgeA = new int[Math.max(size - 1, 0)];
+        this.edgeB = new int[Math.max(size - 1, 0)];
+        this.edgeWeight = new double[Math.max(size - 1, 0)];
+        this.edgeCount = 0;
+        if(size < 2){
+            return;
+        }
+        NearestNeighboursFlatKD flat = new NearestNeighboursFlatKD(this.pointList);
+        this.coords = flat.treeCoords();
+        this.treeIds = flat.treeIds();
+        this.axes = flat.treeAxes();
+        this.slotCore = new double[size];
+        for(int s = 0; s < size; s++){
+            this.slotCore[s] = this.coreDistance[this.treeIds[s]];
+        }
+        this.boxMin = new double[3 * size];
+        this.boxMax = new double[3 * size];
+        this.minCore = new double[size];
+        initNode(0, size);
+
+        this.comp = new int[size];
+        this.nodeComp = new int[size];
+        this.bestWeight = new double[size];
+        this.bestFrom = new int[size];
+        this.bestTo = new int[size];
+        ConcurrentUnionFind sets = new ConcurrentUnionFind(size);
+        IntList stack = new IntList();
+        int components = size;
+        while(components > 1){
+            for(int s = 0; s < size; s++){
+                this.comp[s] = sets.find(this.treeIds[s]);
+            }
+            updateComponents(0, size);
+            Arrays.fill(this.bestWeight, Double.POSITIVE_INFINITY);
+            Arrays.fill(this.bestFrom, -1);
+            for(int s = 0; s < size; s++){
+                nearestOutside(s, stack);
+            }
+            int before = components;
+            for(int c = 0; c < size; c++){
+                int a = this.bestFrom[c];
+                if(a < 0){
+                    continue;
+                }
+                int b = this.bestTo[c];
+                if(sets.find(a) != sets.find(b)){ //2 components may pick the same edge
+                    sets.union(a, b);
+                    this.edgeA[this.edgeCount] = a;
+                    this.edgeB[this.edgeCount] = b;
+                    this.edgeWeight[this.edgeCount++] = this.bestWeight[c];
+                    components--;
+                }
+            }
+            if(components == before){
+                throw new IllegalStateException("Spanning tree round added no edge");
+            }
+        }
+    }
+
+/**
+ * Computes the bounding box and the smallest core distance of the sub-tree of [lo, hi)
+ */
+    private void initNode(int lo, int hi){
+        int mid = (lo + hi) >>> 1;
+        for(int a = 0; a < 3; a++){
+            this.boxMin[3 * mid + a] = this.coords[3 * mid + a];
+            this.boxMax[3 * mid + a] = this.coords[3 * mid + a];
+        }
+        this.minCore[mid] = this.slotCore[mid];
+        if(lo < mid){
+            initNode(lo, mid);
+            include(mid, (lo + mid) >>> 1);
+        }
+        if(mid + 1 < hi){
+            initNode(mid + 1, hi);
+            include(mid, (mid + 1 + hi) >>> 1);
+        }
+    }
+
+    private void include(int node, int child){
+        for(int a = 0; a < 3; a++){
+            this.boxMin[3 * node + a] = Math.min(this.boxMin[3 * node + a], this.boxMin[3 * child + a]);
+            this.boxMax[3 * node + a] = Math.max(this.boxMax[3 * node + a], this.boxMax[3 * child + a]);
+        }
+        this.minCore[node] = Math.min(this.minCore[node], this.minCore[child]);
+    }
+
+/**
+ * Sets nodeComp for the sub-tree of [lo, hi)
+ * @return int the component of all its points, -1 if mixed, -2 if the range is empty
+ */
+    private int updateComponents(int lo, int hi){
+        if(lo >= hi){
+            return -2;
+        }
+        int mid = (lo + hi) >>> 1;
+        int c = this.comp[mid];
+        int left = updateComponents(lo, mid);
+        int right = updateComponents(mid + 1, hi);
+        if(left != -2 && left != c || right != -2 && right != c){
+            c = -1;
+        }
+        this.nodeComp[mid] = c;
+        return c;
+    }
+
+/**
+ * Finds the lightest edge from the point at tree position s to a point of another component,
+ * and keeps it if it is lighter than the best edge of its component so far.
+ * The search starts with the best edge of the component as bound, so most sub-trees are skipped
+ */
+    private void nearestOutside(int s, IntList stack){
+        int c = this.comp[s];
+        int from = this.treeIds[s];
+        double x = this.coords[3 * s];
+        double y = this.coords[3 * s + 1];
+        double z = this.coords[3 * s + 2];
+        double core = this.slotCore[s];
+        double best = this.bestWeight[c];
+        int bestA = this.bestFrom[c];
+        int bestB = this.bestTo[c];
+        boolean found = false;
+        stack.clear();
+        stack.add(0);
+        stack.add(this.n);
+        while(!stack.isEmpty()){
+            int hi = stack.pop();
+            int lo = stack.pop();
+            int mid = (lo + hi) >>> 1;
+            if(this.nodeComp[mid] == c){
+                continue;
+            }
+            double bound = Math.max(core, Math.max(this.minCore[mid], boxDistance(x, y, z, mid)));
+            if(bound > best){
+                continue;
+            }
+            if(this.comp[mid] != c){
+                double dx = this.coords[3 * mid] - x;
+                double dy = this.coords[3 * mid + 1] - y;
+                double dz = this.coords[3 * mid + 2] - z;
+                double w = Math.max(Math.max(core, this.slotCore[mid]), dx * dx + dy * dy + dz * dz);
+                int to = this.treeIds[mid];
+                if(lighter(w, from, to, best, bestA, bestB)){
+                    best = w;
+                    bestA = from;
+                    bestB = to;
+                    found = true;
+                }
+            }
+            int axis = this.axes[mid];
+            boolean leftFirst = (axis == 0 ? x : (axis == 1 ? y : z)) < this.coords[3 * mid + axis];
+            if(leftFirst){ //the near child is pushed last, so it is visited first
+                push(stack, mid + 1, hi);
+                push(stack, lo, mid);
+            }
+            else{
+                push(stack, lo, mid);
+                push(stack, mid + 1, hi);
+            }
+        }
+        if(found){
+            this.bestWeight[c] = best;
+            this.bestFrom[c] = bestA;
+            this.bestTo[c] = bestB;
+        }
+    }
+
+    private static void push(IntList stack, int lo, int hi){
+        if(lo < hi){
+            stack.add(lo);
+            stack.add(hi);
+        }
+    }
+
+/**
+ * Total order of the edges: by weight, then by their end points. With ties broken the same way by every
+ * component, the edges picked in a round cannot form a cycle and the tree is minimal
+ */
+    private static boolean lighter(double w, int a, int b, double bestW, int bestA, int bestB){
+        if(w != bestW){
+            return w < bestW;
+        }
+        if(bestA < 0){
+            return true;
+        }
+        int lo = Math.min(a, b);
+        int bestLo = Math.min(bestA, bestB);
+        if(lo != bestLo){
+            return lo < bestLo;
+        }
+        return Math.max(a, b) < Math.max(bestA, bestB);
+    }
+
+/**
+ * Squared distance from (x, y, z) to the bounding box of the points under a node, 0 inside the box
+ */
+    private double boxDistance(double x, double y, double z, int node){
+        int b = 3 * node;
+        return axisGap(x, this.boxMin[b], this.boxMax[b])
+                + axisGap(y, this.boxMin[b + 1], this.boxMax[b + 1])
+                + axisGap(z, this.boxMin[b + 2], this.boxMax[b + 2]);
+    }
+
+/**
+ * Squared distance from v to the interval [lo, hi] along one axis
+ */
+    private static double axisGap(double v, double lo, double hi){
+        double d = v < lo ? lo - v : (v > hi ? v - hi : 0);
+        return d * d;
+    }
+
+/**
+ * Builds the single linkage hierarchy from the spanning tree, condenses it, computes the stabilities
+ * and labels the points with the selected clusters
+ */
+    private int[] extractClusters(){
+        int[] labels = new int[this.n];
+        int m = this.edgeCount;
+        if(m == 0){
+            return labels;
+        }
+        sortEdges();
+        //single linkage: node i < n is point i, node n + e is the merge of edge e
+        int[] left = new int[m];
+        int[] right = new int[m];
+        int[] size = new int[m];
+        double[] lambda = new double[m];
+        int[] nodeOf = new int[this.n]; //current node of every set, indexed by its root
+        for(int i = 0; i < this.n; i++){
+            nodeOf[i] = i;
+        }
+        ConcurrentUnionFind sets = new ConcurrentUnionFind(this.n);
+        for(int e = 0; e < m; e++){
+            int ra = sets.find(this.edgeA[e]);
+            int rb = sets.find(this.edgeB[e]);
+            left[e] = nodeOf[ra];
+            right[e] = nodeOf[rb];
+            size[e] = sizeOf(left[e], size) + sizeOf(right[e], size);
+            double distance = Math.sqrt(this.edgeWeight[e]);
+            lambda[e] = distance > 1 / MAX_LAMBDA ? 1 / distance : MAX_LAMBDA;
+            sets.union(ra, rb);
+            nodeOf[sets.find(ra)] = this.n + e;
+        }
+
+        //condensed tree: clusters are numbered from the root (0) down, so a child has a larger number than its parent
+        int[] parent = new int[this.n];
+        double[] birth = new double[this.n];
+        double[] stability = new double[this.n];
+        boolean[] hasChild = new boolean[this.n];
+        int clusterCount = 1;
+        parent[0] = -1;
+        int[] pointCluster = new int[this.n]; //cluster that each point falls out of
+        int[] nodeCluster = new int[m];
+        IntList stack = new IntList();
+        IntList fall = new IntList();
+        int root = this.n + m - 1;
+        nodeCluster[root - this.n] = 0;
+        stack.add(root);
+        while(!stack.isEmpty()){
+            int e = stack.pop() - this.n;
+            int c = nodeCluster[e];
+            double l = lambda[e];
+            int ls = sizeOf(left[e], size);
+            int rs = sizeOf(right[e], size);
+            if(ls >= this.minClusterSize && rs >= this.minClusterSize){ //true split: 2 new clusters
+                stability[c] += (ls + rs) * (l - birth[c]);
+                hasChild[c] = true;
+                for(int child: new int[]{left[e], right[e]}){
+                    parent[clusterCount] = c;
+                    birth[clusterCount] = l;
+                    nodeCluster[child - this.n] = clusterCount++;
+                    stack.add(child);
+                }
+                continue;
+            }
+            for(int child: new int[]{left[e], right[e]}){
+                if(sizeOf(child, size) >= this.minClusterSize){ //the cluster goes on in this child
+                    nodeCluster[child - this.n] = c;
+                    stack.add(child);
+                    continue;
+                }
+                fall.clear(); //the points of this child fall out of the cluster at l
+                fall.add(child);
+                while(!fall.isEmpty()){
+                    int node = fall.pop();
+                    if(node < this.n){
+                        pointCluster[node] = c;
+                        stability[c] += l - birth[c];
+                    }
+                    else{
+                        fall.add(left[node - this.n]);
+                        fall.add(right[node - this.n]);
+                    }
+                }
+            }
+        }
+
+        //selection, from the leaves up: a cluster is kept if it is more stable than its selected descendants
+        boolean[] selected = new boolean[clusterCount];
+        double[] childSum = new double[clusterCount];
+        for(int c = clusterCount - 1; c > 0; c--){
+            double value = stability[c];
+            if(hasChild[c] && childSum[c] > stability[c]){
+                value = childSum[c];
+            }
+            else{
+                selected[c] = true;
+            }
+            childSum[parent[c]] += value;
+        }
+        int[] label = new int[clusterCount]; //selected cluster containing each cluster, -1 if none
+        label[0] = -1;
+        for(int c = 1; c < clusterCount; c++){
+            label[c] = label[parent[c]] >= 0 ? label[parent[c]] : (selected[c] ? c : -1);
+        }
+
+        int[] ids = new int[clusterCount]; //cluster ids in the order of the first point of each cluster
+        int next = 0;
+        for(int i = 0; i < this.n; i++){
+            int c = label[pointCluster[i]];
+            if(c < 0){
+                continue;
+            }
+            if(ids[c] == 0){
+                ids[c] = ++next;
+            }
+            labels[i] = ids[c];
+        }
+        return labels;
+    }
+
+    private int sizeOf(int node, int[] size){
+        return node < this.n ? 1 : size[node - this.n];
+    }
+
+/**
+ * Sorts the edges of the spanning tree by weight (heap sort of the 3 parallel arrays)
+ */
+    private void sortEdges(){
+        int m = this.edgeCount;
+        for(int i = m / 2 - 1; i >= 0; i--){
+            siftEdge(i, m);
+        }
+        for(int end = m - 1; end > 0; end--){
+            swapEdges(0, end);
+            siftEdge(0, end);
+        }
+    }
+
+    private void siftEdge(int i, int size){
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= size){
+                return;
+            }
+            if(child + 1 < size && this.edgeWeight[child + 1] > this.edgeWeight[child]){
+                child++;
+            }
+            if(this.edgeWeight[child] <= this.edgeWeight[i]){
+                return;
+            }
+            swapEdges(i, child);
+            i = child;
+        }
+    }
+
+    private void swapEdges(int i, int j){
+        int a = this.edgeA[i];
+        this.edgeA[i] = this.edgeA[j];
+        this.edgeA[j] = a;
+        int b = this.edgeB[i];
+        this.edgeB[i] = this.edgeB[j];
+        this.edgeB[j] = b;
+        double w = this.edgeWeight[i];
+        this.edgeWeight[i] = this.edgeWeight[j];
+        this.edgeWeight[j] = w;
+    }
+}
@@ -0,0 +1,673 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps a DBScan clustering up to date while points arrive and expire in batches,
+ * e.g. the frames of a sensor, instead of rebuilding the index and clustering every frame from scratch.
+ *
+ * Every point gets an id when it is inserted. The points are kept in a KDtree with insert and delete,
+ * together with the number of neighbours of every point. A batch only works on the neighbourhoods it touches:
+ * - expired points: the neighbour count of their neighbours goes down. A cluster that loses a core point
+ *   (expired or no longer dense enough) may split. Only where it lost it is searched: from the core points that
+ *   were next to the lost ones, through core points, until they have all reached each other (see split)
+ * - inserted points: the neighbour count of their neighbours goes up. The new core points are expanded
+ *   through the core points that have no live cluster, and every live cluster they reach is merged
+ *   (the smaller ones into the largest), so clusters that are not touched keep their points and ids
+ * - remaining points without a cluster join the cluster of a core neighbour, or the noise
+ *
+ * Ids of expired points are given again to later points, so the memory used follows the number of
+ * live points. After every batch the labels can be read with getLabels() or given to a listener
+ * @author Aksh Babbar (300034042)
+ */
+public class IncrementalDBScan {
+
+    private final double eps;
+    private final int minPts; //number of neighbours (the point itself included) that makes a core point
+    private final KDtree tree; //live points, indexed by id
+    private Point3D[] points; //point of every id, null for a free id
+    private int[] counts; //number of neighbours of every id, the point itself included
+    private int[] previous; //cluster id of a point before its cluster was dissolved in the current batch
+    private int[] owner; //search of split that reached a core point, plus 1, 0 if none
+    private final IntList freeIds; //ids of expired points, given again first
+    private int nextId; //ids below are live or free
+    private int size; //number of live points
+    private int insertsSinceRebuild; //points added to the tree since it was last balanced
+    private final HashMap<Integer, Cluster> clusters; //live clusters by cluster id
+    private final Noise noise;
+    private int nextClusterID;
+    private Consumer<int[]> listener; //called with the labels after every batch, may be null
+    private final IntList neighbours; //buffer of the range queries
+
+/**
+ * Constructor for an empty clustering
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ */
+    public IncrementalDBScan(double eps, int minPts){
+        this.eps = eps;
+        this.minPts = minPts;
+        this.tree = new KDtree();
+        this.points = new Point3D[16];
+        this.counts = new int[16];
+        this.previous = new int[16];
+        this.owner = new int[16];
+        this.freeIds = new IntList();
+        this.nextId = 0;
+        this.size = 0;
+        this.clusters = new HashMap<Integer, Cluster>();
+        this.noise = new Noise(0);
+        this.nextClusterID = 1;
+        this.neighbours = new IntList();
+    }
+
+/**
+ * Sets the callback run at the end of every batch
+ * @param listener  receives the labels of the ids, as returned by getLabels(), null for none
+ */
+    public void setListener(Consumer<int[]> listener){
+        this.listener = listener;
+    }
+
+/**
+ * Applies one batch: the expired points are removed first, then the inserted points are added,
+ * and the clusters touched by either are updated
+ * @param inserted  the new points, each gets an id (Point3D.setIndex) and a cluster id
+ * @param expired  ids of the points to be removed, unknown ids are ignored
+ * @return int[] id given to every inserted point, in the same order
+ */
+    public int[] update(List<Point3D> inserted, int[] expired){
+        IntList seeds = new IntList(); //core points to expand from
+        IntList pending = new IntList(); //points that have no cluster yet
+        BitSet retired = new BitSet(); //ids of dissolved clusters, given again to the parts they split into
+        IntList lost = new IntList(); //(id, cluster id) pairs: points of a cluster next to a core point it lost
+        BitSet demoted = new BitSet(); //live points that are no longer core points
+        for(int id: expired){
+            expire(id, lost, demoted);
+        }
+        splitClusters(lost, demoted, seeds, pending, retired);
+
+        int[] ids = new int[inserted.size()];
+        BitSet fresh = new BitSet();
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = insert(inserted.get(i));
+            fresh.set(ids[i]);
+        }
+        for(int id: ids){
+            Point3D point = this.points[id];
+            neighboursOf(point);
+            this.counts[id] = this.neighbours.size();
+            for(int k = 0; k < this.neighbours.size(); k++){
+                int q = this.neighbours.get(k);
+                if(!fresh.get(q) && ++this.counts[q] == this.minPts){ //q becomes a core point
+                    seeds.add(q);
+                }
+            }
+            if(this.counts[id] >= this.minPts){
+                seeds.add(id);
+            }
+            pending.add(id);
+        }
+
+        BitSet visited = new BitSet();
+        for(int k = 0; k < seeds.size(); k++){
+            int seed = seeds.get(k);
+            if(this.points[seed] != null && this.counts[seed] >= this.minPts && !visited.get(seed)){
+                expand(seed, visited, retired);
+            }
+        }
+        for(int k = 0; k < pending.size(); k++){ //points still without a cluster are borders or noise
+            int id = pending.get(k);
+            Point3D point = this.points[id];
+            this.previous[id] = 0;
+            if(point == null || point.getClusterId() >= 0){
+                continue;
+            }
+            Cluster target = this.noise;
+            neighboursOf(point);
+            for(int j = 0; j < this.neighbours.size(); j++){
+                int q = this.neighbours.get(j);
+                if(this.counts[q] >= this.minPts && this.points[q].getClusterId() > 0){
+                    target = this.clusters.get(this.points[q].getClusterId());
+                    break;
+                }
+            }
+            target.addPoint(point);
+        }
+
+        //a tree grown by add() or full of deleted nodes is balanced again, in O(n log n) every O(n) changes
+        if(this.tree.getDeletedCount() > this.size || this.insertsSinceRebuild > Math.max(this.size, 1024)){
+            this.tree.rebuild(false);
+            this.insertsSinceRebuild = 0;
+        }
+        if(this.listener != null){
+            this.listener.accept(getLabels());
+        }
+        return ids;
+    }
+
+/**
+ * Removes a point and lowers the neighbour count of its neighbours.
+ * If it was a core point of a cluster, its neighbours in the cluster are added to lost with the cluster id,
+ * and the neighbours that stop being core points are marked in demoted
+ */
+    private void expire(int id, IntList lost, BitSet demoted){
+        if(id < 0 || id >= this.nextId || this.points[id] == null){
+            return;
+        }
+        Point3D point = this.points[id];
+        int label = point.getClusterId();
+        boolean core = label > 0 && (this.counts[id] >= this.minPts || demoted.get(id));
+        demoted.clear(id);
+        neighboursOf(point);
+        for(int k = 0; k < this.neighbours.size(); k++){
+            int q = this.neighbours.get(k);
+            if(q == id){
+                continue;
+            }
+            if(core && this.points[q].getClusterId() == label){
+                lost.add(q);
+                lost.add(label);
+            }
+            if(this.counts[q]-- == this.minPts && this.points[q].getClusterId() > 0){ //q is no longer a core point
+                demoted.set(q);
+            }
+        }
+        Cluster cluster = label == 0 ? this.noise : this.clusters.get(label);
+        if(cluster != null){
+            cluster.removePoint(point);
+            if(label > 0 && cluster.getSize() == 0){
+                this.clusters.remove(label);
+            }
+        }
+        this.tree.remove(id);
+        this.points[id] = null;
+        this.freeIds.add(id);
+        this.size--;
+    }
+
+/**
+ * Updates the clusters that lost core points in the expirations of a batch. The lost points are split in:
+ * - core points: the starts of the search of split, for their cluster
+ * - other points: they stay in their cluster if they still have a core neighbour in it, otherwise they
+ *   leave it and are added to pending, to join the cluster of another core neighbour or the noise
+ * A demoted point is lost by its cluster as a core point too, so its neighbours are added to the lost points,
+ * and it is one of them
+ */
+    private void splitClusters(IntList lost, BitSet demoted, IntList seeds, IntList pending, BitSet retired){
+        for(int q = demoted.nextSetBit(0); q >= 0; q = demoted.nextSetBit(q + 1)){
+            int label = this.points[q].getClusterId();
+            neighboursOf(this.points[q]);
+            for(int k = 0; k < this.neighbours.size(); k++){
+                int w = this.neighbours.get(k);
+                if(this.points[w].getClusterId() == label){ //q itself included
+                    lost.add(w);
+                    lost.add(label);
+                }
+            }
+        }
+        HashMap<Integer, IntList> starts = new HashMap<Integer, IntList>(); //core points by cluster id
+        IntList others = new IntList();
+        for(int k = 0; k < lost.size(); k += 2){
+            int id = lost.get(k);
+            int label = lost.get(k + 1);
+            if(this.points[id] == null || this.points[id].getClusterId() != label){ //expired since
+                continue;
+            }
+            if(this.counts[id] >= this.minPts){
+                starts.computeIfAbsent(label, c -> new IntList()).add(id);
+            }
+            else{
+                others.add(id);
+            }
+        }
+        for(Map.Entry<Integer, IntList> entry: starts.entrySet()){
+            Cluster cluster = this.clusters.get(entry.getKey());
+            if(cluster != null){
+                split(cluster, entry.getValue(), seeds, pending, retired);
+            }
+        }
+        for(int k = 0; k < others.size(); k++){
+            Point3D point = this.points[others.get(k)];
+            int label = point.getClusterId();
+            if(label > 0 && !hasCoreNeighbourIn(point, label)){
+                Cluster cluster = this.clusters.get(label);
+                cluster.removePoint(point);
+                if(cluster.getSize() == 0){
+                    this.clusters.remove(label);
+                }
+                pending.add(point.getIndex());
+            }
+        }
+    }
+
+/**
+ * Finds whether a cluster that lost core points came apart, and gives every part that did its own cluster.
+ * A search through the core points of the cluster starts from every core point next to a lost one, and the
+ * searches take one step each in turn. Two searches that reach each other go on as one: the cluster is still
+ * connected once a single search is left, which usually takes a few steps around the lost points. A search
+ * that has no point left to visit has gone through a whole part; once at most one search is still going on,
+ * every finished one becomes a new cluster with the borders it reached, and the cluster keeps the last part.
+ * The parts that came apart are then found by visiting about as many core points as they hold, not the cluster.
+ * When there are so many starts for the size of the cluster that the searches would go through most of it,
+ * the cluster is dissolved and expanded again instead
+ * @param starts  core points of the cluster next to the core points it lost, may hold the same point twice
+ */
+    private void split(Cluster cluster, IntList starts, IntList seeds, IntList pending, BitSet retired){
+        int label = cluster.getClusterID();
+        ArrayList<IntList> reached = new ArrayList<IntList>(); //core points reached, by search
+        ArrayList<IntList> queues = new ArrayList<IntList>(); //core points reached in order, visited up to next
+        ArrayList<IntList> borders = new ArrayList<IntList>(); //other points of the cluster reached by every search
+        HashMap<Long, Integer> cells = new HashMap<Long, Integer>(); //search of the starts of every cell
+        double side = this.eps / 2; //2 points of a cell are less than eps apart, so they are connected already
+        for(int k = 0; k < starts.size(); k++){
+            int id = starts.get(k);
+            if(this.owner[id] != 0){
+                continue;
+            }
+            Point3D point = this.points[id];
+            long cx = (long) Math.floor(point.getX() / side);
+            long cy = (long) Math.floor(point.getY() / side);
+            long cz = (long) Math.floor(point.getZ() / side);
+            long key = (cx & 0x1FFFFF) << 42 | (cy & 0x1FFFFF) << 21 | (cz & 0x1FFFFF);
+            Integer g = cells.get(key);
+            if(g != null){ //the key only holds the low bits of the cell, check the cell of the first start
+                Point3D first = this.points[reached.get(g).get(0)];
+                if((long) Math.floor(first.getX() / side) != cx || (long) Math.floor(first.getY() / side) != cy
+                        || (long) Math.floor(first.getZ() / side) != cz){
+                    g = null;
+                }
+            }
+            if(g == null){
+                g = reached.size();
+                cells.putIfAbsent(key, g);
+                reached.add(new IntList());
+                queues.add(new IntList());
+                borders.add(new IntList());
+            }
+            this.owner[id] = g + 1;
+            reached.get(g).add(id);
+            queues.get(g).add(id);
+        }
+        int searches = reached.size();
+        if(searches < 2 || 2 * searches > cluster.getSize()){
+            clearOwners(reached);
+            if(searches >= 2){
+                dissolve(cluster, seeds, pending, retired);
+            }
+            return;
+        }
+        int[] parent = new int[searches]; //searches that reached each other, a root goes on for all of them
+        int[] next = new int[searches]; //position in the queue of the next core point to visit, by root
+        IntList running = new IntList(); //roots that have core points left to visit
+        for(int g = 0; g < searches; g++){
+            parent[g] = g;
+            running.add(g);
+        }
+        int roots = searches;
+        while(roots > 1 && running.size() > 1){
+            for(int n = 0; n < running.size() && roots > 1; n++){
+                int g = running.get(n);
+                if(parent[g] != g || next[g] == queues.get(g).size()){ //joined another search in this round
+                    continue;
+                }
+                neighboursOf(this.points[queues.get(g).get(next[g]++)]);
+                for(int k = 0; k < this.neighbours.size(); k++){
+                    int w = this.neighbours.get(k);
+                    if(this.points[w].getClusterId() != label){
+                        continue;
+                    }
+                    if(this.counts[w] < this.minPts){
+                        borders.get(g).add(w);
+                    }
+                    else if(this.owner[w] == 0){
+                        this.owner[w] = g + 1;
+                        reached.get(g).add(w);
+                        queues.get(g).add(w);
+                    }
+                    else{
+                        int h = root(parent, this.owner[w] - 1);
+                        if(h != g){
+                            g = join(parent, next, reached, queues, borders, g, h);
+                            roots--;
+                        }
+                    }
+                }
+            }
+            IntList left = new IntList();
+            for(int n = 0; n < running.size(); n++){
+                int g = running.get(n);
+                if(parent[g] == g && next[g] < queues.get(g).size()){
+                    left.add(g);
+                }
+            }
+            running = left;
+        }
+        if(roots > 1){
+            int kept = running.size() == 1 ? running.get(0) : -1; //a part that is not searched to its end stays the cluster
+            for(int g = 0; g < searches && running.isEmpty(); g++){ //otherwise the largest part
+                if(parent[g] == g && (kept < 0 || reached.get(g).size() > reached.get(kept).size())){
+                    kept = g;
+                }
+            }
+            for(int g = 0; g < searches; g++){
+                if(parent[g] != g || g == kept){
+                    continue;
+                }
+                Cluster part = new Cluster(this.nextClusterID++);
+                this.clusters.put(part.getClusterID(), part);
+                move(reached.get(g), cluster, part);
+                move(borders.get(g), cluster, part);
+            }
+        }
+        clearOwners(reached);
+    }
+
+/**
+ * Joins 2 searches of split that reached each other: the smaller one goes on as part of the larger one,
+ * its core points left to visit are queued after the ones of the larger one
+ * @return the search that goes on
+ */
+    private static int join(int[] parent, int[] next, ArrayList<IntList> reached, ArrayList<IntList> queues,
+            ArrayList<IntList> borders, int g, int h){
+        int from = reached.get(g).size() < reached.get(h).size() ? g : h;
+        int to = from == g ? h : g;
+        for(int k = next[from]; k < queues.get(from).size(); k++){
+            queues.get(to).add(queues.get(from).get(k));
+        }
+        reached.get(to).addAll(reached.get(from));
+        borders.get(to).addAll(borders.get(from));
+        queues.set(from, new IntList());
+        reached.set(from, new IntList());
+        borders.set(from, new IntList());
+        next[from] = 0;
+        parent[from] = to;
+        return to;
+    }
+
+/**
+ * Moves the points that are still in a cluster to another one
+ */
+    private void move(IntList ids, Cluster from, Cluster to){
+        for(int k = 0; k < ids.size(); k++){
+            Point3D point = this.points[ids.get(k)];
+            if(point.getClusterId() == from.getClusterID()){
+                from.removePoint(point);
+                to.addPoint(point);
+            }
+        }
+    }
+
+    private void clearOwners(ArrayList<IntList> reached){
+        for(IntList ids: reached){
+            for(int k = 0; k < ids.size(); k++){
+                this.owner[ids.get(k)] = 0;
+            }
+        }
+    }
+
+    private static int root(int[] parent, int g){
+        while(parent[g] != g){
+            g = parent[g];
+        }
+        return g;
+    }
+
+/**
+ * Takes all the points out of a cluster: they are added to pending, its core points to seeds,
+ * and its id to retired so that the part holding one of its core points gets it again
+ */
+    private void dissolve(Cluster cluster, IntList seeds, IntList pending, BitSet retired){
+        int c = cluster.getClusterID();
+        this.clusters.remove(c);
+        retired.set(c);
+        for(Point3D point: cluster.getPointsInCluster()){
+            int id = point.getIndex();
+            point.setClusterId(-1);
+            this.previous[id] = c;
+            pending.add(id);
+            if(this.counts[id] >= this.minPts){
+                seeds.add(id);
+            }
+        }
+    }
+
+/**
+ * Checks whether a point has a core point of the cluster among its neighbours
+ */
+    private boolean hasCoreNeighbourIn(Point3D point, int label){
+        neighboursOf(point);
+        for(int k = 0; k < this.neighbours.size(); k++){
+            int q = this.neighbours.get(k);
+            if(this.counts[q] >= this.minPts && this.points[q].getClusterId() == label){
+                return true;
+            }
+        }
+        return false;
+    }
+
+/**
+ * Gives an id to a new point and adds it to the tree, its neighbours are counted by the caller
+ * @return int id of the point
+ */
+    private int insert(Point3D point){
+        int id;
+        if(!this.freeIds.isEmpty()){
+            id = this.freeIds.pop();
+        }
+        else{
+            id = this.nextId++;
+            if(id == this.points.length){
+                this.points = Arrays.copyOf(this.points, id * 2);
+                this.counts = Arrays.copyOf(this.counts, id * 2);
+                this.previous = Arrays.copyOf(this.previous, id * 2);
+                this.owner = Arrays.copyOf(this.owner, id * 2);
+            }
+        }
+        point.setIndex(id);
+        point.setClusterId(-1);
+        this.points[id] = point;
+        this.counts[id] = 0;
+        this.tree.add(point, id);
+        this.insertsSinceRebuild++;
+        this.size++;
+        return id;
+    }
+
+/**
+ * Finds the core points reachable from the seed through core points that have no live cluster.
+ * A core point of a live cluster is not gone through: that cluster is connected already, it is
+ * only merged. The reached points, the merged clusters and the borders without a cluster end up
+ * in the largest merged cluster, or in a new one if none was reached
+ */
+    private void expand(int seed, BitSet visited, BitSet retired){
+        IntList component = new IntList();
+        IntList borders = new IntList();
+        ArrayList<Cluster> touched = new ArrayList<Cluster>();
+        IntList frontier = new IntList();
+        frontier.add(seed);
+        visited.set(seed);
+        while(!frontier.isEmpty()){
+            int v = frontier.pop();
+            component.add(v);
+            addTouched(touched, this.points[v].getClusterId());
+            neighboursOf(this.points[v]);
+            for(int k = 0; k < this.neighbours.size(); k++){
+                int w = this.neighbours.get(k);
+                if(this.counts[w] < this.minPts){
+                    borders.add(w);
+                }
+                else if(this.points[w].getClusterId() > 0){
+                    addTouched(touched, this.points[w].getClusterId());
+                }
+                else if(!visited.get(w)){
+                    visited.set(w);
+                    frontier.add(w);
+                }
+            }
+        }
+
+        Cluster target = null;
+        for(Cluster c: touched){
+            if(target == null || c.getSize() > target.getSize()){
+                target = c;
+            }
+        }
+        if(target == null){
+            target = new Cluster(newClusterID(component, retired));
+            this.clusters.put(target.getClusterID(), target);
+        }
+        for(Cluster c: touched){
+            if(c != target){
+                for(Point3D point: c.getPointsInCluster()){
+                    target.addPoint(point);
+                }
+                this.clusters.remove(c.getClusterID());
+            }
+        }
+        for(int k = 0; k < component.size(); k++){
+            join(this.points[component.get(k)], target);
+        }
+        for(int k = 0; k < borders.size(); k++){
+            Point3D point = this.points[borders.get(k)];
+            if(point.getClusterId() <= 0){ //borders of another cluster stay there
+                join(point, target);
+            }
+        }
+    }
+
+/**
+ * Finds the live points less than eps away from the point, the point itself included
+ * @return IntList the ids of the neighbours, in the shared buffer
+ */
+    private IntList neighboursOf(Point3D point){
+        this.neighbours.clear();
+        this.tree.rangeQuery(point.getX(), point.getY(), point.getZ(), this.eps, this.neighbours);
+        return this.neighbours;
+    }
+
+    private void addTouched(ArrayList<Cluster> touched, int label){
+        if(label <= 0){
+            return;
+        }
+        Cluster cluster = this.clusters.get(label);
+        if(!touched.contains(cluster)){
+            touched.add(cluster);
+        }
+    }
+
+/**
+ * Moves a point from the noise (or from no cluster) to the cluster
+ */
+    private void join(Point3D point, Cluster cluster){
+        if(point.getClusterId() == cluster.getClusterID()){
+            return;
+        }
+        if(point.getClusterId() == 0){
+            this.noise.removePoint(point);
+        }
+        cluster.addPoint(point);
+    }
+
+/**
+ * Id of a new cluster: the id of a dissolved cluster that one of its core points was in, so that a
+ * cluster that did not really split keeps its id, otherwise the next unused id
+ */
+    private int newClusterID(IntList component, BitSet retired){
+        for(int k = 0; k < component.size(); k++){
+            int c = this.previous[component.get(k)];
+            if(c > 0 && retired.get(c)){
+                retired.clear(c);
+                return c;
+            }
+        }
+        return this.nextClusterID++;
+    }
+
+/**
+ * Snapshot of the current labels
+ * @return int[] indexed by id: the cluster id of the point (1, 2, ...), 0 for noise, -1 for a free id
+ */
+    public int[] getLabels(){
+        int[] labels = new int[this.nextId];
+        for(int id = 0; id < this.nextId; id++){
+            labels[id] = this.points[id] != null ? this.points[id].getClusterId() : -1;
+        }
+        return labels;
+    }
+
+/**
+ * Getter for the label of one point
+ * @param id  the id of the point
+ * @return int cluster id of the point, 0 for noise, -1 if the id is not live
+ */
+    public int getLabel(int id){
+        return id >= 0 && id < this.nextId && this.points[id] != null ? this.points[id].getClusterId() : -1;
+    }
+
+/**
+ * Getter for the live point of an id
+ * @return Point3D the point, null if the id is not live
+ */
+    public Point3D getPoint(int id){
+        return id >= 0 && id < this.nextId ? this.points[id] : null;
+    }
+
+/**
+ * Getter for the number of live points
+ * @return int number of points
+ */
+    public int size(){
+        return this.size;
+    }
+
+/**
+ * Getter for the current clusters
+ * @return ArrayList<Cluster> of the clusters, largest first
+ */
+    public ArrayList<Cluster> getClusters(){
+        ArrayList<Cluster> list = new ArrayList<Cluster>(this.clusters.values());
+        Collections.sort(list);
+        return list;
+    }
+
+/**
+ * Getter for the current noise
+ * @return Noise the points that are in no cluster
+ */
+    public Noise getNoise(){
+        return this.noise;
+    }
+
+/**
+ * Replays a point cloud as a stream: the points arrive in batches in file order,
+ * and every batch is followed by the number of clusters and the time it took
+ * java IncrementalDBScan <file> <eps> <minPts> <batchSize>
+ */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 4){
+            System.out.println("java IncrementalDBScan <file> <eps> <minPts> <batchSize>");
+            return;
+        }
+        PointCloud cloud = args[0].endsWith(".pcb") ? BinaryPointCloud.read(args[0])
+            : MappedCSVReader.read(args[0], 2, Runtime.getRuntime().availableProcessors());
+        IncrementalDBScan stream = new IncrementalDBScan(Double.parseDouble(args[1]), Integer.parseInt(args[2]));
+        int batchSize = Integer.parseInt(args[3]);
+        for(int start = 0; start < cloud.size(); start += batchSize){
+            ArrayList<Point3D> batch = new ArrayList<Point3D>();
+            for(int i = start; i < Math.min(cloud.size(), start + batchSize); i++){
+                batch.add(new Point3D(cloud.getX(i), cloud.getY(i), cloud.getZ(i)));
+            }
+            long begin = System.nanoTime();
+            stream.update(batch, new int[0]);
+            System.out.println("Batch " + (start / batchSize + 1) + ": " + stream.size() + " points, "
+                + stream.clusters.size() + " clusters, " + (System.nanoTime() - begin) / 1000000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * This data structure is a growable list of primitive int values.
+ * It is used as a reusable buffer for the indices of points returned by
+ * the range queries so that no object is created per neighbour
+ * @author Aksh Babbar (300034042)
+ */
+public class IntList {
+
+    private int[] values; //backing array, grows when full
+    private int size; //number of values in the list
+
+    /** 
+     * Constructor that initializes an empty list with a default capacity
+     */
+    public IntList(){ 
+        this(16);
+    }
+
+    /** 
+     * Constructor that initializes an empty list with the given capacity
+     * @param capacity  initial length of the backing array
+     */
+    public IntList(int capacity){ 
+        this.values = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    /** 
+     * Adds a value at the end of the list, growing the backing array if needed
+     * @param value  the value to be added
+     */
+    public void add(int value){ 
+        if(this.size == this.values.length){
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    /** 
+     * Adds all the values of another list at the end of this one
+     * @param other  the list whose values are added, left unchanged
+     */
+    public void addAll(IntList other){ 
+        if(this.size + other.size > this.values.length){
+            this.values = Arrays.copyOf(this.values, Math.max(this.values.length * 2, this.size + other.size));
+        }
+        System.arraycopy(other.values, 0, this.values, this.size, other.size);
+        this.size += other.size;
+    }
+
+    /** 
+     * Getter for the value at the given position
+     * @param i  position in the list
+     * @return the value at position i
+     */
+    public int get(int i){ 
+        if(i >= this.size){
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        }
+        return this.values[i];
+    }
+
+    /** 
+     * Removes and returns the last value of the list, so the list can be used as a stack
+     * @return the last value
+     */
+    public int pop(){ 
+        if(this.size == 0){
+            throw new IndexOutOfBoundsException("pop from an empty list");
+        }
+        return this.values[--this.size];
+    }
+
+    /** 
+     * Getter for the number of values in the list
+     * @return integer size of the list
+     */
+    public int size(){ 
+        return this.size;
+    }
+
+    /** 
+     * Checks if the list contains no value
+     * @return boolean -> true if the list is empty, else false
+     */
+    public boolean isEmpty(){ 
+        return this.size == 0;
+    }
+
+    /** 
+     * Removes all the values from the list. The backing array is kept so that
+     * the list can be reused without allocating
+     */
+    public void clear(){ 
+        this.size = 0;
+    }
+
+    /** 
+     * Copies the values of the list into a new array
+     * @return int[] of length size() containing the values
+     */
+    public int[] toArray(){ 
+        return Arrays.copyOf(this.values, this.size);
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * This class computes the k-distance curve of a point cloud, used to choose the eps of DBScan:
+ * the distance of every point to its k-th nearest neighbour (the point itself included, so k is minPts),
+ * sorted in increasing order. Points of clusters have small k-distances and noise points large ones,
+ * so a good eps is where the curve bends upwards (the "knee").
+ *
+ * The knee is found as the point of the curve farthest below the chord from its first to its last point,
+ * both axes scaled to [0, 1] (Satopaa et al., "Finding a 'Kneedle' in a Haystack").
+ *
+ * The curve is written to '<file>_kdist_<k>.csv' (rank,distance) and a few of its quantiles are printed:
+ * java KDistance <file> <k> [--threads <n>] [--header-lines <n>]
+ * @author Aksh Babbar (300034042)
+ */
+public class KDistance {
+
+/**
+ * Sorted k-distance curve of a point cloud
+ * @param cloud  the points
+ * @param k  rank of the neighbour, the point itself included
+ * @param threads  the number of worker threads
+ * @return double[] the k-distance of every point, in increasing order
+ */
+    public static double[] curve(PointCloud cloud, int k, int threads){
+        double[] distances = new NearestNeighboursKD(cloud.toPoints()).kDistances(k, threads);
+        Arrays.sort(distances);
+        return distances;
+    }
+
+/**
+ * Finds the knee of a sorted k-distance curve
+ * @param curve  k-distances in increasing order
+ * @return int the position of the knee in the curve, 0 if it is flat
+ */
+    public static int knee(double[] curve){
+        int n = curve.length;
+        if(n < 3 || curve[n - 1] == curve[0]){
+            return 0;
+        }
+        double range = curve[n - 1] - curve[0];
+        int best = 0;
+        double bestGap = 0;
+        for(int i = 0; i < n; i++){
+            double gap = (double) i / (n - 1) - (curve[i] - curve[0]) / range; //height of the chord above the curve
+            if(gap > bestGap){
+                bestGap = gap;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args){
+        String usage = "java KDistance <file> <k> [--threads <n>] [--header-lines <n>]";
+        if(args.length < 2){
+            System.out.println(usage);
+            return;
+        }
+        int threads = 1;
+        int headerLines = 2;
+        for(int i = 2; i < args.length; i++){
+            if(args[i].equals("--threads")){
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--header-lines")){
+                headerLines = Integer.parseInt(args[++i]);
+            }
+        }
+        String fileName = args[0];
+        int k = Integer.parseInt(args[1]);
+        if(k < 1){
+            System.out.println("k must be at least 1\n" + usage);
+            return;
+        }
+        PointCloud cloud = fileName.endsWith(".pcb") ? DBScan.readBinary("PointClouds/" + fileName)
+            : DBScan.readCloud("PointClouds/" + fileName, headerLines, threads);
+        long begin = System.nanoTime();
+        double[] curve = curve(cloud, k, threads);
+        System.out.println(k + "-distances of " + curve.length + " points computed in " + (System.nanoTime() - begin) / 1000000 + " ms");
+        if(curve.length == 0){
+            return;
+        }
+        String outFileName = "Output/" + fileName.substring(0, fileName.length()-4) + "_kdist_" + k + ".csv";
+        try(PrintWriter out = new PrintWriter(new FileWriter(outFileName))){
+            out.println("rank,distance");
+            for(int i = 0; i < curve.length; i++){
+                out.println(i + "," + curve[i]);
+            }
+        }catch(IOException e){
+            System.out.println("IOException!");
+            e.printStackTrace();
+            System.exit(0);
+        }
+        for(double q: new double[]{0, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 1}){
+            int i = (int) Math.round(q * (curve.length - 1));
+            System.out.println("  " + (int) (q * 100) + "%: " + curve[i]);
+        }
+        int knee = knee(curve);
+        System.out.println("\nSuggested eps = " + curve[knee] + " for minPts = " + k + " (knee at rank " + knee
+            + ", " + (curve.length - knee - 1) + " points above it)");
+        System.out.println("\nCurve file created: " + outFileName);
+    }
+}
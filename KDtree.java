@@ -1,4 +1,8 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
  
 /**
@@ -13,13 +17,16 @@ public class KDtree {
      */
     public class KDnode{
         public Point3D point;
+        public int index; //position of the point in the list the tree was built from
         public int axis; //Axis of split
         public double value; //Coordinate value according to the split axis
         public KDnode left; //left child: node with value less than this
         public KDnode right; //right child: node with value greater than this
+        public boolean deleted; //removed with remove(), the node still splits the space until rebuild()
 
-        public KDnode(Point3D pt, int axis){
+        public KDnode(Point3D pt, int index, int axis){
             this.point= pt;
+            this.index= index;
             this.axis= axis;
             this.value= pt.get(axis);
             this.left = this.right = null;
@@ -27,12 +34,258 @@ public class KDtree {
     }
 
     private KDnode root; //Root node of the KD Tree
+    private int size; //Number of points in the tree
+    private int nextIndex; //index given by add(point)
+    private int deletedCount; //nodes removed but still in the tree
+    private ArrayList<KDnode> byIndex; //node of every index, created by the first remove()
+    private final ThreadLocal<ArrayDeque<KDnode>> stacks = ThreadLocal.withInitial(ArrayDeque::new); //Traversal stack reused by rangeQuery
+    private final ThreadLocal<SearchQueue> searchQueues = ThreadLocal.withInitial(SearchQueue::new); //Priority queue reused by nearest
+    private LongAdder visits; //nodes visited by rangeQuery and countWithin, null when they are not counted
+
+    /**
+     * Min-heap of nodes to visit keyed by a lower bound of the squared distance to their points,
+     * in 2 growable arrays so that adding a node does not allocate memory
+     */
+    private static final class SearchQueue{
+        private KDnode[] nodes = new KDnode[64];
+        private double[] bounds = new double[64];
+        private int size;
+        private KDnode head; //node removed by the last poll
+        private double headBound; //its bound
+
+        private void add(KDnode node, double bound){
+            if(this.size == this.nodes.length){
+                this.nodes = Arrays.copyOf(this.nodes, 2 * this.size);
+                this.bounds = Arrays.copyOf(this.bounds, 2 * this.size);
+            }
+            int i = this.size++;
+            while(i > 0){
+                int parent = (i - 1) >>> 1;
+                if(this.bounds[parent] <= bound){
+                    break;
+                }
+                this.nodes[i] = this.nodes[parent];
+                this.bounds[i] = this.bounds[parent];
+                i = parent;
+            }
+            this.nodes[i] = node;
+            this.bounds[i] = bound;
+        }
+
+        /** 
+         * Removes the node of smallest bound, which is then in head and headBound
+         */
+        private void poll(){
+            this.head = this.nodes[0];
+            this.headBound = this.bounds[0];
+            KDnode last = this.nodes[--this.size];
+            double bound = this.bounds[this.size];
+            this.nodes[this.size] = null;
+            int i = 0;
+            while(true){
+                int child = 2 * i + 1;
+                if(child >= this.size){
+                    break;
+                }
+                if(child + 1 < this.size && this.bounds[child + 1] < this.bounds[child]){
+                    child++;
+                }
+                if(this.bounds[child] >= bound){
+                    break;
+                }
+                this.nodes[i] = this.nodes[child];
+                this.bounds[i] = this.bounds[child];
+                i = child;
+            }
+            if(this.size > 0){
+                this.nodes[i] = last;
+                this.bounds[i] = bound;
+            }
+        }
+
+        private void clear(){
+            Arrays.fill(this.nodes, 0, this.size, null);
+            this.size = 0;
+        }
+    }
 
     /** 
      * Constructor that initializes an empty tree with root node null
      */
     public KDtree(){
         this.root = null;
+        this.size = 0;
+        this.nextIndex = 0;
+        this.deletedCount = 0;
+    }
+
+    /** 
+     * Builds a balanced KD Tree from the given points in one pass instead of inserting them one by one.
+     * At every level the points are split on the median of the split axis, so the shape of the tree
+     * does not depend on the order of the input and the depth stays close to log2(n).
+     * The split axis cycles through x, y, z like in add()
+     * @param points list of points to be stored in the tree
+     * @return KDtree balanced tree containing all the points
+     */
+    public static KDtree build(List<Point3D> points){
+        return build(points, false);
+    }
+
+    /** 
+     * Builds a balanced KD Tree from the given points in one pass instead of inserting them one by one.
+     * Each node is the median of its sub-range (found with quickselect), so the tree is built in O(n log n)
+     * @param points list of points to be stored in the tree
+     * @param widestSpread if true the split axis of each node is the axis with the largest extent
+     *                     of its sub-range, otherwise the axis cycles through x, y, z
+     * @return KDtree balanced tree containing all the points
+     */
+    public static KDtree build(List<Point3D> points, boolean widestSpread){
+        KDtree tree = new KDtree();
+        Point3D[] pts = points.toArray(new Point3D[0]);
+        int[] ids = new int[pts.length]; //position of each point in the input list, reordered with pts
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = i;
+        }
+        tree.root = tree.buildRange(pts, ids, 0, pts.length, 0, widestSpread);
+        tree.size = pts.length;
+        tree.nextIndex = pts.length;
+        return tree;
+    }
+
+    /** 
+     * This recursive method builds the sub-tree for the points in pts[lo, hi)
+     * The median point on the split axis becomes the node, the lower half goes to the left child
+     * and the upper half to the right child
+     * @param pts array of points, reordered in place
+     * @param ids positions of the points in the input list, reordered with pts
+     * @param lo first index of the range (inclusive)
+     * @param hi last index of the range (exclusive)
+     * @param depth depth of the node in the tree, used to cycle the split axis
+     * @param widestSpread if true split on the axis with the largest extent
+     * 
+     * @return KDnode root of the sub-tree, null if the range is empty
+     */
+    private KDnode buildRange(Point3D[] pts, int[] ids, int lo, int hi, int depth, boolean widestSpread){
+        if(lo >= hi){
+            return null;
+        }
+        int axis = widestSpread ? widestAxis(pts, lo, hi) : depth % 3;
+        int mid = (lo + hi) >>> 1;
+        select(pts, ids, lo, hi - 1, mid, axis); //pts[mid] is now the median, smaller values on its left
+        KDnode node = new KDnode(pts[mid], ids[mid], axis);
+        node.left = buildRange(pts, ids, lo, mid, depth + 1, widestSpread);
+        node.right = buildRange(pts, ids, mid + 1, hi, depth + 1, widestSpread);
+        return node;
+    }
+
+    /** 
+     * Finds the axis along which the points in pts[lo, hi) have the largest extent
+     * @return int axis (0: x, 1: y, 2: z)
+     */
+    private static int widestAxis(Point3D[] pts, int lo, int hi){
+        int best = 0;
+        double bestSpread = -1;
+        for(int axis = 0; axis < 3; axis++){
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for(int i = lo; i < hi; i++){
+                double v = pts[i].get(axis);
+                if(v < min){
+                    min = v;
+                }
+                if(v > max){
+                    max = v;
+                }
+            }
+            if(max - min > bestSpread){
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+    /** 
+     * Quickselect: reorders pts[lo, hi] so that pts[k] holds the value it would have if the range
+     * was sorted on the given axis, with no greater value before it and no smaller value after it
+     */
+    private static void select(Point3D[] pts, int[] ids, int lo, int hi, int k, int axis){
+        while(hi > lo){
+            int mid = (lo + hi) >>> 1; //median of three pivot, avoids the worst case on sorted input
+            if(pts[mid].get(axis) < pts[lo].get(axis)){
+                swap(pts, ids, lo, mid);
+            }
+            if(pts[hi].get(axis) < pts[lo].get(axis)){
+                swap(pts, ids, lo, hi);
+            }
+            if(pts[hi].get(axis) < pts[mid].get(axis)){
+                swap(pts, ids, mid, hi);
+            }
+            double pivot = pts[mid].get(axis);
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(pts[i].get(axis) < pivot){
+                    i++;
+                }
+                while(pts[j].get(axis) > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    swap(pts, ids, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }
+            else if(k >= i){
+                lo = i;
+            }
+            else{
+                return;
+            }
+        }
+    }
+
+    private static void swap(Point3D[] pts, int[] ids, int i, int j){
+        Point3D tmp = pts[i];
+        pts[i] = pts[j];
+        pts[j] = tmp;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    /** 
+     * Computes the depth of the tree, i.e. the number of nodes on the longest path from the root to a leaf
+     * The traversal uses an explicit stack so that degenerate trees built with add() do not overflow the call stack
+     * @return int depth of the tree, 0 for an empty tree
+     */
+    public int getDepth(){
+        if(this.root == null){
+            return 0;
+        }
+        int depth = 0;
+        ArrayDeque<KDnode> nodes = new ArrayDeque<KDnode>();
+        ArrayDeque<Integer> levels = new ArrayDeque<Integer>();
+        nodes.push(this.root);
+        levels.push(1);
+        while(!nodes.isEmpty()){
+            KDnode node = nodes.pop();
+            int level = levels.pop();
+            depth = Math.max(depth, level);
+            if(node.left != null){
+                nodes.push(node.left);
+                levels.push(level + 1);
+            }
+            if(node.right != null){
+                nodes.push(node.right);
+                levels.push(level + 1);
+            }
+        }
+        return depth;
     }
 
     /** 
@@ -43,15 +296,44 @@ public class KDtree {
         return this.root;
     }
 
+    /** 
+     * Getter for the number of points stored in the tree
+     * @return int number of points
+     */
+    public int size(){
+        return this.size;
+    }
+
+    /** 
+     * Getter for the number of removed points whose nodes are still in the tree
+     * @return int number of deleted nodes
+     */
+    public int getDeletedCount(){
+        return this.deletedCount;
+    }
+
     /** 
      * This method is used to add a point to the KD Tree.
+     * The point gets the next index, i.e. its position if the points are added in list order
+     */
+    public void add(Point3D point){
+        add(point, this.nextIndex);
+    }
+
+    /** 
+     * This method is used to add a point to the KD Tree with the given index.
      * If the root node is null, then this method will set the root as the first incoming node
      * This method finds the appropriate position/parent of the node at which the incoming
      * point should be inserted. The node is inseted using the insert method
+     * @param point the point to be added
+     * @param index index returned for the point by the queries, must not be used by another point in the tree
      */
-    public void add(Point3D point){
+    public void add(Point3D point, int index){
+        this.size++;
+        this.nextIndex = Math.max(this.nextIndex, index + 1);
         if(this.root == null){ //Check if there is no root
-            this.root = new KDnode(point, 0);
+            this.root = new KDnode(point, index, 0);
+            register(this.root);
             return ;
         }
         KDnode insertAtNode = this.root; //Start at root and traverse to required position in the tree
@@ -70,7 +352,86 @@ public class KDtree {
                 insertAtNode = insertAtNode.right; //replace the value of insertNode with its left child
             }
         }
-        insert(point, insertAtNode, insertAtNode.axis); //method to insert the node once parent is found
+        insert(point, index, insertAtNode, insertAtNode.axis); //method to insert the node once parent is found
+    }
+
+    /** 
+     * This method removes the point with the given index from the tree.
+     * The node is only marked as deleted: it is skipped by the queries but still splits the space,
+     * so a removal costs O(1). The deleted nodes are dropped by rebuild(), which the caller
+     * should run once getDeletedCount() becomes large compared to size()
+     * @param index index of the point
+     * @return boolean true if the point was in the tree
+     */
+    public boolean remove(int index){
+        if(this.byIndex == null){ //first removal: index all the nodes
+            this.byIndex = new ArrayList<KDnode>(this.nextIndex);
+            ArrayDeque<KDnode> stack = new ArrayDeque<KDnode>();
+            if(this.root != null){
+                stack.push(this.root);
+            }
+            while(!stack.isEmpty()){
+                KDnode node = stack.pop();
+                if(!node.deleted){
+                    register(node);
+                }
+                if(node.left != null){
+                    stack.push(node.left);
+                }
+                if(node.right != null){
+                    stack.push(node.right);
+                }
+            }
+        }
+        if(index < 0 || index >= this.byIndex.size() || this.byIndex.get(index) == null){
+            return false;
+        }
+        this.byIndex.get(index).deleted = true;
+        this.byIndex.set(index, null);
+        this.size--;
+        this.deletedCount++;
+        return true;
+    }
+
+    private void register(KDnode node){
+        if(this.byIndex == null){
+            return;
+        }
+        while(this.byIndex.size() <= node.index){
+            this.byIndex.add(null);
+        }
+        this.byIndex.set(node.index, node);
+    }
+
+    /** 
+     * Rebuilds the tree balanced from the points that are still in it, keeping their indices.
+     * This drops the deleted nodes and repairs the depth grown by add()
+     * @param widestSpread if true split on the axis with the largest extent, like build()
+     */
+    public void rebuild(boolean widestSpread){
+        Point3D[] pts = new Point3D[this.size];
+        int[] ids = new int[this.size];
+        int n = 0;
+        ArrayDeque<KDnode> stack = new ArrayDeque<KDnode>();
+        if(this.root != null){
+            stack.push(this.root);
+        }
+        while(!stack.isEmpty()){
+            KDnode node = stack.pop();
+            if(!node.deleted){
+                pts[n] = node.point;
+                ids[n++] = node.index;
+            }
+            if(node.left != null){
+                stack.push(node.left);
+            }
+            if(node.right != null){
+                stack.push(node.right);
+            }
+        }
+        this.root = buildRange(pts, ids, 0, n, 0, widestSpread);
+        this.deletedCount = 0;
+        this.byIndex = null; //indexed again by the next remove()
     }
 
     /** 
@@ -78,20 +439,22 @@ public class KDtree {
      * Checks if the point should be a left child or right child of the parent node.
      * This method has been implemented using the pseudo-code provided in Programming Assignment P2 guide
      * @param Point3D point to be inserted
+     * @param index position of the point in the point list
      * @param KDnode node at which point should be inserted
      * @param axis axis of comparison or split
      * 
      * @return KDnode parent node to which the child is inserted
      */
-    public KDnode insert(Point3D point, KDnode node, int axis){
+    public KDnode insert(Point3D point, int index, KDnode node, int axis){
         if(node == null){
-            node = new KDnode(point, axis); //if the node is null, create a node with the incoming point
+            node = new KDnode(point, index, axis); //if the node is null, create a node with the incoming point
+            register(node);
         }
         else if(point.get(axis) <= node.value){ //if the node is not null, then compare the value to check if the node should be a left child
-            node.left = insert(point, node.left, (node.axis + 1) % 3); //insert point as the left child and change the axis of split as we are going one level deeper in the tree
+            node.left = insert(point, index, node.left, (node.axis + 1) % 3); //insert point as the left child and change the axis of split as we are going one level deeper in the tree
         }
         else{ //if the node is not null, then compare the value to check if the node should be a right child
-            node.right = insert(point, node.right, (node.axis + 1) % 3); //insert point as the right child and change the axis of split as we are going one level deeper in the tree
+            node.right = insert(point, index, node.right, (node.axis + 1) % 3); //insert point as the right child and change the axis of split as we are going one level deeper in the tree
         }
         return node;
     }
@@ -110,7 +473,7 @@ public class KDtree {
         if (node == null){
             return null;
         }
-        if(ref.distance(node.point) < eps){
+        if(!node.deleted && ref.distance(node.point) < eps){
             neighbours.add(node.point);
         }
         if(ref.get(node.axis) - eps <= node.value){
@@ -121,4 +484,212 @@ public class KDtree {
         }
         return neighbours;
     }
+
+    /** 
+     * This method is used to find the points that are less than eps distance away from the reference point
+     * and adds their index to the given buffer, so no list of points is created.
+     * Distances are compared squared against Point3D.strictSquaredBound(eps) (no square root) and the tree is traversed
+     * with an explicit stack instead of recursion. The stack is kept per thread and reused, so once it
+     * has grown to the depth of the tree a query does not allocate memory
+     * @param double x, y, z coordinates of the reference point
+     * @param double eps: minimum acceptable distance to be called neighbour
+     * @param IntList buffer to which the indices of the neighbours are appended
+     * @return int number of neighbours added to the buffer
+     */
+    public int rangeQuery(double x, double y, double z, double eps, IntList neighbours) {
+        int found = 0;
+        if(this.root == null){
+            return found;
+        }
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        ArrayDeque<KDnode> stack = this.stacks.get();
+        stack.clear();
+        stack.push(this.root);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            KDnode node = stack.pop();
+            visited++;
+            Point3D pt = node.point;
+            double dx = pt.getX() - x;
+            double dy = pt.getY() - y;
+            double dz = pt.getZ() - z;
+            if(dx * dx + dy * dy + dz * dz <= bound && !node.deleted){
+                neighbours.add(node.index);
+                found++;
+            }
+            double ref = node.axis == 0 ? x : (node.axis == 1 ? y : z);
+            if(node.right != null && ref + eps > node.value){
+                stack.push(node.right);
+            }
+            if(node.left != null && ref - eps <= node.value){
+                stack.push(node.left);
+            }
+        }
+        countVisits(visited);
+        return found;
+    }
+
+    /** 
+     * This method counts the points that are less than eps distance away from the reference point
+     * and stops as soon as the count reaches the limit, so it is cheaper than rangeQuery when only
+     * the number of neighbours matters (e.g. to decide if a point is a core point)
+     * @param double x, y, z coordinates of the reference point
+     * @param double eps: minimum acceptable distance to be called neighbour
+     * @param int limit: count at which the search stops
+     * @return int number of neighbours found, at most limit
+     */
+    public int countWithin(double x, double y, double z, double eps, int limit) {
+        int found = 0;
+        if(this.root == null || limit <= 0){
+            return found;
+        }
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        ArrayDeque<KDnode> stack = this.stacks.get();
+        stack.clear();
+        stack.push(this.root);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            KDnode node = stack.pop();
+            visited++;
+            Point3D pt = node.point;
+            double dx = pt.getX() - x;
+            double dy = pt.getY() - y;
+            double dz = pt.getZ() - z;
+            if(dx * dx + dy * dy + dz * dz <= bound && !node.deleted && ++found >= limit){
+                countVisits(visited);
+                return found;
+            }
+            double ref = node.axis == 0 ? x : (node.axis == 1 ? y : z);
+            if(node.right != null && ref + eps > node.value){
+                stack.push(node.right);
+            }
+            if(node.left != null && ref - eps <= node.value){
+                stack.push(node.left);
+            }
+        }
+        countVisits(visited);
+        return found;
+    }
+
+    /** 
+     * Makes rangeQuery and countWithin add the number of nodes they visit to the given counter (e.g. for
+     * ClusteringMetrics). The nodes are counted in a local variable and added once per query, so counting costs
+     * almost nothing, and nothing at all without a counter
+     * @param LongAdder visits: the counter, shared by all the threads, null to stop counting
+     */
+    public void setVisitCounter(LongAdder visits) {
+        this.visits = visits;
+    }
+
+    private void countVisits(int visited) {
+        if(this.visits != null){
+            this.visits.add(visited);
+        }
+    }
+
+    /** 
+     * This method finds the k points nearest to the reference point (exact search) with a best-first traversal.
+     * The nodes to visit are kept in a min-heap keyed by a lower bound of the squared distance to the points under them:
+     * the distance to every splitting plane crossed on the way down from the root, the largest one taken. The node of
+     * smallest bound is always visited next, and the search stops as soon as that bound is not below the k-th best distance.
+     * The best candidates are kept in a bounded max-heap stored in the output arrays: the farthest candidate
+     * is at the top and is replaced as soon as a closer point is found.
+     * The heap is sorted by increasing distance at the end; the queue is reused, so no memory is allocated
+     * @param double x, y, z coordinates of the reference point
+     * @param int k: number of neighbours wanted
+     * @param int[] ids: at least k entries, receives the indices of the neighbours
+     * @param double[] distances: at least k entries, receives their squared distances
+     * @return int number of neighbours found, k unless the tree has fewer points
+     */
+    public int nearest(double x, double y, double z, int k, int[] ids, double[] distances) {
+        int count = 0;
+        if(this.root == null || k <= 0){
+            return count;
+        }
+        SearchQueue queue = this.searchQueues.get();
+        queue.clear();
+        queue.add(this.root, 0);
+        while(queue.size > 0){
+            queue.poll();
+            KDnode node = queue.head;
+            double bound = queue.headBound;
+            if(count == k && bound >= distances[0]){ //every node left is at least as far
+                break;
+            }
+            if(!node.deleted){
+                Point3D pt = node.point;
+                double dx = pt.getX() - x;
+                double dy = pt.getY() - y;
+                double dz = pt.getZ() - z;
+                double d = dx * dx + dy * dy + dz * dz;
+                if(count < k){
+                    siftUp(ids, distances, count++, node.index, d);
+                }
+                else if(d < distances[0]){
+                    siftDown(ids, distances, 0, count, node.index, d);
+                }
+            }
+            double diff = (node.axis == 0 ? x : (node.axis == 1 ? y : z)) - node.value;
+            KDnode near = diff < 0 ? node.left : node.right;
+            KDnode far = diff < 0 ? node.right : node.left;
+            if(near != null){
+                queue.add(near, bound);
+            }
+            if(far != null){
+                double farBound = Math.max(bound, diff * diff);
+                if(count < k || farBound < distances[0]){
+                    queue.add(far, farBound);
+                }
+            }
+        }
+        queue.clear();
+        for(int end = count - 1; end > 0; end--){ //heap sort: the farthest goes to the end
+            int id = ids[0];
+            double d = distances[0];
+            siftDown(ids, distances, 0, end, ids[end], distances[end]);
+            ids[end] = id;
+            distances[end] = d;
+        }
+        return count;
+    }
+
+    /** 
+     * Places (id, d) at position i of the max-heap and moves it up to its place
+     */
+    private static void siftUp(int[] ids, double[] distances, int i, int id, double d){
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(distances[parent] >= d){
+                break;
+            }
+            ids[i] = ids[parent];
+            distances[i] = distances[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        distances[i] = d;
+    }
+
+    /** 
+     * Places (id, d) at position i of the max-heap of the given size and moves it down to its place
+     */
+    private static void siftDown(int[] ids, double[] distances, int i, int size, int id, double d){
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= size){
+                break;
+            }
+            if(child + 1 < size && distances[child + 1] > distances[child]){
+                child++;
+            }
+            if(distances[child] <= d){
+                break;
+            }
+            ids[i] = ids[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        ids[i] = id;
+        distances[i] = d;
+    }
 }
@@ -0,0 +1,358 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * This class reads a '.csv' file of x,y,z points into a PointCloud without creating a String
+ * or a Point3D per line.
+ * The file is memory-mapped with FileChannel.map and the numbers are parsed directly from the bytes.
+ * The data is cut into chunks that end on a line boundary and the chunks are parsed in parallel:
+ * a first pass counts the lines of every chunk, which gives the position of its first point in
+ * the coordinate arrays, and a second pass parses the chunks into the arrays
+ * @author Aksh Babbar (300034042)
+ */
+public class MappedCSVReader {
+
+    private static final long MAX_CHUNK = 64L << 20; //largest chunk of the file parsed by one task
+    private static final long MIN_CHUNK = 1L << 20; //files smaller than this are parsed as one chunk
+    private static final long MAX_EXACT = 1L << 53; //largest mantissa exactly representable in a double
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    }; //powers of ten that are exact doubles
+    private static final int MIN_POW = -342; //range of the decimal exponents handled by eiselLemire
+    private static final int MAX_POW = 308;
+    private static final long[] POW10_HI = new long[MAX_POW - MIN_POW + 1]; //high 64 bits of 10^e, rounded down to 128 bits
+    private static final long[] POW10_LO = new long[MAX_POW - MIN_POW + 1]; //low 64 bits
+
+    static{
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for(int e = MIN_POW; e <= MAX_POW; e++){
+            BigInteger v;
+            if(e >= 0){
+                v = BigInteger.TEN.pow(e);
+                int shift = v.bitLength() - 128;
+                v = shift > 0 ? v.shiftRight(shift) : v.shiftLeft(-shift);
+            }
+            else{
+                BigInteger d = BigInteger.TEN.pow(-e);
+                v = BigInteger.ONE.shiftLeft(d.bitLength() + 127).divide(d);
+            }
+            POW10_HI[e - MIN_POW] = v.shiftRight(64).longValue();
+            POW10_LO[e - MIN_POW] = v.and(mask).longValue();
+        }
+    }
+
+/**
+ * Reads the x,y,z columns of a '.csv' file, extra columns are ignored as well as blank lines
+ * @param filename  the input '.csv' file
+ * @param headerLines  number of lines skipped at the start of the file
+ *                     (2 for the files of this project: the x,y,z header and the 0.0,0.0,0.0 row)
+ * @param threads  number of threads parsing the chunks
+ * @return PointCloud of the points in file order
+ * @throws IOException if the file cannot be read
+ */
+    public static PointCloud read(String filename, int headerLines, int threads) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            long end = channel.size();
+            long start = 0;
+            for(int i = 0; i < headerLines && start < end; i++){
+                start = nextLine(channel, start, end);
+            }
+
+            //chunk boundaries, each moved forward to the start of a line
+            long length = end - start;
+            int chunks = length < MIN_CHUNK ? 1 : (int) Math.max(4L * threads, (length + MAX_CHUNK - 1) / MAX_CHUNK);
+            long[] bounds = new long[chunks + 1];
+            bounds[0] = start;
+            for(int c = 1; c < chunks; c++){
+                bounds[c] = Math.max(bounds[c - 1], nextLine(channel, start + length * c / chunks - 1, end));
+            }
+            bounds[chunks] = end;
+
+            MappedByteBuffer[] maps = new MappedByteBuffer[chunks];
+            for(int c = 0; c < chunks; c++){
+                maps[c] = channel.map(FileChannel.MapMode.READ_ONLY, bounds[c], bounds[c + 1] - bounds[c]);
+            }
+            int[] counts = new int[chunks + 1];
+            ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+            try{
+                run(pool, chunks, c -> counts[c + 1] = countLines(maps[c]));
+                for(int c = 0; c < chunks; c++){
+                    counts[c + 1] += counts[c];
+                }
+                double[] x = new double[counts[chunks]];
+                double[] y = new double[counts[chunks]];
+                double[] z = new double[counts[chunks]];
+                run(pool, chunks, c -> parseLines(maps[c], bounds[c], counts[c], x, y, z));
+                return new PointCloud(x, y, z, counts[chunks]);
+            }finally{
+                pool.shutdown();
+            }
+        }
+    }
+
+/**
+ * Finds the start of the line following the byte at position pos
+ * @return the position after the first '\n' at or after pos, or end if there is none
+ */
+    private static long nextLine(FileChannel channel, long pos, long end) throws IOException{
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        while(pos < end){
+            window.clear();
+            int read = channel.read(window, pos);
+            if(read <= 0){
+                break;
+            }
+            for(int i = 0; i < read; i++){
+                if(window.get(i) == '\n'){
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return end;
+    }
+
+/**
+ * Counts the lines of a chunk that are not blank, with the same rule as parseLines
+ */
+    private static int countLines(ByteBuffer buf){
+        int count = 0;
+        boolean blank = true;
+        int limit = buf.limit();
+        for(int i = 0; i < limit; i++){
+            byte b = buf.get(i);
+            if(b == '\n'){
+                if(!blank){
+                    count++;
+                }
+                blank = true;
+            }
+            else if(b > ' '){
+                blank = false;
+            }
+        }
+        return blank ? count : count + 1; //last line without '\n'
+    }
+
+/**
+ * Parses the non-blank lines of a chunk into the coordinate arrays
+ * @param buf  the mapped chunk
+ * @param offset  position of the chunk in the file, used in error messages
+ * @param first  position in the arrays of the first point of the chunk
+ */
+    private static void parseLines(ByteBuffer buf, long offset, int first, double[] x, double[] y, double[] z){
+        int limit = buf.limit();
+        int point = first;
+        int lineStart = 0;
+        while(lineStart < limit){
+            int lineEnd = lineStart;
+            boolean blank = true;
+            while(lineEnd < limit && buf.get(lineEnd) != '\n'){
+                if(buf.get(lineEnd) > ' '){
+                    blank = false;
+                }
+                lineEnd++;
+            }
+            if(!blank){
+                int c1 = indexOf(buf, ',', lineStart, lineEnd);
+                int c2 = c1 < 0 ? -1 : indexOf(buf, ',', c1 + 1, lineEnd);
+                if(c2 < 0){
+                    throw new IllegalArgumentException("Expected x,y,z at byte " + (offset + lineStart));
+                }
+                int c3 = indexOf(buf, ',', c2 + 1, lineEnd);
+                x[point] = parseDouble(buf, lineStart, c1);
+                y[point] = parseDouble(buf, c1 + 1, c2);
+                z[point] = parseDouble(buf, c2 + 1, c3 < 0 ? lineEnd : c3);
+                point++;
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buf, char c, int from, int to){
+        for(int i = from; i < to; i++){
+            if(buf.get(i) == c){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+/**
+ * Parses a decimal number stored as ASCII bytes in buf[from, to).
+ * Numbers with a mantissa up to 2^53 and a decimal exponent within +-22 are computed exactly with
+ * one multiplication or division of 2 exact doubles. Other numbers with at most 18 significant digits
+ * (e.g. the 17 digits printed by Double.toString) go through eiselLemire. Only the rare numbers
+ * these cannot round correctly fall back to Double.parseDouble
+ * @return the value of the number
+ */
+    static double parseDouble(ByteBuffer buf, int from, int to){
+        while(from < to && buf.get(from) <= ' '){
+            from++;
+        }
+        while(to > from && buf.get(to - 1) <= ' '){
+            to--;
+        }
+        int i = from;
+        boolean negative = false;
+        if(i < to && (buf.get(i) == '-' || buf.get(i) == '+')){
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0; //significant digits in the mantissa, at most 18 so it cannot overflow
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean exact = true;
+        for(; i < to && isDigit(buf.get(i)); i++){
+            seenDigit = true;
+            int d = buf.get(i) - '0';
+            if(digits < 18){
+                mantissa = mantissa * 10 + d;
+                digits += mantissa == 0 ? 0 : 1;
+            }
+            else{
+                exponent++;
+                exact &= d == 0;
+            }
+        }
+        if(i < to && buf.get(i) == '.'){
+            for(i++; i < to && isDigit(buf.get(i)); i++){
+                seenDigit = true;
+                int d = buf.get(i) - '0';
+                if(digits < 18){
+                    mantissa = mantissa * 10 + d;
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                }
+                else{
+                    exact &= d == 0;
+                }
+            }
+        }
+        if(seenDigit && i < to && (buf.get(i) == 'e' || buf.get(i) == 'E')){
+            i++;
+            boolean negativeExp = false;
+            if(i < to && (buf.get(i) == '-' || buf.get(i) == '+')){
+                negativeExp = buf.get(i) == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean expDigit = false;
+            for(; i < to && isDigit(buf.get(i)); i++){
+                expDigit = true;
+                exp = Math.min(exp * 10 + buf.get(i) - '0', 100000);
+            }
+            seenDigit = expDigit;
+            exponent += negativeExp ? -exp : exp;
+        }
+        if(seenDigit && i == to && exact){
+            if(mantissa == 0){
+                return negative ? -0.0 : 0.0;
+            }
+            if(mantissa <= MAX_EXACT && exponent >= -22 && exponent <= 22){
+                double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+                return negative ? -value : value;
+            }
+            long bits = eiselLemire(mantissa, exponent);
+            if(bits >= 0){
+                return Double.longBitsToDouble(negative ? bits | Long.MIN_VALUE : bits);
+            }
+        }
+        byte[] text = new byte[to - from];
+        for(int k = 0; k < text.length; k++){
+            text[k] = buf.get(from + k);
+        }
+        return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+    }
+
+/**
+ * Eisel-Lemire algorithm: converts mantissa * 10^exponent to the nearest double by multiplying the
+ * mantissa with a 128-bit approximation of the power of ten and checking that the bits that decide
+ * the rounding are not affected by the approximation
+ * @param mantissa  the decimal mantissa, positive
+ * @param exponent  the decimal exponent
+ * @return the bits of the positive double, -1 if the result cannot be decided this way
+ */
+    private static long eiselLemire(long mantissa, int exponent){
+        if(exponent < MIN_POW || exponent > MAX_POW){
+            return -1;
+        }
+        int clz = Long.numberOfLeadingZeros(mantissa);
+        long man = mantissa << clz;
+        long exp2 = ((217706L * exponent) >> 16) + 64 + 1023 - clz;
+        long powHi = POW10_HI[exponent - MIN_POW];
+        long xHi = unsignedMultiplyHigh(man, powHi);
+        long xLo = man * powHi;
+        if((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0){ //the low bits of the power matter
+            long powLo = POW10_LO[exponent - MIN_POW];
+            long yHi = unsignedMultiplyHigh(man, powLo);
+            long yLo = man * powLo;
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if(Long.compareUnsigned(mergedLo, xLo) < 0){
+                mergedHi++;
+            }
+            if((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0){
+                return -1;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+        long msb = xHi >>> 63;
+        long result = xHi >>> (msb + 9);
+        exp2 -= 1 ^ msb;
+        if(xLo == 0 && (xHi & 0x1FF) == 0 && (result & 3) == 1){ //exactly half way between 2 doubles
+            return -1;
+        }
+        result += result & 1;
+        result >>>= 1;
+        if((result >>> 53) > 0){
+            result >>>= 1;
+            exp2++;
+        }
+        if(exp2 < 1 || exp2 > 0x7FE){ //subnormal or infinite
+            return -1;
+        }
+        return (exp2 << 52) | (result & 0x000FFFFFFFFFFFFFL);
+    }
+
+/**
+ * High 64 bits of the unsigned 128-bit product of 2 unsigned longs
+ */
+    private static long unsignedMultiplyHigh(long a, long b){
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+
+/**
+ * Runs the task for every chunk on the pool and waits for the end
+ */
+    private static void run(ForkJoinPool pool, int chunks, IntConsumer task) throws IOException{
+        try{
+            pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(task)).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading interrupted", e);
+        }catch(ExecutionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -8,7 +8,13 @@ import java.util.ArrayList;
  */
 public class NearestNeighbours {
 
+    private static final int CHUNK = 256; //points whose distances are computed by one call to the kernel
+
     private ArrayList<Point3D> pointList;
+    private double[] xs; //coordinates of the points as structure of arrays, for DistanceKernel
+    private double[] ys;
+    private double[] zs;
+    private final ThreadLocal<double[]> scratches = ThreadLocal.withInitial(() -> new double[CHUNK]); //squared distances of a chunk
 
 /** 
  * Constructor that takes an ArrayList of type Point3D
@@ -16,11 +22,22 @@ public class NearestNeighbours {
  */
     public NearestNeighbours(ArrayList<Point3D> pointList){     
         this.pointList = pointList;
+        this.xs = new double[pointList.size()];
+        this.ys = new double[pointList.size()];
+        this.zs = new double[pointList.size()];
+        for(int i = 0; i < pointList.size(); i++){
+            this.xs[i] = pointList.get(i).getX();
+            this.ys[i] = pointList.get(i).getY();
+            this.zs[i] = pointList.get(i).getZ();
+        }
     }
 
 
 /** 
  * Range query function that finds the nearest neighbours of a 3D point
+ * The squared distances are computed chunk by chunk by DistanceKernel over copies of the
+ * coordinates and compared against the largest squared distance whose square root is at most eps,
+ * so the test is the same as Point3D.distance(pt) <= eps without a square root per point
  *
  * @param point  the point for which we need to find neighbours
  * @param eps  the minimum acceptable distance to consider 2 points as neighbours
@@ -28,9 +45,18 @@ public class NearestNeighbours {
  */
     public ArrayList<Point3D> RangeQuery(Point3D point, double eps){    
         ArrayList<Point3D> neighbours = new ArrayList<Point3D>();
-        for(Point3D pt : this.pointList){
-            if(point.distance(pt) <= eps){
-                neighbours.add(pt);
+        if(!(eps >= 0)){
+            return neighbours;
+        }
+        double limit = Point3D.squaredBound(eps);
+        double[] scratch = this.scratches.get();
+        for(int from = 0; from < this.xs.length; from += CHUNK){
+            int to = Math.min(from + CHUNK, this.xs.length);
+            DistanceKernel.squaredDistances(this.xs, this.ys, this.zs, from, to, point.getX(), point.getY(), point.getZ(), scratch);
+            for(int i = 0; i < to - from; i++){
+                if(scratch[i] <= limit){
+                    neighbours.add(this.pointList.get(from + i));
+                }
             }
         }
         return neighbours;
@@ -0,0 +1,377 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This data structure is a KD Tree whose leaves are buckets of points instead of single points.
+ * A sub-range of more than bucketSize points is split at its median, the median itself going to the
+ * right half; a sub-range of at most bucketSize points is a leaf. Only the leaves hold points, so a
+ * query decides its path once per node of about bucketSize points instead of once per point, and the
+ * leaf is scanned in one go by DistanceKernel.
+ *
+ * The coordinates are stored as structure of arrays (xs, ys, zs) in tree order, so the points of a leaf
+ * are contiguous in each array, which is the layout the kernel loop is vectorized on. Like in
+ * NearestNeighboursFlatKD the tree is implicit: the node of the sub-range [lo, hi) splits at
+ * mid = (lo + hi) / 2 with the axis and the split value stored at position mid, and its children are
+ * [lo, mid) and [mid, hi). The split value is kept apart as the right child reorders the point at mid.
+ *
+ * The tree can be built from a PointCloud, e.g. a mapped .pcb file: its coordinate arrays are copied into
+ * xs, ys, zs, which the build reorders, without creating a Point3D per point.
+ *
+ * Queries return the positions of the neighbours in the original point list in a reusable IntList
+ * @author Aksh Babbar (300034042)
+ */
+public class NearestNeighboursBucketKD implements SpatialIndex {
+
+    public static final int DEFAULT_BUCKET_SIZE = 32;
+
+    private ArrayList<Point3D> pointList; //containing all points, null if built from a PointCloud
+    private double[] xs; //coordinates of the points in tree order
+    private double[] ys;
+    private double[] zs;
+    private int[] ids; //position in pointList of the point stored at each tree position
+    private int[] where; //tree position of each point of pointList
+    private byte[] axes; //split axis of the node that splits at each tree position
+    private double[] splits; //split value of the node that splits at each tree position
+    private int size; //number of points in the tree
+    private final int bucketSize; //largest number of points of a leaf
+    private final ThreadLocal<IntList> stacks = ThreadLocal.withInitial(IntList::new); //traversal stack reused by the queries
+    private final ThreadLocal<double[]> scratches; //squared distances of a leaf, one array per thread
+    private LongAdder visits; //nodes visited by the queries, null when they are not counted
+
+/**
+ * Constructor that takes an ArrayList of type Point3D and builds the tree with leaves of
+ * DEFAULT_BUCKET_SIZE points, cycling the split axis through x, y, z
+ * @param pointList  the point list containing all points in dataset
+ */
+    public NearestNeighboursBucketKD(ArrayList<Point3D> pointList){
+        this(pointList, DEFAULT_BUCKET_SIZE, false);
+    }
+
+/**
+ * Constructor that takes an ArrayList of type Point3D and builds the tree
+ * @param pointList  the point list containing all points in dataset
+ * @param bucketSize  largest number of points of a leaf, e.g. 16 to 64
+ * @param widestSpread  if true each node splits on the axis with the largest extent of its points
+ */
+    public NearestNeighboursBucketKD(ArrayList<Point3D> pointList, int bucketSize, boolean widestSpread){
+        this(PointCloud.fromPoints(pointList), bucketSize, widestSpread);
+        this.pointList = pointList;
+    }
+
+/**
+ * Constructor that takes the coordinate arrays of a PointCloud and builds the tree.
+ * The positions of the points in the cloud are the positions returned by the queries; RangeQuery
+ * creates a Point3D for each neighbour it returns
+ * @param cloud  the coordinates of all points in dataset
+ * @param bucketSize  largest number of points of a leaf, e.g. 16 to 64
+ * @param widestSpread  if true each node splits on the axis with the largest extent of its points
+ */
+    public NearestNeighboursBucketKD(PointCloud cloud, int bucketSize, boolean widestSpread){
+        if(bucketSize < 1){
+            throw new IllegalArgumentException("bucket size must be at least 1: " + bucketSize);
+        }
+        this.bucketSize = bucketSize;
+        this.scratches = ThreadLocal.withInitial(() -> new double[bucketSize]);
+        this.size = cloud.size();
+        this.xs = new double[this.size];
+        this.ys = new double[this.size];
+        this.zs = new double[this.size];
+        this.ids = new int[this.size];
+        this.axes = new byte[this.size];
+        this.splits = new double[this.size];
+        for(int i = 0; i < this.size; i++){
+            this.xs[i] = cloud.getX(i);
+            this.ys[i] = cloud.getY(i);
+            this.zs[i] = cloud.getZ(i);
+            this.ids[i] = i;
+        }
+        build(0, this.size, 0, widestSpread);
+        this.where = new int[this.size];
+        for(int i = 0; i < this.size; i++){
+            this.where[this.ids[i]] = i;
+        }
+    }
+
+/**
+ * Recursively reorders the arrays so that every node range has its median on the split axis
+ * at its middle position, smaller values before and greater values after it. Ranges of at most
+ * bucketSize points are leaves and stay in any order
+ * @param lo  first position of the range (inclusive)
+ * @param hi  last position of the range (exclusive)
+ * @param depth  depth of the node, used to cycle the split axis
+ * @param widestSpread  if true split on the axis with the largest extent
+ */
+    private void build(int lo, int hi, int depth, boolean widestSpread){
+        if(hi - lo <= this.bucketSize){
+            return;
+        }
+        int axis = widestSpread ? widestAxis(lo, hi) : depth % 3;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        this.axes[mid] = (byte) axis;
+        this.splits[mid] = axis(axis)[mid];
+        build(lo, mid, depth + 1, widestSpread);
+        build(mid, hi, depth + 1, widestSpread);
+    }
+
+    private double[] axis(int axis){
+        return axis == 0 ? this.xs : (axis == 1 ? this.ys : this.zs);
+    }
+
+/**
+ * Finds the axis along which the points in [lo, hi) have the largest extent
+ * @return int axis (0: x, 1: y, 2: z)
+ */
+    private int widestAxis(int lo, int hi){
+        int best = 0;
+        double bestSpread = -1;
+        for(int axis = 0; axis < 3; axis++){
+            double[] c = axis(axis);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for(int i = lo; i < hi; i++){
+                min = Math.min(min, c[i]);
+                max = Math.max(max, c[i]);
+            }
+            if(max - min > bestSpread){
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+/**
+ * Quickselect on the given axis over positions [lo, hi] so that position k holds the k-th value
+ */
+    private void select(int lo, int hi, int k, int axis){
+        double[] c = axis(axis);
+        while(hi > lo){
+            int mid = (lo + hi) >>> 1; //median of three pivot
+            if(c[mid] < c[lo]){
+                swap(lo, mid);
+            }
+            if(c[hi] < c[lo]){
+                swap(lo, hi);
+            }
+            if(c[hi] < c[mid]){
+                swap(mid, hi);
+            }
+            double pivot = c[mid];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(c[i] < pivot){
+                    i++;
+                }
+                while(c[j] > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }
+            else if(k >= i){
+                lo = i;
+            }
+            else{
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j){
+        double tmp = this.xs[i];
+        this.xs[i] = this.xs[j];
+        this.xs[j] = tmp;
+        tmp = this.ys[i];
+        this.ys[i] = this.ys[j];
+        this.ys[j] = tmp;
+        tmp = this.zs[i];
+        this.zs[i] = this.zs[j];
+        this.zs[j] = tmp;
+        int id = this.ids[i];
+        this.ids[i] = this.ids[j];
+        this.ids[j] = id;
+    }
+
+/**
+ * Getter for the depth of the implicit tree, the leaves included
+ * @return the number of levels in the tree
+ */
+    public int getTreeDepth(){
+        int depth = 1;
+        for(int n = this.size; n > this.bucketSize; n = (n + 1) / 2){
+            depth++;
+        }
+        return depth;
+    }
+
+/**
+ * Getter for the largest number of points of a leaf
+ */
+    public int getBucketSize(){
+        return this.bucketSize;
+    }
+
+/**
+ * Makes rangeQuery and countWithin add the number of nodes they visit, leaves included, to the given counter
+ * @param visits  the counter, shared by all the threads, null to stop counting
+ */
+    public void setVisitCounter(LongAdder visits){
+        this.visits = visits;
+    }
+
+    private void countVisits(int visited){
+        if(this.visits != null){
+            this.visits.add(visited);
+        }
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of a 3D point
+ *
+ * @param point  the point for which we need to find neighbours
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @return ArrayList<Point3D> of points closest to the given point
+ */
+    public ArrayList<Point3D> RangeQuery(Point3D point, double eps){
+        IntList found = new IntList();
+        query(point.getX(), point.getY(), point.getZ(), eps, found);
+        ArrayList<Point3D> neighbours = new ArrayList<Point3D>(found.size());
+        for(int i = 0; i < found.size(); i++){
+            neighbours.add(point(found.get(i)));
+        }
+        return neighbours;
+    }
+
+/**
+ * The point at the given position of pointList, created from the tree coordinates if the tree was built from a PointCloud
+ */
+    private Point3D point(int pointIndex){
+        if(this.pointList != null){
+            return this.pointList.get(pointIndex);
+        }
+        int p = this.where[pointIndex];
+        Point3D point = new Point3D(this.xs[p], this.ys[p], this.zs[p]);
+        point.setIndex(pointIndex);
+        return point;
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of the point at the given position in
+ * pointList and writes their positions into the given buffer
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param neighbours  buffer that is cleared and filled with the positions of the neighbours
+ * @return the number of neighbours found
+ */
+    public int rangeQuery(int pointIndex, double eps, IntList neighbours){
+        int p = this.where[pointIndex];
+        neighbours.clear();
+        return query(this.xs[p], this.ys[p], this.zs[p], eps, neighbours);
+    }
+
+/**
+ * Counts the neighbours of the point at the given position in pointList, stopping as soon as
+ * the count reaches the limit. A leaf is always counted whole
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param limit  count at which the search stops, e.g. minPts
+ * @return the number of neighbours found, at most limit
+ */
+    public int countWithin(int pointIndex, double eps, int limit){
+        int p = this.where[pointIndex];
+        return count(this.xs[p], this.ys[p], this.zs[p], eps, limit);
+    }
+
+/**
+ * Searches the tree for the points less than eps away from (x, y, z) and appends their positions
+ * in pointList to the buffer. The tree is traversed with an explicit stack of [lo, hi) ranges that
+ * is reused by every query of a thread, and every leaf reached is scanned by DistanceKernel.collect
+ * @return the number of neighbours appended
+ */
+    private int query(double x, double y, double z, double eps, IntList neighbours){
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        double[] scratch = this.scratches.get();
+        int found = 0;
+        IntList stack = this.stacks.get();
+        stack.clear();
+        stack.add(0);
+        stack.add(this.size);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            int hi = stack.pop();
+            int lo = stack.pop();
+            visited++;
+            if(hi - lo <= this.bucketSize){
+                found += DistanceKernel.collect(this.xs, this.ys, this.zs, this.ids, lo, hi, x, y, z, bound, scratch, neighbours);
+                continue;
+            }
+            pushChildren(stack, lo, hi, x, y, z, eps);
+        }
+        countVisits(visited);
+        return found;
+    }
+
+/**
+ * Counts the points less than eps away from (x, y, z) with the same traversal as query(),
+ * returning as soon as limit points have been found
+ * @return the number of neighbours found, at most limit
+ */
+    private int count(double x, double y, double z, double eps, int limit){
+        if(limit <= 0 || this.size == 0){
+            return 0;
+        }
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        double[] scratch = this.scratches.get();
+        int found = 0;
+        IntList stack = this.stacks.get();
+        stack.clear();
+        stack.add(0);
+        stack.add(this.size);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            int hi = stack.pop();
+            int lo = stack.pop();
+            visited++;
+            if(hi - lo <= this.bucketSize){
+                found += DistanceKernel.count(this.xs, this.ys, this.zs, lo, hi, x, y, z, bound, scratch);
+                if(found >= limit){
+                    countVisits(visited);
+                    return limit;
+                }
+                continue;
+            }
+            pushChildren(stack, lo, hi, x, y, z, eps);
+        }
+        countVisits(visited);
+        return found;
+    }
+
+/**
+ * Pushes the children of the node of [lo, hi) that can hold points less than eps away from (x, y, z).
+ * The left child holds coordinates up to the split value and the right one from it on
+ */
+    private void pushChildren(IntList stack, int lo, int hi, double x, double y, double z, double eps){
+        int mid = (lo + hi) >>> 1;
+        int axis = this.axes[mid];
+        double value = this.splits[mid];
+        double ref = axis == 0 ? x : (axis == 1 ? y : z);
+        if(ref + eps >= value){
+            stack.add(mid);
+            stack.add(hi);
+        }
+        if(ref - eps <= value){
+            stack.add(lo);
+            stack.add(mid);
+        }
+    }
+}
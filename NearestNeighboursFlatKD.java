@@ -0,0 +1,369 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This data structure is a KD Tree stored in flat arrays instead of linked KDnode objects.
+ * The coordinates of the points are copied into one contiguous double[] (x, y, z of each point next
+ * to each other) in tree order, so a query reads memory sequentially instead of following pointers.
+ *
+ * The tree is implicit: the node of the sub-range [lo, hi) of the arrays is the median at position
+ * mid = (lo + hi) / 2, its left child is the sub-range [lo, mid) and its right child [mid + 1, hi).
+ * No child pointer is stored, only the split axis of every node.
+ *
+ * The tree can be built from a PointCloud, e.g. a mapped .pcb file, whose coordinate arrays are copied into
+ * the tree without creating a Point3D per point; a tree built from a list of points goes through the same copy.
+ *
+ * Queries return the positions of the neighbours in the original point list in a reusable IntList
+ * @author Aksh Babbar (300034042)
+ */
+public class NearestNeighboursFlatKD implements SpatialIndex {
+
+    private ArrayList<Point3D> pointList; //containing all points, null if built from a PointCloud
+    private double[] coords; //x, y, z of the points in tree order
+    private int[] ids; //position in pointList of the point stored at each tree position
+    private int[] where; //tree position of each point of pointList
+    private byte[] axes; //split axis of the node stored at each tree position
+    private int size; //number of points in the tree
+    private final ThreadLocal<IntList> stacks = ThreadLocal.withInitial(IntList::new); //traversal stack reused by the queries
+    private LongAdder visits; //nodes visited by the queries, null when they are not counted
+
+/**
+ * Constructor that takes an ArrayList of type Point3D and builds the flat KD Tree,
+ * cycling the split axis through x, y, z
+ * @param pointList  the point list containing all points in dataset
+ */
+    public NearestNeighboursFlatKD(ArrayList<Point3D> pointList){
+        this(pointList, false);
+    }
+
+/**
+ * Constructor that takes an ArrayList of type Point3D and builds the flat KD Tree
+ * @param pointList  the point list containing all points in dataset
+ * @param widestSpread  if true each node splits on the axis with the largest extent of its points
+ */
+    public NearestNeighboursFlatKD(ArrayList<Point3D> pointList, boolean widestSpread){
+        this(PointCloud.fromPoints(pointList), widestSpread);
+        this.pointList = pointList;
+    }
+
+/**
+ * Constructor that takes the coordinate arrays of a PointCloud and builds the flat KD Tree.
+ * The positions of the points in the cloud are the positions returned by the queries; RangeQuery
+ * creates a Point3D for each neighbour it returns
+ * @param cloud  the coordinates of all points in dataset
+ * @param widestSpread  if true each node splits on the axis with the largest extent of its points
+ */
+    public NearestNeighboursFlatKD(PointCloud cloud, boolean widestSpread){
+        this.size = cloud.size();
+        this.coords = new double[3 * this.size];
+        this.ids = new int[this.size];
+        this.axes = new byte[this.size];
+        for(int i = 0; i < this.size; i++){
+            this.coords[3 * i] = cloud.getX(i);
+            this.coords[3 * i + 1] = cloud.getY(i);
+            this.coords[3 * i + 2] = cloud.getZ(i);
+            this.ids[i] = i;
+        }
+        build(0, this.size, 0, widestSpread);
+        this.where = new int[this.size];
+        for(int i = 0; i < this.size; i++){
+            this.where[this.ids[i]] = i;
+        }
+    }
+
+/**
+ * Recursively reorders the arrays so that every sub-range has its median on the split axis
+ * at its middle position, smaller values before and greater values after it
+ * @param lo  first position of the range (inclusive)
+ * @param hi  last position of the range (exclusive)
+ * @param depth  depth of the node, used to cycle the split axis
+ * @param widestSpread  if true split on the axis with the largest extent
+ */
+    private void build(int lo, int hi, int depth, boolean widestSpread){
+        if(lo >= hi){
+            return;
+        }
+        int axis = widestSpread ? widestAxis(lo, hi) : depth % 3;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        this.axes[mid] = (byte) axis;
+        build(lo, mid, depth + 1, widestSpread);
+        build(mid + 1, hi, depth + 1, widestSpread);
+    }
+
+/**
+ * Finds the axis along which the points in [lo, hi) have the largest extent
+ * @return int axis (0: x, 1: y, 2: z)
+ */
+    private int widestAxis(int lo, int hi){
+        int best = 0;
+        double bestSpread = -1;
+        for(int axis = 0; axis < 3; axis++){
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for(int i = lo; i < hi; i++){
+                double v = this.coords[3 * i + axis];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if(max - min > bestSpread){
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+/**
+ * Quickselect on the given axis over positions [lo, hi] so that position k holds the k-th value
+ */
+    private void select(int lo, int hi, int k, int axis){
+        double[] c = this.coords;
+        while(hi > lo){
+            int mid = (lo + hi) >>> 1; //median of three pivot
+            if(c[3 * mid + axis] < c[3 * lo + axis]){
+                swap(lo, mid);
+            }
+            if(c[3 * hi + axis] < c[3 * lo + axis]){
+                swap(lo, hi);
+            }
+            if(c[3 * hi + axis] < c[3 * mid + axis]){
+                swap(mid, hi);
+            }
+            double pivot = c[3 * mid + axis];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(c[3 * i + axis] < pivot){
+                    i++;
+                }
+                while(c[3 * j + axis] > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }
+            else if(k >= i){
+                lo = i;
+            }
+            else{
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j){
+        for(int a = 0; a < 3; a++){
+            double tmp = this.coords[3 * i + a];
+            this.coords[3 * i + a] = this.coords[3 * j + a];
+            this.coords[3 * j + a] = tmp;
+        }
+        int id = this.ids[i];
+        this.ids[i] = this.ids[j];
+        this.ids[j] = id;
+    }
+
+/**
+ * Getter for the depth of the implicit tree
+ * @return the number of levels in the tree
+ */
+    public int getTreeDepth(){
+        return 32 - Integer.numberOfLeadingZeros(this.size);
+    }
+
+/**
+ * Makes rangeQuery and countWithin add the number of nodes they visit to the given counter, once per query
+ * @param visits  the counter, shared by all the threads, null to stop counting
+ */
+    public void setVisitCounter(LongAdder visits){
+        this.visits = visits;
+    }
+
+    private void countVisits(int visited){
+        if(this.visits != null){
+            this.visits.add(visited);
+        }
+    }
+
+/**
+ * The arrays of the tree, for the algorithms that walk the implicit tree themselves (e.g. Hdbscan).
+ * They are shared, not copied, and must not be changed
+ * @return double[] x, y, z of the points in tree order
+ */
+    double[] treeCoords(){
+        return this.coords;
+    }
+
+/**
+ * @return int[] position in pointList of the point at each tree position
+ */
+    int[] treeIds(){
+        return this.ids;
+    }
+
+/**
+ * @return byte[] split axis of the node at each tree position
+ */
+    byte[] treeAxes(){
+        return this.axes;
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of a 3D point
+ *
+ * @param point  the point for which we need to find neighbours
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @return ArrayList<Point3D> of points closest to the given point
+ */
+    public ArrayList<Point3D> RangeQuery(Point3D point, double eps){
+        IntList found = new IntList();
+        query(point.getX(), point.getY(), point.getZ(), eps, found);
+        ArrayList<Point3D> neighbours = new ArrayList<Point3D>(found.size());
+        for(int i = 0; i < found.size(); i++){
+            neighbours.add(point(found.get(i)));
+        }
+        return neighbours;
+    }
+
+/**
+ * The point at the given position of pointList, created from the tree coordinates if the tree was built from a PointCloud
+ */
+    private Point3D point(int pointIndex){
+        if(this.pointList != null){
+            return this.pointList.get(pointIndex);
+        }
+        int p = 3 * this.where[pointIndex];
+        Point3D point = new Point3D(this.coords[p], this.coords[p + 1], this.coords[p + 2]);
+        point.setIndex(pointIndex);
+        return point;
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of the point at the given position in
+ * pointList and writes their positions into the given buffer
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param neighbours  buffer that is cleared and filled with the positions of the neighbours
+ * @return the number of neighbours found
+ */
+    public int rangeQuery(int pointIndex, double eps, IntList neighbours){
+        int p = 3 * this.where[pointIndex];
+        neighbours.clear();
+        return query(this.coords[p], this.coords[p + 1], this.coords[p + 2], eps, neighbours);
+    }
+
+/**
+ * Counts the neighbours of the point at the given position in pointList, stopping as soon as
+ * the count reaches the limit
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param limit  count at which the search stops, e.g. minPts
+ * @return the number of neighbours found, at most limit
+ */
+    public int countWithin(int pointIndex, double eps, int limit){
+        int p = 3 * this.where[pointIndex];
+        return count(this.coords[p], this.coords[p + 1], this.coords[p + 2], eps, limit);
+    }
+
+/**
+ * Counts the points less than eps away from (x, y, z) with the same traversal as query(),
+ * returning as soon as limit points have been found
+ * @return the number of neighbours found, at most limit
+ */
+    private int count(double x, double y, double z, double eps, int limit){
+        if(limit <= 0){
+            return 0;
+        }
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        double[] c = this.coords;
+        int found = 0;
+        IntList stack = this.stacks.get();
+        stack.clear();
+        stack.add(0);
+        stack.add(this.size);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            int hi = stack.pop();
+            int lo = stack.pop();
+            if(lo >= hi){
+                continue;
+            }
+            int mid = (lo + hi) >>> 1;
+            visited++;
+            double dx = c[3 * mid] - x;
+            double dy = c[3 * mid + 1] - y;
+            double dz = c[3 * mid + 2] - z;
+            if(dx * dx + dy * dy + dz * dz <= bound && ++found >= limit){
+                countVisits(visited);
+                return found;
+            }
+            int axis = this.axes[mid];
+            double value = c[3 * mid + axis];
+            double ref = axis == 0 ? x : (axis == 1 ? y : z);
+            if(ref + eps > value){
+                stack.add(mid + 1);
+                stack.add(hi);
+            }
+            if(ref - eps <= value){
+                stack.add(lo);
+                stack.add(mid);
+            }
+        }
+        countVisits(visited);
+        return found;
+    }
+
+/**
+ * Searches the implicit tree for the points less than eps away from (x, y, z) and appends their
+ * positions in pointList to the buffer. Distances are compared squared against Point3D.strictSquaredBound(eps) and the
+ * tree is traversed with an explicit stack of [lo, hi) ranges that is reused by every query of a thread
+ * @return the number of neighbours appended
+ */
+    private int query(double x, double y, double z, double eps, IntList neighbours){
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        double[] c = this.coords;
+        int found = 0;
+        IntList stack = this.stacks.get();
+        stack.clear();
+        stack.add(0);
+        stack.add(this.size);
+        int visited = 0;
+        while(!stack.isEmpty()){
+            int hi = stack.pop();
+            int lo = stack.pop();
+            if(lo >= hi){
+                continue;
+            }
+            int mid = (lo + hi) >>> 1;
+            visited++;
+            double dx = c[3 * mid] - x;
+            double dy = c[3 * mid + 1] - y;
+            double dz = c[3 * mid + 2] - z;
+            if(dx * dx + dy * dy + dz * dz <= bound){
+                neighbours.add(this.ids[mid]);
+                found++;
+            }
+            int axis = this.axes[mid];
+            double value = c[3 * mid + axis];
+            double ref = axis == 0 ? x : (axis == 1 ? y : z);
+            if(ref + eps > value){
+                stack.add(mid + 1);
+                stack.add(hi);
+            }
+            if(ref - eps <= value){
+                stack.add(lo);
+                stack.add(mid);
+            }
+        }
+        countVisits(visited);
+        return found;
+    }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This data structure is a uniform grid over the points, used as a spatial index for a fixed eps.
+ * Space is cut into cubic cells of side eps, so all the neighbours of a point are in its own cell
+ * or in one of the 26 cells around it, and a range query only looks at these 27 cells.
+ *
+ * The cell coordinates are packed into a primitive long key and the cells are found with an open
+ * addressing hash table from key to cell number. The points are sorted by cell number and their
+ * coordinates are stored in flat arrays, so the points of a cell are contiguous in memory.
+ *
+ * For every cell the bounding box of the points it contains is kept. A query skips a cell whose box is
+ * farther than eps and takes all the points of a cell whose box is entirely within eps without
+ * computing any distance. A cell holding at least minPts points within eps of each other makes all
+ * its points core points (see markDenseCells)
+ *
+ * The grid can be built from a PointCloud, e.g. a mapped .pcb file, whose coordinate arrays are sorted into
+ * the cells without creating a Point3D per point
+ * @author Aksh Babbar (300034042)
+ */
+public class NearestNeighboursGrid implements SpatialIndex {
+
+    private static final int BITS = 21; //bits per cell coordinate in a key
+    private static final long MASK = (1L << BITS) - 1;
+    private static final long EMPTY = -1; //key of an empty slot in the hash table
+
+    private ArrayList<Point3D> pointList; //containing all points, null if built from a PointCloud
+    private double cellSize; //side of a cell
+    private double minX, minY, minZ; //origin of the grid
+    private double[] xs, ys, zs; //coordinates of the points sorted by cell
+    private int[] ids; //position in pointList of each sorted point
+    private int[] where; //sorted position of each point of pointList
+    private int[] cellStart; //points of cell c are at sorted positions [cellStart[c], cellStart[c + 1])
+    private double[] boxMin, boxMax; //bounding box of the points of each cell, 3 values per cell
+    private long[] tableKeys; //hash table: cell key, EMPTY if the slot is free
+    private int[] tableCells; //hash table: cell number of the key in the same slot
+
+/**
+ * Constructor that takes an ArrayList of type Point3D and sorts the points into cells of side cellSize
+ * @param pointList  the point list containing all points in dataset
+ * @param cellSize  side of a cell, normally the eps used by the queries
+ */
+    public NearestNeighboursGrid(ArrayList<Point3D> pointList, double cellSize){
+        this(PointCloud.fromPoints(pointList), cellSize);
+        this.pointList = pointList;
+    }
+
+/**
+ * Constructor that takes the coordinate arrays of a PointCloud and sorts the points into cells of side cellSize.
+ * The positions of the points in the cloud are the positions returned by the queries; RangeQuery
+ * creates a Point3D for each neighbour it returns
+ * @param cloud  the coordinates of all points in dataset
+ * @param cellSize  side of a cell, normally the eps used by the queries
+ */
+    public NearestNeighboursGrid(PointCloud cloud, double cellSize){
+        if(!(cellSize > 0)){
+            throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        int n = cloud.size();
+        this.minX = this.minY = this.minZ = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < n; i++){
+            this.minX = Math.min(this.minX, cloud.getX(i));
+            this.minY = Math.min(this.minY, cloud.getY(i));
+            this.minZ = Math.min(this.minZ, cloud.getZ(i));
+        }
+
+        //number the distinct cells in key order
+        long[] keys = new long[n];
+        for(int i = 0; i < n; i++){
+            keys[i] = key(cell(cloud.getX(i), this.minX), cell(cloud.getY(i), this.minY), cell(cloud.getZ(i), this.minZ));
+        }
+        long[] cellKeys = keys.clone();
+        Arrays.sort(cellKeys);
+        int cells = 0;
+        for(int i = 0; i < n; i++){
+            if(i == 0 || cellKeys[i] != cellKeys[i - 1]){
+                cellKeys[cells++] = cellKeys[i];
+            }
+        }
+
+        //counting sort of the points by cell number
+        int[] cellOf = new int[n];
+        this.cellStart = new int[cells + 1];
+        for(int i = 0; i < n; i++){
+            cellOf[i] = Arrays.binarySearch(cellKeys, 0, cells, keys[i]);
+            this.cellStart[cellOf[i] + 1]++;
+        }
+        for(int c = 0; c < cells; c++){
+            this.cellStart[c + 1] += this.cellStart[c];
+        }
+        int[] next = Arrays.copyOf(this.cellStart, cells);
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.zs = new double[n];
+        this.ids = new int[n];
+        this.where = new int[n];
+        for(int i = 0; i < n; i++){
+            int pos = next[cellOf[i]]++;
+            this.xs[pos] = cloud.getX(i);
+            this.ys[pos] = cloud.getY(i);
+            this.zs[pos] = cloud.getZ(i);
+            this.ids[pos] = i;
+            this.where[i] = pos;
+        }
+
+        //bounding box of every cell
+        this.boxMin = new double[3 * cells];
+        this.boxMax = new double[3 * cells];
+        Arrays.fill(this.boxMin, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.boxMax, Double.NEGATIVE_INFINITY);
+        for(int c = 0; c < cells; c++){
+            for(int p = this.cellStart[c]; p < this.cellStart[c + 1]; p++){
+                this.boxMin[3 * c] = Math.min(this.boxMin[3 * c], this.xs[p]);
+                this.boxMin[3 * c + 1] = Math.min(this.boxMin[3 * c + 1], this.ys[p]);
+                this.boxMin[3 * c + 2] = Math.min(this.boxMin[3 * c + 2], this.zs[p]);
+                this.boxMax[3 * c] = Math.max(this.boxMax[3 * c], this.xs[p]);
+                this.boxMax[3 * c + 1] = Math.max(this.boxMax[3 * c + 1], this.ys[p]);
+                this.boxMax[3 * c + 2] = Math.max(this.boxMax[3 * c + 2], this.zs[p]);
+            }
+        }
+
+        //hash table from cell key to cell number, at most half full
+        int capacity = Integer.highestOneBit(Math.max(2 * cells, 1)) << 1;
+        this.tableKeys = new long[capacity];
+        this.tableCells = new int[capacity];
+        Arrays.fill(this.tableKeys, EMPTY);
+        for(int c = 0; c < cells; c++){
+            int slot = slot(cellKeys[c]);
+            while(this.tableKeys[slot] != EMPTY){
+                slot = (slot + 1) & (capacity - 1);
+            }
+            this.tableKeys[slot] = cellKeys[c];
+            this.tableCells[slot] = c;
+        }
+    }
+
+/**
+ * Cell coordinate of a value along one axis
+ */
+    private long cell(double value, double origin){
+        return (long) Math.floor((value - origin) / this.cellSize);
+    }
+
+/**
+ * Packs the 3 cell coordinates into one key, BITS bits each. Coordinates wrap around beyond
+ * 2^BITS cells, which can put far apart points in the same cell but never loses a neighbour
+ */
+    private static long key(long cx, long cy, long cz){
+        return ((cx & MASK) << (2 * BITS)) | ((cy & MASK) << BITS) | (cz & MASK);
+    }
+
+    private int slot(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (this.tableKeys.length - 1);
+    }
+
+/**
+ * Finds the cell number of a key
+ * @return the cell number, -1 if no point is in that cell
+ */
+    private int findCell(long key){
+        int slot = slot(key);
+        while(this.tableKeys[slot] != EMPTY){
+            if(this.tableKeys[slot] == key){
+                return this.tableCells[slot];
+            }
+            slot = (slot + 1) & (this.tableKeys.length - 1);
+        }
+        return -1;
+    }
+
+/**
+ * Getter for the number of non-empty cells
+ * @return the number of cells holding at least one point
+ */
+    public int getCellCount(){
+        return this.cellStart.length - 1;
+    }
+
+/**
+ * Marks as core points all the points of the cells that hold at least minPts points and whose
+ * bounding box has a diagonal shorter than eps: every point of such a cell is within eps of all
+ * the others, so it has at least minPts neighbours without computing a single distance
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ * @param core  flags indexed by position in pointList, set to true for the points found
+ * @return the number of points marked
+ */
+    public int markDenseCells(double eps, int minPts, boolean[] core){
+        int marked = 0;
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        for(int c = 0; c < getCellCount(); c++){
+            int count = this.cellStart[c + 1] - this.cellStart[c];
+            if(count < minPts){
+                continue;
+            }
+            double dx = this.boxMax[3 * c] - this.boxMin[3 * c];
+            double dy = this.boxMax[3 * c + 1] - this.boxMin[3 * c + 1];
+            double dz = this.boxMax[3 * c + 2] - this.boxMin[3 * c + 2];
+            if(dx * dx + dy * dy + dz * dz <= bound){
+                for(int p = this.cellStart[c]; p < this.cellStart[c + 1]; p++){
+                    core[this.ids[p]] = true;
+                }
+                marked += count;
+            }
+        }
+        return marked;
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of a 3D point
+ *
+ * @param point  the point for which we need to find neighbours
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @return ArrayList<Point3D> of points closest to the given point
+ */
+    public ArrayList<Point3D> RangeQuery(Point3D point, double eps){
+        IntList found = new IntList();
+        query(point.getX(), point.getY(), point.getZ(), eps, found, Integer.MAX_VALUE);
+        ArrayList<Point3D> neighbours = new ArrayList<Point3D>(found.size());
+        for(int i = 0; i < found.size(); i++){
+            neighbours.add(point(found.get(i)));
+        }
+        return neighbours;
+    }
+
+/**
+ * The point at the given position of pointList, created from the grid coordinates if the grid was built from a PointCloud
+ */
+    private Point3D point(int pointIndex){
+        if(this.pointList != null){
+            return this.pointList.get(pointIndex);
+        }
+        int p = this.where[pointIndex];
+        Point3D point = new Point3D(this.xs[p], this.ys[p], this.zs[p]);
+        point.setIndex(pointIndex);
+        return point;
+    }
+
+/**
+ * Range query function that finds the nearest neighbours of the point at the given position in
+ * pointList and writes their positions into the given buffer
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param neighbours  buffer that is cleared and filled with the positions of the neighbours
+ * @return the number of neighbours found
+ */
+    public int rangeQuery(int pointIndex, double eps, IntList neighbours){
+        int p = this.where[pointIndex];
+        neighbours.clear();
+        return query(this.xs[p], this.ys[p], this.zs[p], eps, neighbours, Integer.MAX_VALUE);
+    }
+
+/**
+ * Counts the neighbours of the point at the given position in pointList, stopping as soon as
+ * the count reaches the limit
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param limit  count at which the search stops, e.g. minPts
+ * @return the number of neighbours found, at most limit
+ */
+    public int countWithin(int pointIndex, double eps, int limit){
+        int p = this.where[pointIndex];
+        return query(this.xs[p], this.ys[p], this.zs[p], eps, null, limit);
+    }
+
+/**
+ * Visits the cells within eps of (x, y, z), 27 cells when eps equals the cell size, and counts
+ * the points less than eps away
+ * @param neighbours  buffer to which the positions of the neighbours are appended, null to only count
+ * @param limit  count at which the search stops
+ * @return the number of neighbours found, at most limit
+ */
+    private int query(double x, double y, double z, double eps, IntList neighbours, int limit){
+        if(limit <= 0){
+            return 0;
+        }
+        double bound = Point3D.strictSquaredBound(eps); //same test as distance < eps
+        long reach = (long) Math.ceil(eps / this.cellSize);
+        long cx = cell(x, this.minX);
+        long cy = cell(y, this.minY);
+        long cz = cell(z, this.minZ);
+        int found = 0;
+        for(long i = cx - reach; i <= cx + reach; i++){
+            for(long j = cy - reach; j <= cy + reach; j++){
+                for(long k = cz - reach; k <= cz + reach; k++){
+                    int c = findCell(key(i, j, k));
+                    if(c < 0){
+                        continue;
+                    }
+                    double near = 0; //squared distance to the closest and farthest corner of the cell box
+                    double far = 0;
+                    for(int a = 0; a < 3; a++){
+                        double v = a == 0 ? x : (a == 1 ? y : z);
+                        double lo = this.boxMin[3 * c + a] - v;
+                        double hi = v - this.boxMax[3 * c + a];
+                        double gap = Math.max(0, Math.max(lo, hi));
+                        double span = Math.max(Math.abs(lo), Math.abs(hi));
+                        near += gap * gap;
+                        far += span * span;
+                    }
+                    if(near > bound){
+                        continue;
+                    }
+                    int start = this.cellStart[c];
+                    int end = this.cellStart[c + 1];
+                    if(far <= bound){ //whole cell within eps
+                        if(neighbours == null){
+                            found += end - start;
+                            if(found >= limit){
+                                return limit;
+                            }
+                            continue;
+                        }
+                        for(int p = start; p < end; p++){
+                            neighbours.add(this.ids[p]);
+                        }
+                        found += end - start;
+                        continue;
+                    }
+                    for(int p = start; p < end; p++){
+                        double dx = this.xs[p] - x;
+                        double dy = this.ys[p] - y;
+                        double dz = this.zs[p] - z;
+                        if(dx * dx + dy * dy + dz * dz <= bound){
+                            if(neighbours != null){
+                                neighbours.add(this.ids[p]);
+                            }
+                            if(++found >= limit){
+                                return found;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -1,4 +1,8 @@
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * This data structure is used to create a NearestNeighboursKD object that saves point in a KDTree object and
@@ -6,22 +10,45 @@ import java.util.ArrayList;
  * @author Aksh Babbar (300034042)
  */
 
-public class NearestNeighboursKD {
+public class NearestNeighboursKD implements SpatialIndex {
 
     private ArrayList<Point3D> pointList; //containing all points
     private KDtree kdtree; //KDtree object
 
 /** 
- * Constructor that takes an ArrayList of type Point3D and initializes a KDTree and adds points
- * from pointList to the tree
+ * Constructor that takes an ArrayList of type Point3D and builds a balanced KDTree from the points
+ * in pointList. The split axis cycles through x, y, z
  * @param pointList  the point list containing all points in dataset
  */
     public NearestNeighboursKD(ArrayList<Point3D> pointList){     
+        this(pointList, false);
+    }
+
+/** 
+ * Constructor that takes an ArrayList of type Point3D and builds a balanced KDTree from the points
+ * in pointList, independently of the order of the points in the list
+ * @param pointList  the point list containing all points in dataset
+ * @param widestSpread  if true each node splits on the axis with the largest extent of its points
+ */
+    public NearestNeighboursKD(ArrayList<Point3D> pointList, boolean widestSpread){     
         this.pointList = pointList;
-        this.kdtree = new KDtree();
-        for(Point3D point: this.pointList){
-            kdtree.add(point);
-        }
+        this.kdtree = KDtree.build(this.pointList, widestSpread);
+    }
+
+/** 
+ * Getter for the depth of the underlying KDTree
+ * @return the number of levels in the tree
+ */
+    public int getTreeDepth(){ 
+        return this.kdtree.getDepth();
+    }
+
+/** 
+ * Makes the range queries and counts add the number of KDTree nodes they visit to the given counter
+ * @param visits  the counter, shared by all the threads, null to stop counting
+ */
+    public void setVisitCounter(LongAdder visits){ 
+        this.kdtree.setVisitCounter(visits);
     }
 
 /** 
@@ -36,4 +63,103 @@ public class NearestNeighboursKD {
         neighbours = this.kdtree.rangeQuery(point, eps, neighbours, this.kdtree.getRoot()); //Call to the rangeQuery function in KDTree
         return neighbours;
     } 
-}
\ No newline at end of file
+
+/** 
+ * Range query function that finds the nearest neighbours of the point at the given position in
+ * pointList and writes their positions into the given buffer.
+ * Squared distances are used and the buffer is reused, so the query does not allocate
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param neighbours  buffer that is cleared and filled with the positions of the neighbours
+ * @return the number of neighbours found
+ */
+    public int rangeQuery(int pointIndex, double eps, IntList neighbours){    
+        Point3D point = this.pointList.get(pointIndex);
+        neighbours.clear();
+        return this.kdtree.rangeQuery(point.getX(), point.getY(), point.getZ(), eps, neighbours);
+    } 
+
+/** 
+ * Counts the neighbours of a 3D point in the KDTree, stopping as soon as the count reaches the limit.
+ * Use it instead of RangeQuery(...).size() when only the core/border decision is needed
+ *
+ * @param point  the point for which we need to count neighbours
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param limit  count at which the search stops, e.g. minPts
+ * @return the number of neighbours found, at most limit
+ */
+    public int countWithin(Point3D point, double eps, int limit){    
+        return this.kdtree.countWithin(point.getX(), point.getY(), point.getZ(), eps, limit);
+    } 
+
+/** 
+ * Counts the neighbours of the point at the given position in pointList, stopping as soon as
+ * the count reaches the limit
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+ * @param limit  count at which the search stops, e.g. minPts
+ * @return the number of neighbours found, at most limit
+ */
+    public int countWithin(int pointIndex, double eps, int limit){    
+        return countWithin(this.pointList.get(pointIndex), eps, limit);
+    } 
+
+/** 
+ * Exact k nearest neighbours of the point at the given position in pointList, the point itself included
+ * (like in the range queries), closest first. See KDtree.nearest
+ *
+ * @param pointIndex  position of the point in pointList
+ * @param k  number of neighbours wanted
+ * @param ids  at least k entries, receives the positions of the neighbours
+ * @param distances  at least k entries, receives their distances
+ * @return the number of neighbours found, k unless there are fewer points
+ */
+    public int nearest(int pointIndex, int k, int[] ids, double[] distances){    
+        Point3D point = this.pointList.get(pointIndex);
+        int found = this.kdtree.nearest(point.getX(), point.getY(), point.getZ(), k, ids, distances);
+        for(int i = 0; i < found; i++){
+            distances[i] = Math.sqrt(distances[i]);
+        }
+        return found;
+    } 
+
+/** 
+ * Distance of every point to its k-th nearest neighbour, the point itself included: a point is a core point
+ * for minPts = k exactly when this distance is smaller than eps. The queries run in parallel
+ *
+ * @param k  rank of the neighbour, at least 1
+ * @param threads  the number of worker threads
+ * @return double[] the k-distance of every point of pointList, to its farthest point if there are fewer than k
+ */
+    public double[] kDistances(int k, int threads){    
+        if(k < 1){
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        int size = this.pointList.size();
+        double[] result = new double[size];
+        if(size == 0){
+            return result;
+        }
+        int wanted = Math.min(k, size);
+        ThreadLocal<int[]> ids = ThreadLocal.withInitial(() -> new int[wanted]);
+        ThreadLocal<double[]> distances = ThreadLocal.withInitial(() -> new double[wanted]);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> {
+                double[] d = distances.get();
+                int found = nearest(i, wanted, ids.get(), d);
+                result[i] = d[found - 1];
+            })).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("k-distance queries interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("k-distance queries failed", e.getCause());
+        }finally{
+            pool.shutdown();
+        }
+        return result;
+    } 
+}
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * This data structure stores the eps-neighbourhood of every point once, for the largest eps of interest,
+ * so that clusterings for any smaller eps and any minPts can be derived without querying the index again.
+ *
+ * The neighbours of all points are kept in 2 flat arrays (compressed sparse rows): the neighbours of point i
+ * are at positions offsets[i] to offsets[i + 1] - 1, sorted by distance, with their squared distance stored
+ * as a float. The neighbourhood for a smaller eps is then a prefix of the row, found by binary search.
+ * The float distances are rounded, so the few entries within a rounding error of eps are compared again
+ * with the exact double distance, and the answers are the same as the ones of the index.
+ *
+ * It is itself a SpatialIndex, so ParallelDBScan runs on it unchanged. Queries with an eps larger than
+ * the one of the graph are given to the index it was built from.
+ *
+ * The graph can be saved to a '.nbg' file and loaded by later runs on the same points, which then do no
+ * spatial query at all. All values are little-endian, the file is a 48 byte header followed by the arrays:
+ * - header: magic "NBG1", int version (1), 8 reserved bytes, long number of points n, long number of entries m,
+ *   double eps of the graph, long fingerprint of the coordinates of the points in point list order
+ * - offsets[n + 1] (int32), neighbours[m] (int32), distances[m] (float32)
+ * The arrays are written and read through memory maps of at most MAX_MAP bytes, with bulk puts and gets.
+ * A file is only loaded for points with the same fingerprint and the same eps, so a graph of other points
+ * or of points in another order (e.g. after DBScan.orderAlongCurve) is never used
+ * @author Aksh Babbar (300034042)
+ */
+public class NeighbourGraph implements SpatialIndex {
+
+    private static final double MARGIN = 1e-6; //relative band around eps^2 checked with exact distances, float rounding is below 1e-7
+    public static final int MAGIC = 0x3147424E; //"NBG1" read as a little-endian int
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 48;
+    private static final int MAX_MAP = 1 << 30; //largest part of an array mapped at once
+
+    private final ArrayList<Point3D> pointList;
+    private final SpatialIndex index; //index the graph was built from, null for a graph loaded from a file
+    private final double maxEps;
+    private final int[] offsets; //start of the row of every point, offsets[n] is the number of entries
+    private final int[] neighbours; //positions of the neighbours, row by row
+    private final float[] distances; //squared distance of every entry, increasing along a row
+
+    private NeighbourGraph(ArrayList<Point3D> pointList, SpatialIndex index, double maxEps, int[] offsets){
+        this.pointList = pointList;
+        this.index = index;
+        this.maxEps = maxEps;
+        this.offsets = offsets;
+        this.neighbours = new int[offsets[pointList.size()]];
+        this.distances = new float[offsets[pointList.size()]];
+    }
+
+    private NeighbourGraph(ArrayList<Point3D> pointList, double maxEps, int[] offsets, int[] neighbours, float[] distances){
+        this.pointList = pointList;
+        this.index = null;
+        this.maxEps = maxEps;
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+        this.distances = distances;
+    }
+
+/**
+ * Builds the graph with 2 parallel passes over the points: the neighbours are counted first,
+ * so that the rows can be written in place in the second pass
+ * @param pointList  the points, in the order of the index
+ * @param index  the spatial index over the points
+ * @param maxEps  the largest eps the graph answers for
+ * @param threads  the number of worker threads
+ * @param maxEntries  the largest number of entries allowed (8 bytes each)
+ * @return NeighbourGraph the graph, null if it would have more than maxEntries entries
+ */
+    public static NeighbourGraph build(ArrayList<Point3D> pointList, SpatialIndex index, double maxEps, int threads, long maxEntries){
+        int n = pointList.size();
+        int[] counts = new int[n];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            run(pool, n, i -> counts[i] = index.countWithin(i, maxEps, Integer.MAX_VALUE));
+            int[] offsets = new int[n + 1];
+            long total = 0;
+            for(int i = 0; i < n; i++){
+                offsets[i] = (int) total;
+                total += counts[i];
+                if(total > maxEntries || total > Integer.MAX_VALUE - 8){
+                    return null;
+                }
+            }
+            offsets[n] = (int) total;
+            NeighbourGraph graph = new NeighbourGraph(pointList, index, maxEps, offsets);
+            ThreadLocal<IntList> buffers = ThreadLocal.withInitial(IntList::new);
+            ThreadLocal<long[]> keys = ThreadLocal.withInitial(() -> new long[16]);
+            run(pool, n, i -> graph.fillRow(i, buffers.get(), keys));
+            return graph;
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+/**
+ * Writes the row of a point: every neighbour is packed with its float distance in a long
+ * (the bits of a positive float sort like the float), the longs are sorted and unpacked
+ */
+    private void fillRow(int i, IntList buffer, ThreadLocal<long[]> keys){
+        this.index.rangeQuery(i, this.maxEps, buffer);
+        int count = buffer.size();
+        long[] packed = keys.get();
+        if(packed.length < count){
+            packed = new long[Math.max(count, packed.length * 2)];
+            keys.set(packed);
+        }
+        Point3D point = this.pointList.get(i);
+        for(int k = 0; k < count; k++){
+            int j = buffer.get(k);
+            float d = (float) squaredDistance(this.pointList.get(j), point);
+            packed[k] = (long) Float.floatToRawIntBits(d) << 32 | j;
+        }
+        Arrays.sort(packed, 0, count);
+        int start = this.offsets[i];
+        for(int k = 0; k < count; k++){
+            this.neighbours[start + k] = (int) packed[k];
+            this.distances[start + k] = Float.intBitsToFloat((int) (packed[k] >>> 32));
+        }
+    }
+
+/**
+ * Squared distance computed in the same order as the KDtree queries, so both agree on the points at eps
+ */
+    private static double squaredDistance(Point3D pt, Point3D ref){
+        double dx = pt.getX() - ref.getX();
+        double dy = pt.getY() - ref.getY();
+        double dz = pt.getZ() - ref.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+/**
+ * Fingerprint of the coordinates of the points, in point list order, stored in the '.nbg' files
+ * @return long hash of all the coordinates
+ */
+    public static long fingerprint(ArrayList<Point3D> pointList){
+        long hash = pointList.size();
+        for(Point3D point: pointList){
+            hash = (hash ^ Double.doubleToLongBits(point.getX())) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ Double.doubleToLongBits(point.getY())) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ Double.doubleToLongBits(point.getZ())) * 0x9E3779B97F4A7C15L;
+        }
+        return hash;
+    }
+
+/**
+ * Saves the graph to a '.nbg' file
+ * @param filename  the output file
+ * @throws IOException if the file cannot be written
+ */
+    public void save(String filename) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(0);
+            header.putLong(this.pointList.size());
+            header.putLong(this.neighbours.length);
+            header.putDouble(this.maxEps);
+            header.putLong(fingerprint(this.pointList));
+            header.flip();
+            while(header.hasRemaining()){
+                channel.write(header, header.position());
+            }
+            long offset = HEADER_SIZE;
+            offset = mapInts(channel, offset, this.offsets, true);
+            offset = mapInts(channel, offset, this.neighbours, true);
+            mapFloats(channel, offset, this.distances, true);
+        }
+    }
+
+/**
+ * Loads the graph saved by save() for the given points and eps
+ * @param filename  the '.nbg' file
+ * @param pointList  the points, in the order of the saved graph
+ * @param eps  the eps the graph must have been built for
+ * @return NeighbourGraph the graph, null if the file does not exist or holds the graph of other points or of another eps
+ * @throws IOException if the file cannot be read or is not a '.nbg' file
+ */
+    public static NeighbourGraph load(String filename, ArrayList<Point3D> pointList, double eps) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining()){
+                if(channel.read(header, header.position()) < 0){
+                    break;
+                }
+            }
+            if(header.hasRemaining() || header.getInt(0) != MAGIC){
+                throw new IOException("Not a neighbour graph file: " + filename);
+            }
+            if(header.getInt(4) != VERSION){
+                throw new IOException("Unsupported neighbour graph version " + header.getInt(4));
+            }
+            long n = header.getLong(16);
+            long entries = header.getLong(24);
+            if(n != pointList.size() || header.getDouble(32) != eps || header.getLong(40) != fingerprint(pointList)){
+                return null;
+            }
+            if(entries < 0 || entries > Integer.MAX_VALUE - 8
+                    || channel.size() < HEADER_SIZE + 4 * (n + 1) + 8 * entries){
+                throw new IOException("Neighbour graph file is truncated: " + filename);
+            }
+            int[] offsets = new int[(int) n + 1];
+            int[] neighbours = new int[(int) entries];
+            float[] distances = new float[(int) entries];
+            long offset = HEADER_SIZE;
+            offset = mapInts(channel, offset, offsets, false);
+            offset = mapInts(channel, offset, neighbours, false);
+            mapFloats(channel, offset, distances, false);
+            return new NeighbourGraph(pointList, eps, offsets, neighbours, distances);
+        }catch(NoSuchFileException e){
+            return null;
+        }
+    }
+
+/**
+ * Copies an int array to (write) or from (read) the file, mapping it in parts of at most MAX_MAP bytes
+ * @return long the position in the file after the array
+ */
+    private static long mapInts(FileChannel channel, long offset, int[] values, boolean write) throws IOException{
+        for(int done = 0; done < values.length; ){
+            int part = Math.min(values.length - done, MAX_MAP / 4);
+            MappedByteBuffer map = channel.map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                offset + 4L * done, 4L * part);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if(write){
+                map.asIntBuffer().put(values, done, part);
+            }
+            else{
+                map.asIntBuffer().get(values, done, part);
+            }
+            done += part;
+        }
+        return offset + 4L * values.length;
+    }
+
+    private static long mapFloats(FileChannel channel, long offset, float[] values, boolean write) throws IOException{
+        for(int done = 0; done < values.length; ){
+            int part = Math.min(values.length - done, MAX_MAP / 4);
+            MappedByteBuffer map = channel.map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                offset + 4L * done, 4L * part);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if(write){
+                map.asFloatBuffer().put(values, done, part);
+            }
+            else{
+                map.asFloatBuffer().get(values, done, part);
+            }
+            done += part;
+        }
+        return offset + 4L * values.length;
+    }
+
+/**
+ * Getter for the largest eps the graph answers for
+ * @return double eps of the graph
+ */
+    public double getMaxEps(){
+        return this.maxEps;
+    }
+
+/**
+ * Getter for the number of entries of the graph, i.e. the sum of the sizes of all neighbourhoods
+ * @return long number of entries
+ */
+    public long getEntryCount(){
+        return this.neighbours.length;
+    }
+
+/**
+ * The row of point i is split by eps in 3 parts: the entries before bandStart are closer than eps,
+ * the entries from bandEnd on are not, and the entries of the band in between are within a
+ * rounding error of eps and are checked with exact distances by the callers
+ */
+    private int bandStart(int i, double epsSquared){
+        return firstAbove(i, (float) (epsSquared * (1 - MARGIN)), true);
+    }
+
+    private int bandEnd(int i, double epsSquared){
+        return firstAbove(i, (float) (epsSquared * (1 + MARGIN)), false);
+    }
+
+/**
+ * Binary search in the row of point i for the first entry with a distance >= bound (or > bound)
+ */
+    private int firstAbove(int i, float bound, boolean inclusive){
+        int lo = this.offsets[i];
+        int hi = this.offsets[i + 1];
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            float d = this.distances[mid];
+            if(inclusive ? d < bound : d <= bound){
+                lo = mid + 1;
+            }
+            else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public ArrayList<Point3D> RangeQuery(Point3D point, double eps){
+        int i = point.getIndex();
+        if(eps > this.maxEps || i < 0 || i >= this.pointList.size() || this.pointList.get(i) != point){
+            return fallback(eps).RangeQuery(point, eps);
+        }
+        IntList buffer = new IntList();
+        rangeQuery(i, eps, buffer);
+        ArrayList<Point3D> result = new ArrayList<Point3D>(buffer.size());
+        for(int k = 0; k < buffer.size(); k++){
+            result.add(this.pointList.get(buffer.get(k)));
+        }
+        return result;
+    }
+
+    @Override
+    public int rangeQuery(int pointIndex, double eps, IntList neighbours){
+        if(eps > this.maxEps){
+            return fallback(eps).rangeQuery(pointIndex, eps, neighbours);
+        }
+        neighbours.clear();
+        double epsSquared = eps * eps;
+        double bound = Point3D.strictSquaredBound(eps); //exact test of the band, the same as the indexes
+        int start = this.offsets[pointIndex];
+        int band = bandStart(pointIndex, epsSquared);
+        int end = bandEnd(pointIndex, epsSquared);
+        for(int k = start; k < band; k++){
+            neighbours.add(this.neighbours[k]);
+        }
+        Point3D point = this.pointList.get(pointIndex);
+        for(int k = band; k < end; k++){
+            if(squaredDistance(this.pointList.get(this.neighbours[k]), point) <= bound){
+                neighbours.add(this.neighbours[k]);
+            }
+        }
+        return neighbours.size();
+    }
+
+    @Override
+    public int countWithin(int pointIndex, double eps, int limit){
+        if(eps > this.maxEps){
+            return fallback(eps).countWithin(pointIndex, eps, limit);
+        }
+        double epsSquared = eps * eps;
+        double bound = Point3D.strictSquaredBound(eps); //exact test of the band, the same as the indexes
+        int band = bandStart(pointIndex, epsSquared);
+        int found = band - this.offsets[pointIndex];
+        if(found >= limit){
+            return limit;
+        }
+        int end = bandEnd(pointIndex, epsSquared);
+        Point3D point = this.pointList.get(pointIndex);
+        for(int k = band; k < end && found < limit; k++){
+            if(squaredDistance(this.pointList.get(this.neighbours[k]), point) <= bound){
+                found++;
+            }
+        }
+        return found;
+    }
+
+/**
+ * The index that answers the queries the graph cannot answer: larger eps or points of another list
+ * @throws IllegalArgumentException for a graph loaded from a file, which has no index
+ */
+    private SpatialIndex fallback(double eps){
+        if(this.index == null){
+            throw new IllegalArgumentException("A loaded graph only answers for its own points up to eps " + this.maxEps + ", not " + eps);
+        }
+        return this.index;
+    }
+
+    private static void run(ForkJoinPool pool, int size, IntConsumer task){
+        try{
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(task)).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Building the neighbour graph interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Building the neighbour graph failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.Arrays;
+
+/**
+ * This class computes the OPTICS ordering of the points (Ankerst et al., "OPTICS: Ordering Points To Identify
+ * the Clustering Structure"), with the same range queries as DBScan. It is run once for a generating eps
+ * and minPts, and gives the DBScan clustering for any smaller eps in linear time with extract().
+ *
+ * For every point it finds:
+ * - the core distance: distance to its minPts-th nearest neighbour (itself included), if it is less than eps,
+ *   i.e. the smallest eps for which the point is a core point
+ * - the reachability distance: max(core distance of p, distance(p, point)), smallest over the points p
+ *   processed before it, i.e. the smallest eps for which it is density-reachable from them
+ * The next point processed is always the one with the smallest reachability, taken from an indexed binary heap
+ * (priority queue with decrease-key) of primitive arrays.
+ *
+ * Distances are kept squared and compared with eps squared, with the strict comparison of the indexes, so
+ * extract(eps) finds the same core points as DBScan with that eps. In the extraction of the paper a border point
+ * that comes before the core points of its cluster in the ordering is noise; to avoid this every point also keeps
+ * its smallest max(core distance of p, distance(p, point)) over all its core neighbours p, with that neighbour
+ * @author Aksh Babbar (300034042)
+ */
+public class Optics {
+
+    private static final double UNDEFINED = Double.POSITIVE_INFINITY;
+
+    private final SpatialIndex index;
+    private final int size; //number of points
+    private final double eps; //generating eps
+    private final int minPts;
+    private final int[] order; //positions of the points in processing order
+    private final double[] reachability; //squared reachability distance of every point, UNDEFINED if none
+    private final double[] coreDistance; //squared core distance of every point, UNDEFINED if not a core point at eps
+    private final double[] borderDistance; //squared smallest max(core distance of p, distance to p) over all core neighbours p
+    private final int[] borderCore; //the core neighbour p giving borderDistance, -1 if none
+    private final int[] heap; //positions of the points waiting, as a binary heap on reachability
+    private final int[] heapPos; //place of every point in heap, -1 if not in it
+    private int heapSize;
+
+/**
+ * Constructor for the ordering of the points of an index
+ * @param index  the spatial index over the points
+ * @param size  the number of points in the index
+ * @param eps  the generating eps, the largest eps that can be extracted
+ * @param minPts  the number of neighbours that makes a core point
+ */
+    public Optics(SpatialIndex index, int size, double eps, int minPts){
+        this.index = index;
+        this.size = size;
+        this.eps = eps;
+        this.minPts = minPts;
+        this.order = new int[size];
+        this.reachability = new double[size];
+        this.coreDistance = new double[size];
+        this.borderDistance = new double[size];
+        this.borderCore = new int[size];
+        this.heap = new int[size];
+        this.heapPos = new int[size];
+    }
+
+/**
+ * Computes the ordering, the core distances and the reachability distances
+ * @param points  coordinates of the points, in the order of the index
+ */
+    public void run(PointCloud points){
+        Arrays.fill(this.reachability, UNDEFINED);
+        Arrays.fill(this.borderDistance, UNDEFINED);
+        Arrays.fill(this.borderCore, -1);
+        Arrays.fill(this.heapPos, -1);
+        this.heapSize = 0;
+        boolean[] processed = new boolean[this.size];
+        IntList neighbours = new IntList();
+        double[] distances = new double[16]; //squared distance of every neighbour
+        double[] scratch = new double[16]; //copy of distances reordered by select
+        int done = 0;
+        for(int start = 0; start < this.size; start++){
+            if(processed[start]){
+                continue;
+            }
+            push(start);
+            while(this.heapSize > 0){
+                int p = pop();
+                processed[p] = true;
+                this.order[done++] = p;
+                this.index.rangeQuery(p, this.eps, neighbours);
+                int count = neighbours.size();
+                if(distances.length < count){
+                    distances = new double[Math.max(count, distances.length * 2)];
+                    scratch = new double[distances.length];
+                }
+                double x = points.getX(p);
+                double y = points.getY(p);
+                double z = points.getZ(p);
+                for(int k = 0; k < count; k++){
+                    int q = neighbours.get(k);
+                    double dx = points.getX(q) - x;
+                    double dy = points.getY(q) - y;
+                    double dz = points.getZ(q) - z;
+                    distances[k] = dx * dx + dy * dy + dz * dz;
+                }
+                if(count < this.minPts){
+                    this.coreDistance[p] = UNDEFINED;
+                    continue;
+                }
+                System.arraycopy(distances, 0, scratch, 0, count);
+                this.coreDistance[p] = select(scratch, count, this.minPts - 1);
+                for(int k = 0; k < count; k++){
+                    int q = neighbours.get(k);
+                    double reach = Math.max(this.coreDistance[p], distances[k]);
+                    if(reach < this.borderDistance[q]){
+                        this.borderDistance[q] = reach;
+                        this.borderCore[q] = p;
+                    }
+                    if(!processed[q] && reach < this.reachability[q]){
+                        this.reachability[q] = reach;
+                        push(q);
+                    }
+                }
+            }
+        }
+    }
+
+/**
+ * Quickselect: the k-th smallest of values[0, n), values is reordered
+ */
+    private static double select(double[] values, int n, int k){
+        int lo = 0;
+        int hi = n - 1;
+        while(lo < hi){
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(values[i] < pivot){
+                    i++;
+                }
+                while(values[j] > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }
+            else if(k >= i){
+                lo = i;
+            }
+            else{
+                break;
+            }
+        }
+        return values[k];
+    }
+
+/**
+ * Adds a point to the heap, or moves it up after its reachability went down
+ */
+    private void push(int p){
+        int i = this.heapPos[p];
+        if(i < 0){
+            i = this.heapSize++;
+        }
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(!before(p, this.heap[parent])){
+                break;
+            }
+            place(this.heap[parent], i);
+            i = parent;
+        }
+        place(p, i);
+    }
+
+/**
+ * Removes and returns the point with the smallest reachability
+ */
+    private int pop(){
+        int top = this.heap[0];
+        this.heapPos[top] = -1;
+        int last = this.heap[--this.heapSize];
+        if(this.heapSize > 0){
+            int i = 0;
+            while(true){
+                int child = 2 * i + 1;
+                if(child >= this.heapSize){
+                    break;
+                }
+                if(child + 1 < this.heapSize && before(this.heap[child + 1], this.heap[child])){
+                    child++;
+                }
+                if(!before(this.heap[child], last)){
+                    break;
+                }
+                place(this.heap[child], i);
+                i = child;
+            }
+            place(last, i);
+        }
+        return top;
+    }
+
+    private boolean before(int a, int b){ //smaller reachability first, then smaller position
+        return this.reachability[a] < this.reachability[b] || this.reachability[a] == this.reachability[b] && a < b;
+    }
+
+    private void place(int p, int i){
+        this.heap[i] = p;
+        this.heapPos[p] = i;
+    }
+
+/**
+ * Extracts the DBScan clustering for an eps not larger than the generating eps, in one pass over the ordering:
+ * a point that is not reachable within eps starts a new cluster if it is a core point at eps, and is noise otherwise,
+ * a reachable point joins the current cluster. A second pass gives the noise points that have a core neighbour
+ * within eps (borderDistance < eps) the cluster of that neighbour
+ * @param eps  the eps of the clustering
+ * @return int[] the cluster id of every point (1, 2, ... in ordering order), 0 for noise
+ */
+    public int[] extract(double eps){
+        if(eps > this.eps){
+            throw new IllegalArgumentException("eps " + eps + " is larger than the generating eps " + this.eps);
+        }
+        double bound = Point3D.strictSquaredBound(eps); //squared distances are within eps up to it
+        int[] labels = new int[this.size];
+        int cluster = 0;
+        for(int p: this.order){
+            if(this.reachability[p] > bound){
+                if(this.coreDistance[p] <= bound){
+                    labels[p] = ++cluster;
+                }
+                else{
+                    labels[p] = 0;
+                }
+            }
+            else{
+                labels[p] = cluster;
+            }
+        }
+        for(int p = 0; p < this.size; p++){
+            if(labels[p] == 0 && this.borderDistance[p] <= bound){
+                labels[p] = labels[this.borderCore[p]];
+            }
+        }
+        return labels;
+    }
+
+/**
+ * Getter for the generating eps
+ * @return double the largest eps that can be extracted
+ */
+    public double getEps(){
+        return this.eps;
+    }
+
+/**
+ * Getter for the processing order
+ * @return int[] positions of the points in OPTICS order
+ */
+    public int[] getOrder(){
+        return this.order.clone();
+    }
+
+/**
+ * Getter for the reachability distances, e.g. to plot the reachability of getOrder()
+ * @return double[] reachability distance of every point, Infinity if undefined
+ */
+    public double[] getReachability(){
+        return sqrt(this.reachability);
+    }
+
+/**
+ * Getter for the core distances
+ * @return double[] core distance of every point, Infinity if it is not a core point at the generating eps
+ */
+    public double[] getCoreDistance(){
+        return sqrt(this.coreDistance);
+    }
+
+    private static double[] sqrt(double[] squared){
+        double[] values = new double[squared.length];
+        for(int i = 0; i < values.length; i++){
+            values[i] = Math.sqrt(squared[i]);
+        }
+        return values;
+    }
+}
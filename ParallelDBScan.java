@@ -0,0 +1,171 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * This class runs the DBScan algorithm on several threads.
+ * Instead of growing one cluster at a time from a stack, it works in 3 phases
+ * over the positions of the points, each phase running in parallel on a ForkJoinPool:
+ * - core flags: a point is a core point if it has at least minPts neighbours (countWithin)
+ * - core merge: every core point is merged with its core neighbours in a ConcurrentUnionFind,
+ *               each connected set of core points is a cluster
+ * - border assignment: a point that is not a core point joins the cluster of one of its
+ *               core neighbours, or is noise if it has none
+ * The spatial index is only read, so it is shared by all the threads.
+ *
+ * Clusters are numbered in the order of their smallest core point, which is the order in which
+ * the sequential DBScan.findClusters creates them, so both give the same cluster ids. Only a border
+ * point within eps of 2 clusters can differ, as DBScan allows it to join either of them
+ * @author Aksh Babbar (300034042)
+ */
+public class ParallelDBScan {
+
+    private final SpatialIndex index; //index over the points, read by all threads
+    private final int size; //number of points
+    private final double eps;
+    private final int minPts;
+    private final int threads;
+    private boolean[] knownCore; //points already known to be core points, may be null
+    private boolean coreComplete; //knownCore holds the final flags of all points, no neighbour count is done
+    private int[] weights; //number of points each point stands for, null if every point counts once
+    private final ThreadLocal<IntList> buffers = ThreadLocal.withInitial(IntList::new); //neighbour buffer of each thread
+
+/**
+ * Constructor for the parallel clustering of the points of an index
+ * @param index  the spatial index over the points
+ * @param size  the number of points in the index
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ * @param threads  the number of worker threads
+ */
+    public ParallelDBScan(SpatialIndex index, int size, double eps, int minPts, int threads){
+        this.index = index;
+        this.size = size;
+        this.eps = eps;
+        this.minPts = minPts;
+        this.threads = threads;
+    }
+
+/**
+ * Gives the points that are already known to be core points (e.g. from NearestNeighboursGrid.markDenseCells),
+ * no neighbour count is done for them
+ * @param knownCore  flags indexed by point position, true for a known core point
+ */
+    public void setKnownCore(boolean[] knownCore){
+        this.knownCore = knownCore;
+        this.coreComplete = false;
+    }
+
+/**
+ * Gives the final core flags of all the points, e.g. computed tile by tile by PartitionedDBScan:
+ * the core flags phase is skipped and only the merge and border phases run
+ * @param core  flags indexed by point position, true for a core point and false for any other point
+ */
+    public void setCore(boolean[] core){
+        this.knownCore = core;
+        this.coreComplete = true;
+    }
+
+/**
+ * Gives every point a weight, e.g. the number of points of a voxel of a VoxelGrid: a point is then a core point
+ * if the weights of its neighbours add up to at least minPts. Known core points stay core points, as a weight is at least 1
+ * @param weights  weight of every point, indexed by point position, null to count every point once
+ */
+    public void setWeights(int[] weights){
+        this.weights = weights;
+    }
+
+/**
+ * Runs the 3 phases and returns the label of every point
+ * @return int[] with the cluster id (1, 2, ...) of each point, 0 for noise
+ */
+    public int[] findClusters(){
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try{
+            boolean[] core = this.knownCore != null ? this.knownCore.clone() : new boolean[this.size];
+            if(!this.coreComplete){
+                run(pool, i -> {
+                    if(!core[i]){
+                        core[i] = (this.weights != null ? weightWithin(i) : this.index.countWithin(i, this.eps, this.minPts)) >= this.minPts;
+                    }
+                });
+            }
+
+            ConcurrentUnionFind sets = new ConcurrentUnionFind(this.size);
+            run(pool, i -> {
+                if(!core[i]){
+                    return;
+                }
+                IntList neighbours = this.buffers.get();
+                this.index.rangeQuery(i, this.eps, neighbours);
+                for(int k = 0; k < neighbours.size(); k++){
+                    int j = neighbours.get(k);
+                    if(j < i && core[j]){ //the neighbour relation is symmetric, j > i merges from j's side
+                        sets.union(i, j);
+                    }
+                }
+            });
+
+            int[] labels = new int[this.size];
+            int clusterCount = 0;
+            for(int i = 0; i < this.size; i++){ //the root of a set is its smallest core point
+                if(core[i] && sets.find(i) == i){
+                    labels[i] = ++clusterCount;
+                }
+            }
+            run(pool, i -> {
+                if(core[i]){
+                    labels[i] = labels[sets.find(i)];
+                    return;
+                }
+                IntList neighbours = this.buffers.get();
+                this.index.rangeQuery(i, this.eps, neighbours);
+                for(int k = 0; k < neighbours.size(); k++){
+                    int j = neighbours.get(k);
+                    if(core[j]){
+                        labels[i] = -sets.find(j) - 1; //resolved to the cluster id below, roots keep their label meanwhile
+                        return;
+                    }
+                }
+            });
+            for(int i = 0; i < this.size; i++){
+                if(labels[i] < 0){
+                    labels[i] = labels[-labels[i] - 1];
+                }
+            }
+            return labels;
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+/**
+ * Sum of the weights of the neighbours of a point, counted until it reaches minPts
+ */
+    private long weightWithin(int i){
+        IntList neighbours = this.buffers.get();
+        this.index.rangeQuery(i, this.eps, neighbours);
+        long total = 0;
+        for(int k = 0; k < neighbours.size() && total < this.minPts; k++){
+            total += this.weights[neighbours.get(k)];
+        }
+        return total;
+    }
+
+/**
+ * Runs the task for every position 0..size-1 on the pool and waits for the end
+ * @param pool  the pool of worker threads
+ * @param task  the work done for one position
+ */
+    private void run(ForkJoinPool pool, IntConsumer task){
+        try{
+            pool.submit(() -> IntStream.range(0, this.size).parallel().forEach(task)).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel clustering interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Parallel clustering failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class runs DBScan for a list of (eps, minPts) pairs on the same point cloud.
+ * The cloud is read once, the index is built once, and the eps-neighbourhoods are computed once
+ * for the largest eps into a NeighbourGraph; the clustering of every pair is then derived from the graph
+ * (a prefix of every sorted row for a smaller eps, a different core threshold for another minPts).
+ * If the graph does not fit in about half of the free memory the pairs are run on the index directly,
+ * which still saves the reading and the building of the index.
+ *
+ * Every pair gets one line in the summary file '<file>_sweep.csv':
+ * eps,minPts,clusters,noise,sizes  (sizes of the clusters, largest first, separated by spaces)
+ *
+ * java ParameterSweep <file> <eps:minPts> [<eps:minPts> ...] [--threads <n>] [--header-lines <n>]
+ * @author Aksh Babbar (300034042)
+ */
+public class ParameterSweep {
+
+    private final ArrayList<Point3D> points;
+    private final int threads;
+    private SpatialIndex index; //the index, or the neighbour graph built on it
+
+/**
+ * Constructor for a sweep over the given points
+ * @param points  the points, their index is set to their position in the list
+ * @param threads  the number of worker threads
+ */
+    public ParameterSweep(ArrayList<Point3D> points, int threads){
+        this.points = points;
+        this.threads = threads;
+        for(int i = 0; i < points.size(); i++){
+            points.get(i).setIndex(i);
+        }
+    }
+
+/**
+ * Builds the KD tree and the neighbour graph for the largest eps of the sweep
+ * @param maxEps  the largest eps of the pairs
+ * @return boolean true if the neighbour graph was built, false if the pairs will query the tree
+ */
+    public boolean prepare(double maxEps){
+        NearestNeighboursKD tree = new NearestNeighboursKD(this.points);
+        Runtime rt = Runtime.getRuntime();
+        long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+        NeighbourGraph graph = NeighbourGraph.build(this.points, tree, maxEps, this.threads, free / 2 / 8);
+        this.index = graph != null ? graph : tree;
+        return graph != null;
+    }
+
+/**
+ * Clusters the points for one pair, prepare() must have been called with an eps at least as large
+ * @return int[] the cluster id of every point (1, 2, ...), 0 for noise
+ */
+    public int[] cluster(double eps, int minPts){
+        return new ParallelDBScan(this.index, this.points.size(), eps, minPts, this.threads).findClusters();
+    }
+
+/**
+ * Summary line of a clustering
+ * @return String "eps,minPts,clusters,noise,sizes"
+ */
+    public static String summarize(double eps, int minPts, int[] labels){
+        int clusters = 0;
+        for(int label: labels){
+            clusters = Math.max(clusters, label);
+        }
+        int[] sizes = new int[clusters + 1];
+        for(int label: labels){
+            sizes[label]++;
+        }
+        int noise = sizes[0];
+        int[] clusterSizes = Arrays.copyOfRange(sizes, 1, sizes.length);
+        Arrays.sort(clusterSizes);
+        StringBuilder line = new StringBuilder();
+        line.append(eps).append(',').append(minPts).append(',').append(clusters).append(',').append(noise).append(',');
+        for(int i = clusterSizes.length - 1; i >= 0; i--){
+            line.append(clusterSizes[i]);
+            if(i > 0){
+                line.append(' ');
+            }
+        }
+        return line.toString();
+    }
+
+    public static void main(String[] args){
+        if(args.length < 2){
+            System.out.println("java ParameterSweep <file> <eps:minPts> [<eps:minPts> ...] [--threads <n>] [--header-lines <n>]");
+            return;
+        }
+        int threads = 1;
+        int headerLines = 2;
+        ArrayList<double[]> pairs = new ArrayList<double[]>();
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("--threads")){
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--header-lines")){
+                headerLines = Integer.parseInt(args[++i]);
+            }
+            else{
+                String[] pair = args[i].split(":");
+                pairs.add(new double[]{Double.parseDouble(pair[0]), Integer.parseInt(pair[1])});
+            }
+        }
+        String fileName = args[0];
+        PointCloud cloud = fileName.endsWith(".pcb") ? DBScan.readBinary("PointClouds/" + fileName)
+            : DBScan.readCloud("PointClouds/" + fileName, headerLines, threads);
+        ParameterSweep sweep = new ParameterSweep(cloud.toPoints(), threads);
+        double maxEps = 0;
+        for(double[] pair: pairs){
+            maxEps = Math.max(maxEps, pair[0]);
+        }
+        long begin = System.nanoTime();
+        boolean graph = sweep.prepare(maxEps);
+        System.out.println((graph ? "Neighbour graph for eps = " : "Not enough memory for the neighbour graph, querying the KD tree up to eps = ")
+            + maxEps + " built in " + (System.nanoTime() - begin) / 1000000 + " ms");
+        String outFileName = "Output/" + fileName.substring(0, fileName.length()-4) + "_sweep.csv";
+        try(PrintWriter out = new PrintWriter(new FileWriter(outFileName))){
+            out.println("eps,minPts,clusters,noise,sizes");
+            for(double[] pair: pairs){
+                begin = System.nanoTime();
+                String line = summarize(pair[0], (int) pair[1], sweep.cluster(pair[0], (int) pair[1]));
+                out.println(line);
+                String[] parts = line.split(",", 5);
+                System.out.println("eps = " + parts[0] + ", minPts = " + parts[1] + ": " + parts[2] + " clusters, "
+                    + parts[3] + " noise points (" + (System.nanoTime() - begin) / 1000000 + " ms)");
+            }
+        }catch(IOException e){
+            System.out.println("IOException!");
+            e.printStackTrace();
+            System.exit(0);
+        }
+        System.out.println("\nSummary file created: " + outFileName);
+    }
+}
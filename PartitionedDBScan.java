@@ -0,0 +1,582 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * This class runs DBScan on point clouds larger than the heap. The cloud is never loaded as a whole:
+ * space is split into tiles (columns in x and y) holding at most about maxTilePoints points, every tile is
+ * spilled to its own file on disk and clustered alone, and the clusters are merged across the tile borders.
+ *
+ * A tile file holds the points of the tile (owned points) and, around them, every point within eps of the tile
+ * (halo points), so all the neighbours of an owned point are in the file of its tile. The steps are:
+ * - bounds: one pass over the input for the bounding box and the number of points
+ * - spill: one pass over the input writing every point to the file of its tile and to the halo of the tiles
+ *   around it. A tile with too many points is then split in 2 along its longer side, until all the tiles
+ *   fit or are narrower than 4 eps
+ * - core flags: for every tile, the owned points are counted with a KD tree; the flags are exact, and are
+ *   kept in a bit file indexed by point (memory-mapped, 1 bit per point)
+ * - clustering: for every tile, ParallelDBScan runs with the exact core flags of all its points, owned and halo.
+ *   2 core points within eps are then always in the same cluster of the tile of one of them. The core points
+ *   that are in several tiles (the boundary core points) are recorded with their cluster in every tile
+ * - merge: the records of the boundary core points are sorted by point, and a union-find over all the clusters
+ *   of all the tiles merges the clusters sharing a core point
+ * - output: the owned points of every tile are written with the id of their merged cluster
+ *
+ * The heap holds one tile at a time (a few hundred bytes per point with its KD tree) and the records of the
+ * boundary core points (8 bytes each), so the peak memory is set by the tile size and not by the file size.
+ * The output is written tile by tile, so the points are grouped by tile rather than in input order
+ *
+ * java PartitionedDBScan <file> <eps> <minPts> [--tile-points <n>] [--threads <n>] [--header-lines <n>] [--work-dir <dir>]
+ * @author Aksh Babbar (300034042)
+ */
+public class PartitionedDBScan {
+
+    private static final int MAX_GRID = 1024; //largest number of tiles written at the same time by the spill
+    private static final int BUFFER_SIZE = 1 << 14; //write buffer of every tile file during the spill
+    private static final int CHUNK = 1 << 20; //points read at once from a '.pcb' file
+
+    private final double eps;
+    private final int minPts;
+    private final int maxTilePoints;
+    private final int threads;
+    private final File workDir; //directory of the tile files
+    private final ArrayList<Tile> tiles = new ArrayList<Tile>();
+    private double halo; //width of the halo: eps, plus a margin for the rounding of the tile bounds
+    private int size; //number of points
+    private int clusterCount; //number of clusters after the merge
+    private int noiseCount;
+    private int largestTile; //largest number of points in a tile, halo included
+
+/**
+ * A tile: its bounds, its file, and its clusters once clustered
+ */
+    private static class Tile {
+        final double x0, x1, y0, y1; //owned points: x0 <= x < x1 and y0 <= y < y1 (x1, y1 included on the last tiles)
+        final File file; //records of the points: int index, double x, y, z, boolean owned
+        DataOutputStream out; //open during the spill
+        int points; //number of records, halo included
+        int owned;
+        int labelBase; //number of the first cluster of the tile in the union-find
+        int clusters;
+
+        Tile(double x0, double x1, double y0, double y1, File file){
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.file = file;
+        }
+
+        boolean inHalo(double x, double y, double halo){
+            return x >= this.x0 - halo && x <= this.x1 + halo && y >= this.y0 - halo && y <= this.y1 + halo;
+        }
+
+        boolean nearBorder(double x, double y, double halo){
+            return x - this.x0 <= halo || this.x1 - x <= halo || y - this.y0 <= halo || this.y1 - y <= halo;
+        }
+
+        void write(int index, double x, double y, double z, boolean owned) throws IOException{
+            this.out.writeInt(index);
+            this.out.writeDouble(x);
+            this.out.writeDouble(y);
+            this.out.writeDouble(z);
+            this.out.writeBoolean(owned);
+            this.points++;
+            if(owned){
+                this.owned++;
+            }
+        }
+    }
+
+/**
+ * The points of one tile loaded in memory
+ */
+    private static class TileData {
+        int[] index;
+        double[] x, y, z;
+        boolean[] owned;
+    }
+
+/**
+ * Receives the points of the input one by one
+ */
+    private interface PointSink {
+        void accept(int index, double x, double y, double z) throws IOException;
+    }
+
+/**
+ * Constructor for the partitioned clustering
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ * @param maxTilePoints  the largest number of points of a tile, halo included, that sets the memory used
+ * @param threads  the number of threads clustering a tile
+ * @param workDir  directory where the tile files are written, they are deleted at the end; created by run if missing
+ */
+    public PartitionedDBScan(double eps, int minPts, int maxTilePoints, int threads, File workDir){
+        if(maxTilePoints < 1){
+            throw new IllegalArgumentException("maxTilePoints must be at least 1: " + maxTilePoints);
+        }
+        this.eps = eps;
+        this.minPts = minPts;
+        this.maxTilePoints = maxTilePoints;
+        this.threads = threads;
+        this.workDir = workDir;
+    }
+
+/**
+ * Clusters the points of a '.csv' or '.pcb' file and writes the output '.csv' file (x,y,z,C,R,G,B)
+ * @param input  the input file
+ * @param headerLines  number of lines skipped at the start of a '.csv' file
+ * @param output  the output '.csv' file
+ * @return int the number of clusters
+ * @throws IOException if a file cannot be read or written
+ */
+    public int run(String input, int headerLines, String output) throws IOException{
+        Files.createDirectories(this.workDir.toPath());
+        File coreFile = File.createTempFile("core", ".bits", this.workDir);
+        try{
+            double[] bounds = scanBounds(input, headerLines);
+            if(this.size == 0){
+                new ClusterWriter(output).close();
+                return 0;
+            }
+            spill(input, headerLines, bounds);
+            refine();
+            try(RandomAccessFile bits = new RandomAccessFile(coreFile, "rw")){
+                MappedByteBuffer core = bits.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, ((long) this.size + 7) / 8);
+                for(Tile tile: this.tiles){
+                    findCore(tile, core);
+                }
+                LongBuffer boundary = new LongBuffer();
+                for(Tile tile: this.tiles){
+                    clusterTile(tile, core, boundary);
+                }
+                int[] finalLabel = merge(boundary.values, boundary.size);
+                writeOutput(output, finalLabel);
+            }
+            return this.clusterCount;
+        }finally{
+            for(Tile tile: this.tiles){
+                Files.deleteIfExists(tile.file.toPath());
+                Files.deleteIfExists(labelFile(tile).toPath());
+            }
+            Files.deleteIfExists(coreFile.toPath());
+        }
+    }
+
+/**
+ * Growable array of longs, for the records of the boundary core points
+ */
+    private static class LongBuffer {
+        long[] values = new long[16];
+        int size;
+
+        void add(long value){
+            if(this.size == this.values.length){
+                this.values = Arrays.copyOf(this.values, this.values.length * 2);
+            }
+            this.values[this.size++] = value;
+        }
+    }
+
+/**
+ * Reads the points of the input file one by one, a '.pcb' file in chunks and a '.csv' file line by line
+ */
+    private static void forEachPoint(String input, int headerLines, PointSink sink) throws IOException{
+        if(input.endsWith(".pcb")){
+            int n = BinaryPointCloud.size(input);
+            for(int from = 0; from < n; from += CHUNK){
+                PointCloud chunk = BinaryPointCloud.read(input, from, CHUNK);
+                for(int i = 0; i < chunk.size(); i++){
+                    sink.accept(from + i, chunk.getX(i), chunk.getY(i), chunk.getZ(i));
+                }
+            }
+            return;
+        }
+        try(BufferedReader br = new BufferedReader(new FileReader(input), 1 << 16)){
+            for(int i = 0; i < headerLines; i++){
+                br.readLine();
+            }
+            String line;
+            int index = 0;
+            while((line = br.readLine()) != null){
+                int a = line.indexOf(',');
+                int b = line.indexOf(',', a + 1);
+                int c = line.indexOf(',', b + 1);
+                if(a < 0 || b < 0){
+                    continue;
+                }
+                sink.accept(index++, Double.parseDouble(line.substring(0, a)), Double.parseDouble(line.substring(a + 1, b)),
+                    Double.parseDouble(c < 0 ? line.substring(b + 1) : line.substring(b + 1, c)));
+                if(index == Integer.MAX_VALUE){
+                    throw new IOException("Too many points for one cloud");
+                }
+            }
+        }
+    }
+
+/**
+ * First pass: bounding box and number of points
+ * @return double[] minX, maxX, minY, maxY
+ */
+    private double[] scanBounds(String input, int headerLines) throws IOException{
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        double[] largest = {0}; //largest absolute coordinate
+        int[] count = {0};
+        forEachPoint(input, headerLines, (index, x, y, z) -> {
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.max(bounds[1], x);
+            bounds[2] = Math.min(bounds[2], y);
+            bounds[3] = Math.max(bounds[3], y);
+            largest[0] = Math.max(largest[0], Math.max(Math.abs(x), Math.abs(y)));
+            count[0]++;
+        });
+        this.size = count[0];
+        this.halo = this.eps + 16 * Math.ulp(Math.max(largest[0], this.eps));
+        return bounds;
+    }
+
+/**
+ * Second pass: a grid of tiles with about maxTilePoints points each (for a uniform density),
+ * and every point written to its tile and to the halo of the tiles around it
+ */
+    private void spill(String input, int headerLines, double[] bounds) throws IOException{
+        double width = Math.max(bounds[1] - bounds[0], this.eps);
+        double height = Math.max(bounds[3] - bounds[2], this.eps);
+        int wanted = (int) Math.min(MAX_GRID, Math.max(1, ((long) this.size + this.maxTilePoints - 1) / this.maxTilePoints));
+        int nx = (int) Math.max(1, Math.min(wanted, Math.round(Math.sqrt(wanted * width / height))));
+        int ny = Math.max(1, Math.min(MAX_GRID / nx, (wanted + nx - 1) / nx));
+        double tileWidth = width / nx;
+        double tileHeight = height / ny;
+        Tile[] grid = new Tile[nx * ny];
+        for(int j = 0; j < ny; j++){
+            for(int i = 0; i < nx; i++){
+                Tile tile = newTile(bounds[0] + i * tileWidth, i == nx - 1 ? bounds[1] : bounds[0] + (i + 1) * tileWidth,
+                    bounds[2] + j * tileHeight, j == ny - 1 ? bounds[3] : bounds[2] + (j + 1) * tileHeight);
+                tile.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tile.file), BUFFER_SIZE));
+                grid[j * nx + i] = tile;
+            }
+        }
+        try{
+            forEachPoint(input, headerLines, (index, x, y, z) -> {
+                int ox = column(x, bounds[0], tileWidth, nx);
+                int oy = column(y, bounds[2], tileHeight, ny);
+                for(int j = column(y - this.halo, bounds[2], tileHeight, ny); j <= column(y + this.halo, bounds[2], tileHeight, ny); j++){
+                    for(int i = column(x - this.halo, bounds[0], tileWidth, nx); i <= column(x + this.halo, bounds[0], tileWidth, nx); i++){
+                        boolean owned = i == ox && j == oy;
+                        Tile tile = grid[j * nx + i];
+                        if(owned || tile.inHalo(x, y, this.halo)){
+                            tile.write(index, x, y, z, owned);
+                        }
+                    }
+                }
+            });
+        }finally{
+            for(Tile tile: grid){
+                tile.out.close();
+                tile.out = null;
+            }
+        }
+        for(Tile tile: grid){
+            if(tile.owned > 0){
+                this.tiles.add(tile);
+            }
+            else{
+                Files.delete(tile.file.toPath());
+            }
+        }
+    }
+
+    private static int column(double value, double origin, double side, int count){
+        return Math.max(0, Math.min(count - 1, (int) Math.floor((value - origin) / side)));
+    }
+
+    private Tile newTile(double x0, double x1, double y0, double y1) throws IOException{
+        return new Tile(x0, x1, y0, y1, File.createTempFile("tile", ".bin", this.workDir));
+    }
+
+/**
+ * Splits the tiles with more than maxTilePoints points in 2 along their longer side, until all the tiles
+ * fit or are narrower than 4 eps (a denser spot cannot be split usefully, its tile is kept larger)
+ */
+    private void refine() throws IOException{
+        ArrayList<Tile> done = new ArrayList<Tile>();
+        ArrayList<Tile> todo = new ArrayList<Tile>(this.tiles);
+        while(!todo.isEmpty()){
+            Tile tile = todo.remove(todo.size() - 1);
+            boolean splitX = tile.x1 - tile.x0 >= tile.y1 - tile.y0;
+            double side = splitX ? tile.x1 - tile.x0 : tile.y1 - tile.y0;
+            if(tile.points <= this.maxTilePoints || side < 4 * this.eps){
+                done.add(tile);
+                continue;
+            }
+            double mid = splitX ? (tile.x0 + tile.x1) / 2 : (tile.y0 + tile.y1) / 2;
+            Tile low = splitX ? newTile(tile.x0, mid, tile.y0, tile.y1) : newTile(tile.x0, tile.x1, tile.y0, mid);
+            Tile high = splitX ? newTile(mid, tile.x1, tile.y0, tile.y1) : newTile(tile.x0, tile.x1, mid, tile.y1);
+            low.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(low.file), BUFFER_SIZE));
+            high.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(high.file), BUFFER_SIZE));
+            try(DataInputStream in = open(tile)){
+                for(int k = 0; k < tile.points; k++){
+                    int index = in.readInt();
+                    double x = in.readDouble();
+                    double y = in.readDouble();
+                    double z = in.readDouble();
+                    boolean owned = in.readBoolean();
+                    boolean lowSide = (splitX ? x : y) < mid;
+                    if(owned && lowSide || low.inHalo(x, y, this.halo)){
+                        low.write(index, x, y, z, owned && lowSide);
+                    }
+                    if(owned && !lowSide || high.inHalo(x, y, this.halo)){
+                        high.write(index, x, y, z, owned && !lowSide);
+                    }
+                }
+            }finally{
+                low.out.close();
+                high.out.close();
+                low.out = null;
+                high.out = null;
+            }
+            Files.delete(tile.file.toPath());
+            for(Tile part: new Tile[]{low, high}){
+                if(part.owned > 0){
+                    todo.add(part);
+                }
+                else{
+                    Files.delete(part.file.toPath());
+                }
+            }
+        }
+        this.tiles.clear();
+        this.tiles.addAll(done);
+    }
+
+    private static DataInputStream open(Tile tile) throws IOException{
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(tile.file), 1 << 16));
+    }
+
+    private static File labelFile(Tile tile){
+        return new File(tile.file.getPath() + ".labels");
+    }
+
+    private TileData load(Tile tile) throws IOException{
+        TileData data = new TileData();
+        data.index = new int[tile.points];
+        data.x = new double[tile.points];
+        data.y = new double[tile.points];
+        data.z = new double[tile.points];
+        data.owned = new boolean[tile.points];
+        try(DataInputStream in = open(tile)){
+            for(int k = 0; k < tile.points; k++){
+                data.index[k] = in.readInt();
+                data.x[k] = in.readDouble();
+                data.y[k] = in.readDouble();
+                data.z[k] = in.readDouble();
+                data.owned[k] = in.readBoolean();
+            }
+        }
+        this.largestTile = Math.max(this.largestTile, tile.points);
+        return data;
+    }
+
+/**
+ * Counts the neighbours of the owned points of a tile, which are all in the tile, and sets the core bit
+ * of the ones with at least minPts neighbours
+ */
+    private void findCore(Tile tile, MappedByteBuffer core) throws IOException{
+        TileData data = load(tile);
+        NearestNeighboursKD index = new NearestNeighboursKD(new PointCloud(data.x, data.y, data.z, tile.points).toPoints());
+        boolean[] isCore = new boolean[tile.points];
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try{
+            pool.submit(() -> IntStream.range(0, tile.points).parallel().forEach(k -> {
+                if(data.owned[k]){
+                    isCore[k] = index.countWithin(k, this.eps, this.minPts) >= this.minPts;
+                }
+            })).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Partitioned clustering interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Partitioned clustering failed", e.getCause());
+        }finally{
+            pool.shutdown();
+        }
+        for(int k = 0; k < tile.points; k++){
+            if(isCore[k]){
+                int i = data.index[k];
+                core.put(i >>> 3, (byte) (core.get(i >>> 3) | (1 << (i & 7))));
+            }
+        }
+    }
+
+/**
+ * Clusters a tile with the exact core flags of its points, writes the cluster of every owned point to the
+ * label file of the tile, and records (point, cluster) for the core points that are also in other tiles
+ */
+    private void clusterTile(Tile tile, MappedByteBuffer core, LongBuffer boundary) throws IOException{
+        TileData data = load(tile);
+        boolean[] isCore = new boolean[tile.points];
+        for(int k = 0; k < tile.points; k++){
+            int i = data.index[k];
+            isCore[k] = (core.get(i >>> 3) & (1 << (i & 7))) != 0;
+        }
+        NearestNeighboursKD index = new NearestNeighboursKD(new PointCloud(data.x, data.y, data.z, tile.points).toPoints());
+        ParallelDBScan dbscan = new ParallelDBScan(index, tile.points, this.eps, this.minPts, this.threads);
+        dbscan.setCore(isCore);
+        int[] labels = dbscan.findClusters();
+        tile.labelBase = this.clusterCount;
+        for(int label: labels){
+            tile.clusters = Math.max(tile.clusters, label);
+        }
+        this.clusterCount += tile.clusters; //clusters of all the tiles before the merge
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(labelFile(tile)), 1 << 16))){
+            for(int k = 0; k < tile.points; k++){
+                if(data.owned[k]){
+                    out.writeInt(labels[k] == 0 ? -1 : tile.labelBase + labels[k] - 1);
+                }
+                if(isCore[k] && (!data.owned[k] || tile.nearBorder(data.x[k], data.y[k], this.halo))){
+                    boundary.add((long) data.index[k] << 32 | (tile.labelBase + labels[k] - 1));
+                }
+            }
+        }
+    }
+
+/**
+ * Merges the clusters of the tiles that share a boundary core point
+ * @return int[] the final cluster id (1, 2, ...) of every cluster of every tile
+ */
+    private int[] merge(long[] boundary, int count){
+        Arrays.sort(boundary, 0, count);
+        ConcurrentUnionFind sets = new ConcurrentUnionFind(this.clusterCount);
+        for(int k = 1; k < count; k++){
+            if(boundary[k] >>> 32 == boundary[k - 1] >>> 32){
+                sets.union((int) boundary[k], (int) boundary[k - 1]);
+            }
+        }
+        int[] finalLabel = new int[this.clusterCount];
+        int next = 0;
+        for(int c = 0; c < this.clusterCount; c++){ //roots first get a number, in tile order
+            int root = sets.find(c);
+            if(finalLabel[root] == 0){
+                finalLabel[root] = ++next;
+            }
+            finalLabel[c] = finalLabel[root];
+        }
+        this.clusterCount = next;
+        return finalLabel;
+    }
+
+/**
+ * Writes the owned points of every tile with their final cluster id, reading the tile files again
+ */
+    private void writeOutput(String output, int[] finalLabel) throws IOException{
+        byte[][] rgb = new byte[this.clusterCount + 1][];
+        rgb[0] = ClusterWriter.encodeRGB(new Noise(0).getRGB());
+        for(int c = 1; c <= this.clusterCount; c++){
+            rgb[c] = ClusterWriter.encodeRGB(new Cluster(c).getRGB());
+        }
+        this.noiseCount = 0;
+        try(ClusterWriter writer = new ClusterWriter(output)){
+            for(Tile tile: this.tiles){
+                try(DataInputStream in = open(tile);
+                    DataInputStream labels = new DataInputStream(new BufferedInputStream(new FileInputStream(labelFile(tile)), 1 << 16))){
+                    for(int k = 0; k < tile.points; k++){
+                        in.readInt();
+                        double x = in.readDouble();
+                        double y = in.readDouble();
+                        double z = in.readDouble();
+                        if(!in.readBoolean()){
+                            continue;
+                        }
+                        int local = labels.readInt();
+                        int label = local < 0 ? 0 : finalLabel[local];
+                        if(label == 0){
+                            this.noiseCount++;
+                        }
+                        writer.writePoint(x, y, z, label, rgb[label]);
+                    }
+                }
+            }
+        }
+    }
+
+/**
+ * Getter for the number of noise points of the last run
+ * @return int number of noise points
+ */
+    public int getNoiseCount(){
+        return this.noiseCount;
+    }
+
+/**
+ * Getter for the number of tiles of the last run
+ * @return int number of tiles
+ */
+    public int getTileCount(){
+        return this.tiles.size();
+    }
+
+/**
+ * Getter for the largest tile of the last run, which sets the memory used
+ * @return int largest number of points of a tile, halo included
+ */
+    public int getLargestTile(){
+        return this.largestTile;
+    }
+
+    public static void main(String[] args) throws IOException{
+        if(args.length < 3){
+            System.out.println("java PartitionedDBScan <file> <eps> <minPts> [--tile-points <n>] [--threads <n>] [--header-lines <n>] [--work-dir <dir>]");
+            return;
+        }
+        int tilePoints = 1000000;
+        int threads = 1;
+        int headerLines = 2;
+        String workDir = "Output";
+        for(int i = 3; i < args.length; i++){
+            if(args[i].equals("--tile-points")){
+                tilePoints = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--threads")){
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--header-lines")){
+                headerLines = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--work-dir")){
+                workDir = args[++i];
+            }
+        }
+        String fileName = args[0];
+        double eps = Double.parseDouble(args[1]);
+        int minPts = Integer.parseInt(args[2]);
+        PartitionedDBScan db = new PartitionedDBScan(eps, minPts, tilePoints, threads, new File(workDir));
+        //the number of clusters is part of the file name, so the file is renamed at the end
+        String base = fileName.substring(0, fileName.length()-4) + "_clusters_" + eps + "_" + minPts;
+        long begin = System.nanoTime();
+        int clusters = db.run("PointClouds/" + fileName, headerLines, "Output/" + base + ".part");
+        String outFileName = base + "_" + clusters + ".csv";
+        Files.move(Paths.get("Output", base + ".part"), Paths.get("Output", outFileName), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println(db.getTileCount() + " tiles of at most " + db.getLargestTile() + " points, "
+            + clusters + " clusters, " + db.getNoiseCount() + " noise points (" + (System.nanoTime() - begin) / 1000000 + " ms)");
+        System.out.println("\nOutput file created: " + outFileName);
+    }
+}
@@ -13,6 +13,7 @@ public class Point3D{
     private double Y; // Y-Coordinate
     private double Z; // Z-Coordinate
     private int clusterID; // cluster id to which the Point belongs
+    private int index; // position of the point in the point list, -1 if not in a list
 
 /** 
  * Creates a Point object by taking X,Y,Z values and initialize the point
@@ -26,6 +27,7 @@ public class Point3D{
         this.Y = Y;
         this.Z = Z;
         this.clusterID = -1; // -1: Undefined
+        this.index = -1;
     }
 
 
@@ -70,6 +72,22 @@ public class Point3D{
         this.clusterID = id;
     }
 
+/** 
+ * Gets the position of the point in the point list it belongs to
+ * @return the index of type int, -1 if the point is not in a list
+ */
+    public int getIndex(){ 
+        return this.index;
+    }
+
+/** 
+ * Sets the position of the point in the point list it belongs to
+ * @param index of type int
+ */
+    public void setIndex(int index){ 
+        this.index = index;
+    }
+
     public double get(int axis) {
       
       switch(axis) {
@@ -113,4 +131,57 @@ public class Point3D{
     public double distance(Point3D pt){ 
         return Math.sqrt(Math.pow(pt.getX() - getX(), 2) + Math.pow(pt.getY() - getY(), 2) + Math.pow(pt.getZ() - getZ(), 2));
     }
+
+/** 
+ * Computes the squared Euclidean distance between 2 points.
+ * Cheaper than distance() as no square root is taken, compare it against strictSquaredBound(eps)
+ * @param pt  the pt from which we want to calculate distance
+ * @return double -> squared distance between 2 points
+ */
+    public double distanceSquared(Point3D pt){ 
+        double dx = pt.getX() - getX();
+        double dy = pt.getY() - getY();
+        double dz = pt.getZ() - getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+/** 
+ * Largest squared distance whose square root is at most eps: distanceSquared(pt) <= squaredBound(eps) is the same
+ * test as distance(pt) <= eps. eps * eps is rounded and can be 1 ulp on either side of that bound
+ * @param eps  the distance
+ * @return the bound, negative if eps is negative or NaN
+ */
+    public static double squaredBound(double eps){ 
+        if(!(eps >= 0)){
+            return -1;
+        }
+        double bound = eps * eps;
+        while(Math.sqrt(bound) > eps){ //a few steps at most
+            bound = Math.nextDown(bound);
+        }
+        while(bound < Double.POSITIVE_INFINITY && Math.sqrt(Math.nextUp(bound)) <= eps){
+            bound = Math.nextUp(bound);
+        }
+        return bound;
+    }
+
+/** 
+ * Largest squared distance whose square root is below eps: distanceSquared(pt) <= strictSquaredBound(eps) is the
+ * same test as distance(pt) < eps, the neighbour test of the KD tree and of every index
+ * @param eps  the distance
+ * @return the bound, negative if eps is not positive or NaN
+ */
+    public static double strictSquaredBound(double eps){ 
+        if(!(eps > 0)){
+            return -1;
+        }
+        double bound = eps * eps;
+        while(bound > 0 && Math.sqrt(bound) >= eps){ //a few steps at most
+            bound = Math.nextDown(bound);
+        }
+        while(Math.sqrt(Math.nextUp(bound)) < eps){
+            bound = Math.nextUp(bound);
+        }
+        return bound;
+    }
 }
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This data structure stores a set of 3D points as 3 primitive arrays of coordinates
+ * (structure of arrays) instead of one Point3D object per point. It is what the fast
+ * readers fill, and the flat KD, bucket KD and grid indexes copy their coordinates from it without
+ * going through Point3D objects. DBScan still creates a Point3D per point (toPoints) to hold its cluster ID.
+ * Point i is (getX(i), getY(i), getZ(i))
+ * @author Aksh Babbar (300034042)
+ */
+public class PointCloud {
+
+    private final double[] x; // X-Coordinates
+    private final double[] y; // Y-Coordinates
+    private final double[] z; // Z-Coordinates
+    private final int size; // number of points
+
+/**
+ * Creates a point cloud over the given coordinate arrays, the arrays are not copied
+ * @param x  the X-Coordinates
+ * @param y  the Y-Coordinates
+ * @param z  the Z-Coordinates
+ * @param size  number of points, at most the length of the arrays
+ */
+    public PointCloud(double[] x, double[] y, double[] z, int size){
+        if(size < 0 || size > x.length || size > y.length || size > z.length){
+            throw new IllegalArgumentException("size " + size + " does not fit the coordinate arrays");
+        }
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.size = size;
+    }
+
+/**
+ * Creates a point cloud holding a copy of the coordinates of the points
+ * @param points  the list of points
+ * @return PointCloud with the points in the same order
+ */
+    public static PointCloud fromPoints(List<Point3D> points){
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        for(int i = 0; i < n; i++){
+            Point3D point = points.get(i);
+            x[i] = point.getX();
+            y[i] = point.getY();
+            z[i] = point.getZ();
+        }
+        return new PointCloud(x, y, z, n);
+    }
+
+/**
+ * Getter for the number of points
+ * @return the number of points in the cloud
+ */
+    public int size(){
+        return this.size;
+    }
+
+/**
+ * Getter for the X-coordinate of a point
+ * @param i  position of the point
+ * @return X-Coordinate of type double
+ */
+    public double getX(int i){
+        return this.x[i];
+    }
+
+/**
+ * Getter for the Y-coordinate of a point
+ * @param i  position of the point
+ * @return Y-Coordinate of type double
+ */
+    public double getY(int i){
+        return this.y[i];
+    }
+
+/**
+ * Getter for the Z-coordinate of a point
+ * @param i  position of the point
+ * @return Z-Coordinate of type double
+ */
+    public double getZ(int i){
+        return this.z[i];
+    }
+
+/**
+ * Creates a point cloud of the same points in another order, e.g. the order of a SpaceFillingCurve
+ * @param order  the position in this cloud of the point at every position of the new cloud
+ * @return PointCloud with the coordinates copied in the new order
+ */
+    public PointCloud permute(int[] order){
+        double[] px = new double[order.length];
+        double[] py = new double[order.length];
+        double[] pz = new double[order.length];
+        for(int i = 0; i < order.length; i++){
+            px[i] = this.x[order[i]];
+            py[i] = this.y[order[i]];
+            pz[i] = this.z[order[i]];
+        }
+        return new PointCloud(px, py, pz, order.length);
+    }
+
+/**
+ * Creates a Point3D for every point of the cloud, with its position as index
+ * @return ArrayList<Point3D> of the points in the same order
+ */
+    public ArrayList<Point3D> toPoints(){
+        ArrayList<Point3D> points = new ArrayList<Point3D>(this.size);
+        for(int i = 0; i < this.size; i++){
+            Point3D point = new Point3D(this.x[i], this.y[i], this.z[i]);
+            point.setIndex(i);
+            points.add(point);
+        }
+        return points;
+    }
+}
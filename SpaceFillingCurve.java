@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * This class orders the points of a cloud along a space-filling curve, so that points close in space get
+ * close positions in the arrays and in the point list. Cluster expansion and tree traversal then read memory
+ * that is already in the cache, and the contiguous position ranges worked on by ParallelDBScan (and any split
+ * of the point list into chunks) are compact regions of space.
+ *
+ * The coordinates are quantized to BITS bits per axis over the bounding box of the cloud, and the code of
+ * a point interleaves the bits of its 3 quantized coordinates:
+ * - MORTON: the bits as they are (Z-order curve), the cheapest to compute
+ * - HILBERT: the coordinates are first transformed (Skilling's transpose) so that consecutive codes are
+ *   always adjacent cells, the curve has no long jumps and keeps more neighbours close in memory
+ * The codes of BITS * 3 = 30 bits are sorted together with the positions of the points as one long each.
+ * @author Aksh Babbar (300034042)
+ */
+public class SpaceFillingCurve {
+
+    /**
+     * Curve used to order the points
+     */
+    public enum Curve { MORTON, HILBERT }
+
+    private static final int BITS = 10; //bits per axis of the quantized coordinates, 3 * BITS bits per code
+
+/**
+ * Computes the order of the points along the curve
+ * @param cloud  the points
+ * @param curve  MORTON or HILBERT
+ * @return int[] the position in the cloud of the point at every position along the curve, points
+ *         of equal code keep their order
+ */
+    public static int[] order(PointCloud cloud, Curve curve){
+        int n = cloud.size();
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for(int i = 0; i < n; i++){
+            min[0] = Math.min(min[0], cloud.getX(i));
+            max[0] = Math.max(max[0], cloud.getX(i));
+            min[1] = Math.min(min[1], cloud.getY(i));
+            max[1] = Math.max(max[1], cloud.getY(i));
+            min[2] = Math.min(min[2], cloud.getZ(i));
+            max[2] = Math.max(max[2], cloud.getZ(i));
+        }
+        double[] scale = new double[3];
+        for(int a = 0; a < 3; a++){
+            scale[a] = max[a] > min[a] ? ((1 << BITS) - 1) / (max[a] - min[a]) : 0;
+        }
+        long[] keys = new long[n];
+        int[] cell = new int[3];
+        for(int i = 0; i < n; i++){
+            cell[0] = (int) ((cloud.getX(i) - min[0]) * scale[0]);
+            cell[1] = (int) ((cloud.getY(i) - min[1]) * scale[1]);
+            cell[2] = (int) ((cloud.getZ(i) - min[2]) * scale[2]);
+            if(curve == Curve.HILBERT){
+                hilbertTranspose(cell);
+            }
+            keys[i] = (long) interleave(cell) << 32 | i;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++){
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+/**
+ * Interleaves the bits of the 3 coordinates, highest bits first: x, y, z of bit BITS - 1, then of bit BITS - 2...
+ * @return the code of 3 * BITS bits
+ */
+    private static int interleave(int[] cell){
+        int code = 0;
+        for(int bit = BITS - 1; bit >= 0; bit--){
+            for(int a = 0; a < 3; a++){
+                code = code << 1 | (cell[a] >>> bit & 1);
+            }
+        }
+        return code;
+    }
+
+/**
+ * Transforms the coordinates in place so that interleaving their bits gives the Hilbert code
+ * (J. Skilling, Programming the Hilbert curve, 2004: AxestoTranspose)
+ */
+    private static void hilbertTranspose(int[] x){
+        int m = 1 << (BITS - 1);
+        for(int q = m; q > 1; q >>= 1){ //inverse undo
+            int p = q - 1;
+            for(int a = 0; a < 3; a++){
+                if((x[a] & q) != 0){
+                    x[0] ^= p;
+                }
+                else{
+                    int t = (x[0] ^ x[a]) & p;
+                    x[0] ^= t;
+                    x[a] ^= t;
+                }
+            }
+        }
+        for(int a = 1; a < 3; a++){ //Gray encode
+            x[a] ^= x[a - 1];
+        }
+        int t = 0;
+        for(int q = m; q > 1; q >>= 1){
+            if((x[2] & q) != 0){
+                t ^= q - 1;
+            }
+        }
+        for(int a = 0; a < 3; a++){
+            x[a] ^= t;
+        }
+    }
+
+/**
+ * Converts the name of a curve, as given on the command line
+ * @param name  morton or hilbert
+ * @return the Curve
+ */
+    public static Curve parse(String name){
+        switch(name.toLowerCase()){
+            case "morton": return Curve.MORTON;
+            case "hilbert": return Curve.HILBERT;
+            default: throw new IllegalArgumentException("Unknown curve: " + name);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.ArrayList;
+
+/**
+ * This interface is the range query contract shared by the nearest neighbour
+ * indexes (NearestNeighboursKD, NearestNeighboursFlatKD) so that DBScan can
+ * run against any of them.
+ * Points are identified by their position in the point list the index was built from
+ * @author Aksh Babbar (300034042)
+ */
+public interface SpatialIndex {
+
+    /** 
+     * Range query function that finds the nearest neighbours of a 3D point
+     * @param point  the point for which we need to find neighbours
+     * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+     * @return ArrayList<Point3D> of points closest to the given point
+     */
+    ArrayList<Point3D> RangeQuery(Point3D point, double eps);
+
+    /** 
+     * Range query function that finds the nearest neighbours of the point at the given
+     * position and writes their positions into a reusable buffer
+     * @param pointIndex  position of the point in the point list
+     * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+     * @param neighbours  buffer that is cleared and filled with the positions of the neighbours
+     * @return the number of neighbours found
+     */
+    int rangeQuery(int pointIndex, double eps, IntList neighbours);
+
+    /** 
+     * Counts the neighbours of the point at the given position, stopping as soon as
+     * the count reaches the limit
+     * @param pointIndex  position of the point in the point list
+     * @param eps  the minimum acceptable distance to consider 2 points as neighbours
+     * @param limit  count at which the search stops
+     * @return the number of neighbours found, at most limit
+     */
+    int countWithin(int pointIndex, double eps, int limit);
+}
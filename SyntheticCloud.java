@@ -0,0 +1,161 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * This class generates seeded synthetic point clouds for the benchmarks, from a few thousand to 10M points and more.
+ * The same seed always gives the same cloud. The density is about the one of the bundled clouds, so that
+ * eps = 1.2 and minPts = 10 give clusters at any size:
+ * - uniform: points uniformly spread in a cube, every point has about the same number of neighbours
+ * - blobs: Gaussian blobs around random centres, one per 20000 points, plus 1% of uniform noise
+ * - scanlines: points of a wavy ground surface, in the order of a scanner: line by line, and along each line
+ *   in increasing x. Sorted input is the worst case of a KD tree built by insertion
+ * The points are kept in the primitive arrays of a PointCloud (24 bytes per point).
+ *
+ * java SyntheticCloud uniform|blobs|scanlines <n> <output.pcb|output.csv> [--seed <s>]
+ * @author Aksh Babbar (300034042)
+ */
+public class SyntheticCloud {
+
+    private static final double DENSITY = 5; //points per unit of volume of the uniform cloud
+    private static final int BLOB_POINTS = 20000; //points per blob
+    private static final double SPACING = 0.2; //distance between 2 points of a scan line, and between 2 lines
+
+/**
+ * Uniform points in a cube
+ * @param n  the number of points
+ * @param seed  the seed of the random generator
+ * @return PointCloud of the points
+ */
+    public static PointCloud uniform(int n, long seed){
+        Random random = new Random(seed);
+        double side = Math.cbrt(n / DENSITY);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        for(int i = 0; i < n; i++){
+            x[i] = random.nextDouble() * side;
+            y[i] = random.nextDouble() * side;
+            z[i] = random.nextDouble() * side;
+        }
+        return new PointCloud(x, y, z, n);
+    }
+
+/**
+ * Gaussian blobs with 1% of uniform noise, in a cube of the size of the uniform cloud
+ * @param n  the number of points
+ * @param seed  the seed of the random generator
+ * @return PointCloud of the points, the blobs are mixed in random order
+ */
+    public static PointCloud blobs(int n, long seed){
+        Random random = new Random(seed);
+        double side = Math.cbrt(n / DENSITY);
+        int count = Math.max(1, n / BLOB_POINTS);
+        double[][] centres = new double[count][3];
+        double[] sigma = new double[count];
+        for(int b = 0; b < count; b++){
+            for(int a = 0; a < 3; a++){
+                centres[b][a] = random.nextDouble() * side;
+            }
+            sigma[b] = 1 + 2 * random.nextDouble();
+        }
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        for(int i = 0; i < n; i++){
+            if(random.nextInt(100) == 0){
+                x[i] = random.nextDouble() * side;
+                y[i] = random.nextDouble() * side;
+                z[i] = random.nextDouble() * side;
+                continue;
+            }
+            int b = random.nextInt(count);
+            x[i] = centres[b][0] + random.nextGaussian() * sigma[b];
+            y[i] = centres[b][1] + random.nextGaussian() * sigma[b];
+            z[i] = centres[b][2] + random.nextGaussian() * sigma[b];
+        }
+        return new PointCloud(x, y, z, n);
+    }
+
+/**
+ * Scan lines over a wavy ground, in scanner order: line after line, increasing x along a line
+ * @param n  the number of points
+ * @param seed  the seed of the random generator
+ * @return PointCloud of the points
+ */
+    public static PointCloud scanLines(int n, long seed){
+        Random random = new Random(seed);
+        int perLine = (int) Math.max(1, Math.ceil(Math.sqrt(n)));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        for(int i = 0; i < n; i++){
+            int line = i / perLine;
+            x[i] = (i % perLine) * SPACING + random.nextGaussian() * 0.01;
+            y[i] = line * SPACING + random.nextGaussian() * 0.01;
+            z[i] = Math.sin(x[i] / 7) * Math.cos(y[i] / 11) * 3 + random.nextGaussian() * 0.02;
+        }
+        return new PointCloud(x, y, z, n);
+    }
+
+/**
+ * Generates a cloud by the name of its shape
+ * @param shape  uniform, blobs or scanlines
+ * @return PointCloud of the points
+ */
+    public static PointCloud generate(String shape, int n, long seed){
+        switch(shape.toLowerCase()){
+            case "uniform": return uniform(n, seed);
+            case "blobs": return blobs(n, seed);
+            case "scanlines": return scanLines(n, seed);
+            default: throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+/**
+ * Writes a cloud as a '.csv' file with the 2 header lines of the bundled clouds
+ */
+    public static void writeCSV(String filename, PointCloud cloud) throws IOException{
+        byte[] buffer = new byte[1 << 16];
+        int pos = 0;
+        try(OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16)){
+            out.write("x,y,z\n0.0,0.0,0.0\n".getBytes("US-ASCII"));
+            for(int i = 0; i < cloud.size(); i++){
+                if(pos + 3 * DoubleFormatter.MAX_CHARS + 3 > buffer.length){
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                pos = DoubleFormatter.format(cloud.getX(i), buffer, pos);
+                buffer[pos++] = ',';
+                pos = DoubleFormatter.format(cloud.getY(i), buffer, pos);
+                buffer[pos++] = ',';
+                pos = DoubleFormatter.format(cloud.getZ(i), buffer, pos);
+                buffer[pos++] = '\n';
+            }
+            out.write(buffer, 0, pos);
+        }
+    }
+
+    public static void main(String[] args) throws IOException{
+        if(args.length < 3){
+            System.out.println("java SyntheticCloud uniform|blobs|scanlines <n> <output.pcb|output.csv> [--seed <s>]");
+            return;
+        }
+        long seed = 42;
+        for(int i = 3; i < args.length; i++){
+            if(args[i].equals("--seed")){
+                seed = Long.parseLong(args[++i]);
+            }
+        }
+        PointCloud cloud = generate(args[0], Integer.parseInt(args[1]), seed);
+        if(args[2].endsWith(".pcb")){
+            BinaryPointCloud.write(args[2], cloud, null, true);
+        }
+        else{
+            writeCSV(args[2], cloud);
+        }
+        System.out.println("Wrote " + cloud.size() + " " + args[0] + " points to " + args[2]);
+    }
+}
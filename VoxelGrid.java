@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * This class downsamples a dense point cloud: space is cut into cubic voxels of a given side, and all the
+ * points of a voxel are replaced by one representative point, the centroid of the voxel, with a weight equal
+ * to the number of points it stands for. DBScan then clusters the representatives with weighted core points
+ * (see ParallelDBScan.setWeights) and every point gets the label of its voxel (see expand).
+ *
+ * With a voxel side well below eps the clustering is almost the same as the one of the full cloud, while the
+ * number of range queries drops from the number of points to the number of occupied voxels.
+ *
+ * Like in NearestNeighboursGrid, the voxel coordinates are packed into a primitive long key, and the
+ * voxels are numbered in key order by sorting the distinct keys
+ * @author Aksh Babbar (300034042)
+ */
+public class VoxelGrid {
+
+    private static final int BITS = 21; //bits per voxel coordinate in a key
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final PointCloud voxels; //representative point of every voxel
+    private final int[] weights; //number of points of every voxel
+    private final int[] voxelOf; //voxel of every point of the cloud
+
+/**
+ * Constructor that sorts the points of a cloud into voxels
+ * @param cloud  the points
+ * @param voxelSize  side of a voxel, e.g. a few millimetres, well below eps
+ */
+    public VoxelGrid(PointCloud cloud, double voxelSize){
+        if(!(voxelSize > 0)){
+            throw new IllegalArgumentException("voxel size must be positive: " + voxelSize);
+        }
+        int n = cloud.size();
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < n; i++){
+            minX = Math.min(minX, cloud.getX(i));
+            minY = Math.min(minY, cloud.getY(i));
+            minZ = Math.min(minZ, cloud.getZ(i));
+        }
+
+        //number the distinct voxels in key order
+        long[] keys = new long[n];
+        for(int i = 0; i < n; i++){
+            keys[i] = key(voxel(cloud.getX(i), minX, voxelSize), voxel(cloud.getY(i), minY, voxelSize),
+                voxel(cloud.getZ(i), minZ, voxelSize));
+        }
+        long[] voxelKeys = keys.clone();
+        Arrays.sort(voxelKeys);
+        int count = 0;
+        for(int i = 0; i < n; i++){
+            if(i == 0 || voxelKeys[i] != voxelKeys[i - 1]){
+                voxelKeys[count++] = voxelKeys[i];
+            }
+        }
+
+        //centroid and weight of every voxel
+        this.voxelOf = new int[n];
+        this.weights = new int[count];
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] z = new double[count];
+        for(int i = 0; i < n; i++){
+            int v = Arrays.binarySearch(voxelKeys, 0, count, keys[i]);
+            this.voxelOf[i] = v;
+            this.weights[v]++;
+            x[v] += cloud.getX(i);
+            y[v] += cloud.getY(i);
+            z[v] += cloud.getZ(i);
+        }
+        for(int v = 0; v < count; v++){
+            x[v] /= this.weights[v];
+            y[v] /= this.weights[v];
+            z[v] /= this.weights[v];
+        }
+        this.voxels = new PointCloud(x, y, z, count);
+    }
+
+/**
+ * Voxel coordinate of a value, counted from the smallest value of the cloud
+ */
+    private static long voxel(double value, double origin, double voxelSize){
+        long v = (long) Math.floor((value - origin) / voxelSize);
+        if(v > MASK){ //unlike the cells of NearestNeighboursGrid, 2 voxels must never share a key
+            throw new IllegalArgumentException("voxel size " + voxelSize + " is too small for the extent of the cloud");
+        }
+        return v;
+    }
+
+    private static long key(long vx, long vy, long vz){
+        return (vx << (2 * BITS)) | (vy << BITS) | vz;
+    }
+
+/**
+ * Getter for the representative points
+ * @return PointCloud the centroid of every voxel, in voxel order
+ */
+    public PointCloud getVoxels(){
+        return this.voxels;
+    }
+
+/**
+ * Getter for the weights of the representative points
+ * @return int[] the number of points of every voxel
+ */
+    public int[] getWeights(){
+        return this.weights;
+    }
+
+/**
+ * Getter for the voxel of every point
+ * @return int[] the voxel number of every point of the cloud
+ */
+    public int[] getVoxelOf(){
+        return this.voxelOf;
+    }
+
+/**
+ * Getter for the number of occupied voxels
+ * @return int number of representative points
+ */
+    public int size(){
+        return this.weights.length;
+    }
+
+/**
+ * Maps the labels of the voxels back to the points of the cloud
+ * @param voxelLabels  label of every voxel
+ * @return int[] the label of the voxel of every point
+ */
+    public int[] expand(int[] voxelLabels){
+        int[] labels = new int[this.voxelOf.length];
+        for(int i = 0; i < labels.length; i++){
+            labels[i] = voxelLabels[this.voxelOf[i]];
+        }
+        return labels;
+    }
+}
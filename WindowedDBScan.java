@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class clusters only the points of a sliding window of a stream: the points of the last N seconds,
+ * or of the last N frames. Every point arrives with a timestamp and is evicted once it is older than the
+ * window, the clustering itself is kept up to date by an IncrementalDBScan.
+ *
+ * The live points are kept in arrival order in a ring buffer of (timestamp, id), so the points to evict
+ * are always at its head and finding them costs O(1). Evicting a point then costs one range query to lower the
+ * neighbour counts around it, plus its removal from the KDtree and from its Cluster (amortized O(1), the node
+ * and the entry are only marked and dropped later). A cluster that loses a core point is checked again by
+ * IncrementalDBScan: searches start from the former core neighbours of the lost core points and walk the core
+ * points of the cluster until they meet, so a cluster that stays in one piece costs about the region around
+ * the lost points, but a cluster that really splits costs all the points of its smaller parts, and in the
+ * worst case (many lost points spread over the cluster) the whole cluster is expanded again.
+ * The ring buffer, the ids and the clusters are reused, so the memory used follows the number of
+ * points in the window and not the length of the stream
+ * @author Aksh Babbar (300034042)
+ */
+public class WindowedDBScan {
+
+    private final IncrementalDBScan clustering;
+    private final long window; //length of the window, in the unit of the timestamps
+    private long[] times; //ring buffer: timestamp of the live points, oldest at head
+    private int[] ids; //ring buffer: id of the live points, in the same order as times
+    private int head; //position of the oldest live point
+    private int count; //number of live points in the ring buffer
+    private long latest; //largest timestamp seen
+    private long frame; //timestamp given by nextFrame
+
+/**
+ * Constructor for an empty window
+ * @param eps  the neighbourhood distance
+ * @param minPts  the number of neighbours that makes a core point
+ * @param window  length of the window, in the unit of the timestamps (e.g. milliseconds, or frames for nextFrame):
+ *                a point with timestamp t is evicted once a point with a timestamp of at least t + window arrives
+ */
+    public WindowedDBScan(double eps, int minPts, long window){
+        if(window < 1){
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        this.clustering = new IncrementalDBScan(eps, minPts);
+        this.window = window;
+        this.times = new long[16];
+        this.ids = new int[16];
+        this.head = 0;
+        this.count = 0;
+        this.latest = Long.MIN_VALUE;
+        this.frame = 0;
+    }
+
+/**
+ * Sets the callback run after every batch
+ * @param listener  receives the labels of the ids, as returned by IncrementalDBScan.getLabels()
+ */
+    public void setListener(Consumer<int[]> listener){
+        this.clustering.setListener(listener);
+    }
+
+/**
+ * Adds a frame: all its points have the same timestamp
+ * @param points  the points of the frame
+ * @param timestamp  time of the frame, not smaller than the time of the previous batch
+ * @return int[] id given to every point, in the same order
+ */
+    public int[] addFrame(List<Point3D> points, long timestamp){
+        long[] timestamps = new long[points.size()];
+        Arrays.fill(timestamps, timestamp);
+        return add(points, timestamps);
+    }
+
+/**
+ * Adds the next frame of a window counted in frames: the frames are numbered 0, 1, 2, ...
+ * and the window keeps the last 'window' frames
+ * @param points  the points of the frame
+ * @return int[] id given to every point, in the same order
+ */
+    public int[] nextFrame(List<Point3D> points){
+        return addFrame(points, this.frame++);
+    }
+
+/**
+ * Adds a batch of points, each with its own timestamp. The points that are out of the window
+ * after the batch are evicted in the same update of the clustering
+ * @param points  the new points
+ * @param timestamps  time of every point, none smaller than the largest timestamp of the previous batches
+ * @return int[] id given to every point, in the same order
+ */
+    public int[] add(List<Point3D> points, long[] timestamps){
+        if(timestamps.length != points.size()){
+            throw new IllegalArgumentException(timestamps.length + " timestamps for " + points.size() + " points");
+        }
+        long newest = this.latest;
+        for(long t: timestamps){
+            if(t < this.latest){
+                throw new IllegalArgumentException("timestamp " + t + " is older than " + this.latest);
+            }
+            newest = Math.max(newest, t);
+        }
+        IntList expired = new IntList();
+        while(this.count > 0 && this.times[this.head] <= newest - this.window){
+            expired.add(this.ids[this.head]);
+            this.head = (this.head + 1) % this.times.length;
+            this.count--;
+        }
+        int[] added = this.clustering.update(points, expired.toArray());
+        for(int i = 0; i < added.length; i++){
+            push(timestamps[i], added[i]);
+        }
+        this.latest = newest;
+        return added;
+    }
+
+    private void push(long time, int id){
+        if(this.count == this.times.length){ //full: unroll the ring into arrays twice as long
+            long[] newTimes = new long[this.times.length * 2];
+            int[] newIds = new int[this.ids.length * 2];
+            for(int i = 0; i < this.count; i++){
+                newTimes[i] = this.times[(this.head + i) % this.times.length];
+                newIds[i] = this.ids[(this.head + i) % this.ids.length];
+            }
+            this.times = newTimes;
+            this.ids = newIds;
+            this.head = 0;
+        }
+        int tail = (this.head + this.count) % this.times.length;
+        this.times[tail] = time;
+        this.ids[tail] = id;
+        this.count++;
+    }
+
+/**
+ * Getter for the clustering of the points in the window, for its labels, clusters and noise
+ * @return IncrementalDBScan the clustering
+ */
+    public IncrementalDBScan getClustering(){
+        return this.clustering;
+    }
+
+/**
+ * Getter for the number of points in the window
+ * @return int number of points
+ */
+    public int size(){
+        return this.count;
+    }
+
+/**
+ * Replays a point cloud as a stream of frames of frameSize points, keeping the last windowFrames frames
+ * java WindowedDBScan <file> <eps> <minPts> <frameSize> <windowFrames>
+ */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 5){
+            System.out.println("java WindowedDBScan <file> <eps> <minPts> <frameSize> <windowFrames>");
+            return;
+        }
+        PointCloud cloud = args[0].endsWith(".pcb") ? BinaryPointCloud.read(args[0])
+            : MappedCSVReader.read(args[0], 2, Runtime.getRuntime().availableProcessors());
+        int frameSize = Integer.parseInt(args[3]);
+        WindowedDBScan stream = new WindowedDBScan(Double.parseDouble(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[4]));
+        for(int start = 0; start < cloud.size(); start += frameSize){
+            ArrayList<Point3D> frame = new ArrayList<Point3D>();
+            for(int i = start; i < Math.min(cloud.size(), start + frameSize); i++){
+                frame.add(new Point3D(cloud.getX(i), cloud.getY(i), cloud.getZ(i)));
+            }
+            long begin = System.nanoTime();
+            stream.nextFrame(frame);
+            System.out.println("Frame " + (start / frameSize + 1) + ": " + stream.size() + " points, "
+                + stream.getClustering().getClusters().size() + " clusters, " + (System.nanoTime() - begin) / 1000000 + " ms");
+        }
+    }
+}
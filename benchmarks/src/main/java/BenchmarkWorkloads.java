@@ -0,0 +1,156 @@
+import dbclustering.benchmarks.Workloads;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * This class prepares the work measured by the JMH benchmarks of dbclustering.benchmarks (see Workloads):
+ * it is in the default package, with the clustering classes, so it can use them directly.
+ * The files of PointClouds are looked up in the PointClouds directory of the working directory, so the
+ * benchmarks are run from the root of the project
+ * @author Aksh Babbar (300034042)
+ */
+public class BenchmarkWorkloads implements Workloads {
+
+    public IntSupplier indexBuild(String index, int bucketSize, double eps, String shape, int points, long seed){
+        PointCloud cloud = SyntheticCloud.generate(shape, points, seed);
+        switch(index){
+            case "kd":
+                ArrayList<Point3D> list = cloud.toPoints();
+                return () -> new NearestNeighboursKD(list).getTreeDepth();
+            case "flat": return () -> new NearestNeighboursFlatKD(cloud, false).getTreeDepth();
+            case "bucket": return () -> new NearestNeighboursBucketKD(cloud, bucketSize, false).getTreeDepth();
+            case "grid": return () -> new NearestNeighboursGrid(cloud, eps).countWithin(0, eps, 1);
+            default: throw new IllegalArgumentException("Unknown index: " + index);
+        }
+    }
+
+    public IntUnaryOperator rangeQuery(String index, int bucketSize, double eps, String shape, int points, long seed){
+        PointCloud cloud = SyntheticCloud.generate(shape, points, seed);
+        SpatialIndex finder;
+        switch(index){
+            case "kd": finder = new NearestNeighboursKD(cloud.toPoints()); break;
+            case "flat": finder = new NearestNeighboursFlatKD(cloud, false); break;
+            case "bucket": finder = new NearestNeighboursBucketKD(cloud, bucketSize, false); break;
+            case "grid": finder = new NearestNeighboursGrid(cloud, eps); break; //cells of side eps
+            default: throw new IllegalArgumentException("Unknown index: " + index);
+        }
+        IntList buffer = new IntList();
+        return position -> finder.rangeQuery(position, eps, buffer);
+    }
+
+    public IntUnaryOperator pointQuery(String method, double eps, int points, long seed){
+        ArrayList<Point3D> list = SyntheticCloud.blobs(points, seed).toPoints();
+        switch(method){
+            case "brute":
+                NearestNeighbours brute = new NearestNeighbours(list);
+                return position -> brute.RangeQuery(list.get(position), eps).size();
+            case "kd":
+                NearestNeighboursKD tree = new NearestNeighboursKD(list);
+                return position -> tree.RangeQuery(list.get(position), eps).size();
+            case "bucket":
+                NearestNeighboursBucketKD buckets = new NearestNeighboursBucketKD(list);
+                return position -> buckets.RangeQuery(list.get(position), eps).size();
+            case "distance":
+                return position -> {
+                    Point3D point = list.get(position);
+                    ArrayList<Point3D> neighbours = new ArrayList<Point3D>();
+                    for(Point3D pt: list){
+                        if(point.distance(pt) <= eps){
+                            neighbours.add(pt);
+                        }
+                    }
+                    return neighbours.size();
+                };
+            default: throw new IllegalArgumentException("Unknown method: " + method);
+        }
+    }
+
+    public IntUnaryOperator kernelScan(String kernel, String operation, double eps, int points, long seed){
+        DistanceKernel.Kernel scan;
+        switch(kernel){
+            case "scalar": scan = DistanceKernel.getScalarKernel(); break;
+            case "vector": scan = DistanceKernel.getVectorKernel(); break;
+            default: throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+        if(scan == null){
+            throw new IllegalStateException("No vector kernel, the JVM needs --add-modules jdk.incubator.vector");
+        }
+        PointCloud cloud = SyntheticCloud.blobs(points, seed);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        double[] zs = new double[points];
+        int[] ids = new int[points];
+        for(int i = 0; i < points; i++){
+            xs[i] = cloud.getX(i);
+            ys[i] = cloud.getY(i);
+            zs[i] = cloud.getZ(i);
+            ids[i] = i;
+        }
+        double bound = Point3D.strictSquaredBound(eps);
+        double[] scratch = new double[points];
+        switch(operation){
+            case "count": return position -> scan.count(xs, ys, zs, 0, points, xs[position], ys[position], zs[position], bound, scratch);
+            case "collect":
+                IntList buffer = new IntList();
+                return position -> {
+                    buffer.clear();
+                    return scan.collect(xs, ys, zs, ids, 0, points, xs[position], ys[position], zs[position], bound, scratch, buffer);
+                };
+            default: throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    public IntSupplier read(String reader, String file){
+        String path = bundled(file);
+        switch(reader){
+            case "read": return () -> DBScan.read(path).size();
+            case "readCloud": return () -> DBScan.readCloud(path, 2, 1).size();
+            default: throw new IllegalArgumentException("Unknown reader: " + reader);
+        }
+    }
+
+    public IntSupplier save(String file, double eps, int minPts, String output) throws IOException{
+        DBScan db = new DBScan(DBScan.readCloud(bundled(file), 2, 1));
+        db.setEps(eps);
+        db.setMinPts(minPts);
+        db.findClusters();
+        return () -> {
+            db.save(output);
+            return db.getNumberOfClusters();
+        };
+    }
+
+    public Supplier<IntSupplier> clustering(String cloud, int points, long seed, double eps, int minPts, String curve){
+        PointCloud coordinates = cloud.endsWith(".csv") ? DBScan.readCloud(bundled(cloud), 2, 1)
+            : SyntheticCloud.generate(cloud, points, seed);
+        SpaceFillingCurve.Curve order = curve.equals("none") ? null : SpaceFillingCurve.parse(curve);
+        return () -> {
+            DBScan db = new DBScan(coordinates);
+            db.setEps(eps);
+            db.setMinPts(minPts);
+            return () -> {
+                if(order != null){
+                    db.orderAlongCurve(order);
+                }
+                db.findClusters();
+                return db.getNumberOfClusters();
+            };
+        };
+    }
+
+/**
+ * Path of a file of PointClouds
+ * @throws IllegalArgumentException if the file is not there, e.g. when not run from the root of the project
+ */
+    private static String bundled(String file){
+        File path = new File("PointClouds", file);
+        if(!path.isFile()){
+            throw new IllegalArgumentException(path.getAbsolutePath() + " not found, run the benchmarks from the root of the project");
+        }
+        return path.getPath();
+    }
+}
@@ -0,0 +1,34 @@
+package dbclustering.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks jar: the JMH runner with the allocation profiler (-prof gc) always on, so every
+ * result comes with its gc.alloc.rate.norm, the bytes allocated per operation. All the JMH options are accepted,
+ * e.g. a benchmark name pattern, -p eps=1.2, -f 1 or -l to list the benchmarks.
+ *
+ * java -jar benchmarks/target/benchmarks.jar [JMH options], from the root of the project
+ * @author Aksh Babbar (300034042)
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception{
+        CommandLineOptions options = new CommandLineOptions(args);
+        if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers()
+                || options.shouldListResultFormats()){
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        boolean gc = options.getProfilers().stream()
+            .anyMatch(p -> p.getKlass().equals("gc") || p.getKlass().equals(GCProfiler.class.getName()));
+        if(!gc){ //given once only, or it would be reported twice
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
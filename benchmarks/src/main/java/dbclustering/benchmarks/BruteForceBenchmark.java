@@ -0,0 +1,64 @@
+package dbclustering.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RangeQuery(Point3D, eps) of the brute-force NearestNeighbours against the KD trees on a blobs cloud, and against
+ * the loop over Point3D.distance the brute force used before DistanceKernel. Every operation is one query.
+ * The forks run with the incubator module, so the brute force and the bucket index use the vector DistanceKernel
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsPrepend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Thread)
+public class BruteForceBenchmark {
+
+    private static final int QUERIES = 1024; //query points, a power of 2
+
+    @Param({"distance", "brute", "kd", "bucket"})
+    public String method;
+
+    @Param({"20000"})
+    public int points;
+
+    @Param({"1.2"})
+    public double eps;
+
+    @Param({"42"})
+    public long seed;
+
+    private IntUnaryOperator operation;
+    private int[] positions;
+    private int next;
+
+    @Setup
+    public void setup(){
+        this.operation = Workloads.load().pointQuery(this.method, this.eps, this.points, this.seed);
+        Random random = new Random(this.seed);
+        this.positions = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++){
+            this.positions[i] = random.nextInt(this.points);
+        }
+    }
+
+    @Benchmark
+    public int rangeQuery(){
+        return this.operation.applyAsInt(this.positions[this.next++ & (QUERIES - 1)]);
+    }
+}
@@ -0,0 +1,55 @@
+package dbclustering.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end DBScan.findClusters, index construction included, with eps 1.2 and minPts 10 on the bundled
+ * '.csv' clouds. Every iteration is a single run on a new DBScan, created before the measure
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ClusteringBenchmark {
+
+    @Param({"Point_Cloud_1.csv", "Point_Cloud_2.csv", "Point_Cloud_3.csv"})
+    public String file;
+
+    @Param({"none"})
+    public String curve;
+
+    private Supplier<IntSupplier> runs;
+    private IntSupplier operation;
+
+    @Setup(Level.Trial)
+    public void read(){
+        this.runs = Workloads.load().clustering(this.file, 0, 0, 1.2, 10, this.curve);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare(){
+        this.operation = this.runs.get();
+    }
+
+    @Benchmark
+    public int findClusters(){
+        return this.operation.getAsInt();
+    }
+}
@@ -0,0 +1,57 @@
+package dbclustering.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction of the indexes (NearestNeighboursKD, NearestNeighboursFlatKD, NearestNeighboursBucketKD and
+ * NearestNeighboursGrid) over the synthetic clouds. The KD index is built from a list of Point3D, the other
+ * ones from the coordinate arrays of the cloud, like DBScan does
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class IndexBuildBenchmark {
+
+    @Param({"kd", "flat", "bucket", "grid"})
+    public String index;
+
+    @Param({"uniform", "blobs", "scanlines"})
+    public String shape;
+
+    @Param({"200000"})
+    public int points;
+
+    @Param({"32"})
+    public int bucketSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private IntSupplier operation;
+
+    @Setup
+    public void setup(){
+        this.operation = Workloads.load().indexBuild(this.index, this.bucketSize, 1.2, this.shape, this.points, this.seed);
+    }
+
+    @Benchmark
+    public int build(){
+        return this.operation.getAsInt();
+    }
+}
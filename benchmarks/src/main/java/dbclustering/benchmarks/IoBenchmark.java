@@ -0,0 +1,69 @@
+package dbclustering.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the bundled '.csv' clouds with DBScan.read (a list of Point3D) and DBScan.readCloud (mapped, into
+ * coordinate arrays), and saving their clusters with DBScan.save to a temporary file
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class IoBenchmark {
+
+    @Param({"Point_Cloud_1.csv", "Point_Cloud_2.csv", "Point_Cloud_3.csv"})
+    public String file;
+
+    private IntSupplier read;
+    private IntSupplier readCloud;
+    private IntSupplier save;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException{
+        Workloads workloads = Workloads.load();
+        this.read = workloads.read("read", this.file);
+        this.readCloud = workloads.read("readCloud", this.file);
+        this.output = File.createTempFile("benchmark", ".csv");
+        this.save = workloads.save(this.file, 1.2, 10, this.output.getPath());
+    }
+
+    @TearDown
+    public void tearDown(){
+        this.output.delete();
+    }
+
+    @Benchmark
+    public int read(){
+        return this.read.getAsInt();
+    }
+
+    @Benchmark
+    public int readCloud(){
+        return this.readCloud.getAsInt();
+    }
+
+    @Benchmark
+    public int save(){
+        return this.save.getAsInt();
+    }
+}
@@ -0,0 +1,73 @@
+package dbclustering.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scalar DistanceKernel (auto-vectorized loop) against the vector one (jdk.incubator.vector), on a run of
+ * 32 points like a leaf of the bucket KD tree and on 20000 points like the brute-force NearestNeighbours.
+ * Every operation scans the whole run once, with count or collect. The forks run with the incubator module.
+ * Running the scalar kernel with -jvmArgsAppend -XX:-UseSuperWord shows what the JIT auto-vectorization brings
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsPrepend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+    private static final int QUERIES = 1024; //query points, a power of 2
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"32", "20000"})
+    public int points;
+
+    @Param({"1.2"})
+    public double eps;
+
+    @Param({"42"})
+    public long seed;
+
+    private IntUnaryOperator count;
+    private IntUnaryOperator collect;
+    private int[] positions;
+    private int next;
+
+    @Setup
+    public void setup(){
+        Workloads workloads = Workloads.load();
+        this.count = workloads.kernelScan(this.kernel, "count", this.eps, this.points, this.seed);
+        this.collect = workloads.kernelScan(this.kernel, "collect", this.eps, this.points, this.seed);
+        Random random = new Random(this.seed);
+        this.positions = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++){
+            this.positions[i] = random.nextInt(this.points);
+        }
+    }
+
+    @Benchmark
+    public int count(){
+        return this.count.applyAsInt(this.positions[this.next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public int collect(){
+        return this.collect.applyAsInt(this.positions[this.next++ & (QUERIES - 1)]);
+    }
+}
@@ -0,0 +1,71 @@
+package dbclustering.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single range queries, rangeQuery(position, eps, buffer) as used by findClusters, on the 4 indexes over the
+ * synthetic clouds. Every operation is one query, on the next of a fixed set of random points of the cloud.
+ * The grid index has cells of side eps. Bucket sizes can be compared with -p bucketSize=8,16,32,64 -p index=bucket.
+ * The forks run with the incubator module, so the bucket index scans its leaves with the vector DistanceKernel
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsPrepend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Thread)
+public class RangeQueryBenchmark {
+
+    private static final int QUERIES = 4096; //query points, a power of 2
+
+    @Param({"0.3", "1.2", "2.4"})
+    public double eps;
+
+    @Param({"kd", "flat", "bucket", "grid"})
+    public String index;
+
+    @Param({"uniform", "blobs", "scanlines"})
+    public String shape;
+
+    @Param({"200000"})
+    public int points;
+
+    @Param({"32"})
+    public int bucketSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private IntUnaryOperator operation;
+    private int[] positions;
+    private int next;
+
+    @Setup
+    public void setup(){
+        this.operation = Workloads.load().rangeQuery(this.index, this.bucketSize, this.eps, this.shape, this.points, this.seed);
+        Random random = new Random(this.seed);
+        this.positions = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++){
+            this.positions[i] = random.nextInt(this.points);
+        }
+    }
+
+    @Benchmark
+    public int rangeQuery(){
+        return this.operation.applyAsInt(this.positions[this.next++ & (QUERIES - 1)]);
+    }
+}
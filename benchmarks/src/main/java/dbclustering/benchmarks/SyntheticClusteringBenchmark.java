@@ -0,0 +1,63 @@
+package dbclustering.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end DBScan.findClusters, index construction included, with eps 1.2 and minPts 10 on the synthetic
+ * clouds from 100k to 10M points, in their own order and reordered along the Hilbert curve (the reordering is
+ * part of the time). Every iteration is a single run on a new DBScan, created before the measure.
+ * The 10M point clouds need about 3 GB of heap, the forks get 4 GB
+ * @author Aksh Babbar (300034042)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class SyntheticClusteringBenchmark {
+
+    @Param({"uniform", "blobs", "scanlines"})
+    public String shape;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int points;
+
+    @Param({"none", "hilbert"})
+    public String curve;
+
+    @Param({"42"})
+    public long seed;
+
+    private Supplier<IntSupplier> runs;
+    private IntSupplier operation;
+
+    @Setup(Level.Trial)
+    public void generate(){
+        this.runs = Workloads.load().clustering(this.shape, this.points, this.seed, 1.2, 10, this.curve);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare(){
+        this.operation = this.runs.get();
+    }
+
+    @Benchmark
+    public int findClusters(){
+        return this.operation.getAsInt();
+    }
+}
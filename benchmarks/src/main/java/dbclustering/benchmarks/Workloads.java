@@ -0,0 +1,93 @@
+package dbclustering.benchmarks;
+
+import java.io.IOException;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * This interface is the bridge between the JMH benchmarks and the clustering classes. JMH only accepts benchmark
+ * classes in a named package, and a class in a named package cannot refer to the classes of the default package,
+ * where all the clustering classes are. The work measured is therefore prepared by BenchmarkWorkloads, in the
+ * default package of this module, and handed over as java.util.function objects: the benchmarks load it by name
+ * once in their setup, and the measured code is a plain interface call.
+ *
+ * Every method does the expensive preparation (reading or generating the cloud, building the index) itself and
+ * returns the operation that is measured. The operations return a number that depends on their work (a count, a
+ * size), which the benchmarks return so that JMH consumes it.
+ * The indexes are named like the --index option of DBScan (kd, flat, bucket, grid) and the synthetic clouds like
+ * the shapes of SyntheticCloud (uniform, blobs, scanlines); a name ending with .csv is a file of PointClouds.
+ * @author Aksh Babbar (300034042)
+ */
+public interface Workloads {
+
+/**
+ * The implementation in the default package
+ * @return BenchmarkWorkloads
+ */
+    static Workloads load(){
+        try{
+            return (Workloads) Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException("BenchmarkWorkloads is not on the class path", e);
+        }
+    }
+
+/**
+ * Construction of an index over a synthetic cloud
+ * @param index  kd, flat, bucket or grid
+ * @param bucketSize  points per leaf of the bucket index
+ * @param eps  side of the cells of the grid index
+ * @return the operation building the index, it returns the depth of the tree or the number of points
+ */
+    IntSupplier indexBuild(String index, int bucketSize, double eps, String shape, int points, long seed);
+
+/**
+ * Single range queries on an index over a synthetic cloud, into a buffer reused by all the queries
+ * @return the operation taking the position of the query point and returning the number of neighbours
+ */
+    IntUnaryOperator rangeQuery(String index, int bucketSize, double eps, String shape, int points, long seed);
+
+/**
+ * RangeQuery(Point3D, eps) over a blobs cloud, which returns a new list of neighbours for every query
+ * @param method  brute (NearestNeighbours), distance (loop over Point3D.distance, what the brute force did before
+ *                DistanceKernel), kd (NearestNeighboursKD) or bucket (NearestNeighboursBucketKD)
+ * @return the operation taking the position of the query point and returning the number of neighbours
+ */
+    IntUnaryOperator pointQuery(String method, double eps, int points, long seed);
+
+/**
+ * Scan of all the points of a blobs cloud by one implementation of DistanceKernel, like the scan of a leaf of the
+ * bucket KD tree (32 points) or of the brute-force NearestNeighbours (the whole cloud)
+ * @param kernel  scalar or vector
+ * @param operation  count or collect
+ * @return the operation taking the position of the query point and returning the number of neighbours
+ * @throws IllegalStateException if the vector kernel is asked for and the JVM runs without jdk.incubator.vector
+ */
+    IntUnaryOperator kernelScan(String kernel, String operation, double eps, int points, long seed);
+
+/**
+ * Reading of a file of PointClouds
+ * @param reader  read (DBScan.read, a list of Point3D) or readCloud (DBScan.readCloud, the mapped parallel reader)
+ * @return the operation reading the file and returning the number of points
+ */
+    IntSupplier read(String reader, String file);
+
+/**
+ * Saving the clusters of a file of PointClouds, found once with eps and minPts
+ * @param output  the file written by every operation
+ * @return the operation writing the clusters and returning the number of clusters
+ * @throws IOException if the file cannot be read
+ */
+    IntSupplier save(String file, double eps, int minPts, String output) throws IOException;
+
+/**
+ * Clustering of a file of PointClouds or of a synthetic cloud. The cloud is read or generated once; findClusters
+ * changes the points, so every run needs a new DBScan, which the returned supplier creates outside of the measure
+ * @param cloud  a .csv file of PointClouds or a shape of SyntheticCloud
+ * @param points  the number of points of a synthetic cloud
+ * @param curve  none, morton or hilbert: order of the points, done by the measured operation
+ * @return the supplier of operations, each one runs findClusters once and returns the number of clusters
+ */
+    Supplier<IntSupplier> clustering(String cloud, int points, long seed, double eps, int minPts, String curve);
+}
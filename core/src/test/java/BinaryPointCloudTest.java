@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Checks that a point cloud written to a '.pcb' file reads back with the same coordinates (rounded to float
+ * for float32) and the same labels, whole, in ranges, and through a channel
+ * @author Aksh Babbar (300034042)
+ */
+class BinaryPointCloudTest {
+
+    private static final int SIZE = 100003;
+
+    @ParameterizedTest(name = "float64 {0} labels {1}")
+    @CsvSource({"false, false", "false, true", "true, false", "true, true"})
+    void readsTheWrittenCloud(boolean float64, boolean withLabels, @TempDir Path dir) throws IOException{
+        Random random = new Random((float64 ? 2 : 0) + (withLabels ? 1 : 0));
+        double[] x = new double[SIZE];
+        double[] y = new double[SIZE];
+        double[] z = new double[SIZE];
+        int[] labels = withLabels ? new int[SIZE] : null;
+        for(int i = 0; i < SIZE; i++){
+            x[i] = random.nextGaussian() * 1000;
+            y[i] = random.nextDouble() - 0.5;
+            z[i] = Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL) * (random.nextBoolean() ? 1 : -1);
+            if(withLabels){
+                labels[i] = random.nextInt(50) - 1;
+            }
+        }
+        z[0] = 0.0;
+        z[1] = -0.0;
+        PointCloud cloud = new PointCloud(x, y, z, SIZE);
+        String file = dir.resolve("cloud.pcb").toString();
+        BinaryPointCloud.write(file, cloud, labels, float64);
+
+        assertEquals(SIZE, BinaryPointCloud.size(file));
+        assertCloud(cloud, BinaryPointCloud.read(file), 0, float64);
+        PointCloud part = BinaryPointCloud.read(file, 777, 5000);
+        assertEquals(5000, part.size());
+        assertCloud(cloud, part, 777, float64);
+        assertEquals(3, BinaryPointCloud.read(file, SIZE - 3, 5000).size(), "points of a range past the end");
+        if(withLabels){
+            assertArrayEquals(labels, BinaryPointCloud.readLabels(file));
+        }
+        else{
+            assertNull(BinaryPointCloud.readLabels(file));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryPointCloud.write(Channels.newChannel(bytes), cloud, labels, float64);
+        bytes.write(new byte[]{1, 2, 3}); //data after the cloud must not be read
+        IntList channelLabels = new IntList();
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        assertCloud(cloud, BinaryPointCloud.read(Channels.newChannel(in), channelLabels), 0, float64);
+        assertArrayEquals(withLabels ? labels : new int[0], channelLabels.toArray());
+        assertEquals(3, in.available(), "bytes left after the cloud");
+    }
+
+    private static void assertCloud(PointCloud expected, PointCloud actual, int from, boolean float64){
+        for(int i = 0; i < actual.size(); i++){
+            assertEquals(stored(expected.getX(from + i), float64), actual.getX(i), "x of point " + (from + i));
+            assertEquals(stored(expected.getY(from + i), float64), actual.getY(i), "y of point " + (from + i));
+            assertEquals(stored(expected.getZ(from + i), float64), actual.getZ(i), "z of point " + (from + i));
+        }
+    }
+
+/**
+ * The coordinate as stored in the file, rounded to the nearest float for float32
+ */
+    private static double stored(double v, boolean float64){
+        return float64 ? v : (double) (float) v;
+    }
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks that unions done by several threads at once give the sets of the same unions done one by one,
+ * each set having its smallest element as root
+ * @author Aksh Babbar (300034042)
+ */
+class ConcurrentUnionFindTest {
+
+    private static final int SIZE = 200000;
+    private static final int UNIONS = 150000; //below SIZE, so that many sets are left
+
+    @ParameterizedTest(name = "{0} threads")
+    @ValueSource(ints = {2, 4, 8})
+    void concurrentUnionsGiveTheSequentialSets(int threads) throws Exception{
+        Random random = new Random(threads);
+        int[] a = new int[UNIONS];
+        int[] b = new int[UNIONS];
+        for(int k = 0; k < UNIONS; k++){
+            a[k] = random.nextInt(SIZE);
+            b[k] = random.nextInt(SIZE);
+        }
+        int[] expected = sequentialRoots(a, b);
+
+        ConcurrentUnionFind sets = new ConcurrentUnionFind(SIZE);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            Future<?>[] tasks = new Future<?>[threads];
+            for(int t = 0; t < threads; t++){
+                int first = t;
+                tasks[t] = pool.submit(() -> {
+                    for(int k = first; k < UNIONS; k += threads){ //interleaved, so the threads work on the same sets
+                        sets.union(a[k], b[k]);
+                        sets.find(b[k]);
+                    }
+                });
+            }
+            for(Future<?> task: tasks){
+                task.get();
+            }
+        }finally{
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        for(int i = 0; i < SIZE; i++){
+            assertEquals(expected[i], sets.find(i), "root of " + i);
+        }
+    }
+
+/**
+ * Root of every element after the unions, with a plain union-find whose roots are the smallest elements
+ */
+    private static int[] sequentialRoots(int[] a, int[] b){
+        int[] parent = new int[SIZE];
+        for(int i = 0; i < SIZE; i++){
+            parent[i] = i;
+        }
+        for(int k = 0; k < a.length; k++){
+            int ra = root(parent, a[k]);
+            int rb = root(parent, b[k]);
+            parent[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+        int[] roots = new int[SIZE];
+        for(int i = 0; i < SIZE; i++){
+            roots[i] = root(parent, i);
+        }
+        return roots;
+    }
+
+    private static int root(int[] parent, int i){
+        while(parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks DoubleFormatter.format against Double.toString: the text reads back to the same double and is the
+ * text of Double.toString. Before JDK 19 Double.toString sometimes writes more digits than needed, or not the
+ * closest ones (JDK-4511638), then the text must be shorter, or as long and not farther from the double
+ * @author Aksh Babbar (300034042)
+ */
+class DoubleFormatterTest {
+
+    private static final boolean SHORTEST_TO_STRING = Runtime.version().feature() >= 19;
+
+    @Test
+    void formatsRandomDoubles(){
+        Random random = new Random(12);
+        byte[] out = new byte[DoubleFormatter.MAX_CHARS + 2];
+        for(int n = 0; n < 2000000; n++){
+            assertFormatted(Double.longBitsToDouble(random.nextLong()), out);
+        }
+    }
+
+    @Test
+    void formatsCoordinates(){
+        Random random = new Random(13);
+        byte[] out = new byte[DoubleFormatter.MAX_CHARS + 2];
+        for(int n = 0; n < 1000000; n++){
+            assertFormatted(random.nextGaussian() * Math.pow(10, random.nextInt(13) - 6), out);
+        }
+    }
+
+    @Test
+    void formatsEdgeCases(){
+        double[] values = {0.0, -0.0, 1.0, -1.0, 0.1, 0.5, 12.0, 1e-3, Math.nextDown(1e-3), 1e7, Math.nextDown(1e7),
+            1e22, 1e23, 2e23, 9007199254740992.0, 9007199254740993.0, 1.0E-5, 5e-324, 1e-323, 2 * Double.MIN_VALUE,
+            3 * Double.MIN_VALUE, Double.MIN_NORMAL, Math.nextDown(Double.MIN_NORMAL), Double.MAX_VALUE,
+            -Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -5.057771786205823,
+            9.341438758872844E-5, 0.30000000000000004, 123456789.0, 1234567.125};
+        byte[] out = new byte[DoubleFormatter.MAX_CHARS + 2];
+        for(double v: values){
+            assertFormatted(v, out);
+        }
+        for(int e = -324; e <= 308; e++){
+            assertFormatted(Double.parseDouble("1e" + e), out);
+            assertFormatted(Math.scalb(1.0, Math.max(-1074, Math.min(1023, e * 3))), out);
+        }
+    }
+
+    @Test
+    void formatsInts(){
+        Random random = new Random(14);
+        byte[] out = new byte[16];
+        int[] values = {0, 1, -1, 9, 10, -10, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for(int v: values){
+            assertEquals(Integer.toString(v), new String(out, 0, DoubleFormatter.format(v, out, 0), StandardCharsets.US_ASCII));
+        }
+        for(int n = 0; n < 100000; n++){
+            int v = random.nextInt() >> random.nextInt(32);
+            assertEquals(Integer.toString(v), new String(out, 0, DoubleFormatter.format(v, out, 0), StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static void assertFormatted(double v, byte[] out){
+        out[0] = '#';
+        int end = DoubleFormatter.format(v, out, 1);
+        assertTrue(end - 1 <= DoubleFormatter.MAX_CHARS, "length of " + v);
+        String text = new String(out, 1, end - 1, StandardCharsets.US_ASCII);
+        String expected = Double.toString(v);
+        if(Double.isNaN(v)){
+            assertEquals(expected, text);
+            return;
+        }
+        assertEquals(Double.doubleToRawLongBits(v), Double.doubleToRawLongBits(Double.parseDouble(text)), text);
+        if(SHORTEST_TO_STRING || text.equals(expected) || Double.isInfinite(v)){
+            assertEquals(expected, text);
+            return;
+        }
+        BigDecimal exact = new BigDecimal(v);
+        assertTrue(text.length() < expected.length() || (text.length() == expected.length()
+            && new BigDecimal(text).subtract(exact).abs().compareTo(new BigDecimal(expected).subtract(exact).abs()) <= 0),
+            text + " is neither shorter nor closer to " + v + " than " + expected);
+    }
+}
@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Checks that IncrementalDBScan keeps the clustering of DBScan.findClusters on the live points after every batch,
+ * with the same rules as ParallelDBScanTest: same noise points, same partition of the core points, and every
+ * border point in the cluster of one of its core neighbours. The points are inserted and expired in random order,
+ * so that the expirations punch holes in the clusters and split them
+ * @author Aksh Babbar (300034042)
+ */
+class IncrementalDBScanTest {
+
+    @ParameterizedTest(name = "{0} eps {1} minPts {2}")
+    @CsvSource({"Point_Cloud_1.csv, 1.2, 10", "Point_Cloud_3.csv, 1.2, 10", "Point_Cloud_2.csv, 1.8, 12", "Point_Cloud_3.csv, 0.6, 5"})
+    void matchesDBScanAfterEveryBatch(String fileName, double eps, int minPts){
+        PointCloud cloud = DBScan.readCloud("PointClouds/" + fileName, 2, 1);
+        Random random = new Random(fileName.hashCode());
+        ArrayList<Point3D> stream = cloud.toPoints();
+        ArrayList<Point3D> source = new ArrayList<Point3D>(stream.subList(0, Math.min(8000, stream.size())));
+        Collections.shuffle(source, random);
+        IncrementalDBScan clustering = new IncrementalDBScan(eps, minPts);
+        ArrayList<Integer> live = new ArrayList<Integer>(); //ids of the live points
+        int next = 0;
+        for(int batch = 0; batch < 60; batch++){
+            ArrayList<Point3D> inserted = new ArrayList<Point3D>();
+            for(int k = 0; k < 250 && next < source.size(); k++, next++){
+                Point3D point = source.get(next);
+                inserted.add(new Point3D(point.getX(), point.getY(), point.getZ()));
+            }
+            int[] expired = new int[batch < 10 ? 0 : Math.min(live.size(), 150 + random.nextInt(100))];
+            for(int k = 0; k < expired.length; k++){
+                expired[k] = live.remove(random.nextInt(live.size()));
+                source.add(clustering.getPoint(expired[k])); //inserted again later, at the end of the stream
+            }
+            for(int id: clustering.update(inserted, expired)){
+                live.add(id);
+            }
+            assertSameClustering(clustering, live, eps, minPts, batch);
+        }
+    }
+
+    private static void assertSameClustering(IncrementalDBScan clustering, ArrayList<Integer> live, double eps, int minPts, int batch){
+        assertEquals(live.size(), clustering.size(), "live points after batch " + batch);
+        ArrayList<Point3D> points = new ArrayList<Point3D>();
+        for(int id: live){
+            Point3D point = clustering.getPoint(id);
+            points.add(new Point3D(point.getX(), point.getY(), point.getZ()));
+        }
+        DBScan db = new DBScan(points);
+        db.setEps(eps);
+        db.setMinPts(minPts);
+        db.findClusters();
+        NearestNeighboursKD index = new NearestNeighboursKD(points);
+        int n = points.size();
+        boolean[] core = new boolean[n];
+        int[] labels = new int[n];
+        for(int i = 0; i < n; i++){
+            core[i] = index.countWithin(i, eps, minPts) >= minPts;
+            labels[i] = clustering.getLabel(live.get(i));
+            assertTrue(labels[i] >= 0, "point " + i + " has no label after batch " + batch);
+        }
+        HashMap<Integer, Integer> forward = new HashMap<Integer, Integer>(); //cluster of DBScan to cluster of IncrementalDBScan
+        HashMap<Integer, Integer> backward = new HashMap<Integer, Integer>();
+        for(int i = 0; i < n; i++){
+            int expected = points.get(i).getClusterId();
+            assertEquals(expected == 0, labels[i] == 0, "noise flag of point " + i + " after batch " + batch);
+            if(core[i]){
+                forward.putIfAbsent(expected, labels[i]);
+                backward.putIfAbsent(labels[i], expected);
+                assertEquals(labels[i], (int) forward.get(expected), "cluster of core point " + i + " after batch " + batch);
+                assertEquals(expected, (int) backward.get(labels[i]), "cluster of core point " + i + " after batch " + batch);
+            }
+        }
+        IntList neighbours = new IntList();
+        for(int i = 0; i < n; i++){
+            if(core[i] || labels[i] == 0){
+                continue;
+            }
+            index.rangeQuery(i, eps, neighbours);
+            boolean attached = false;
+            for(int k = 0; k < neighbours.size() && !attached; k++){
+                int j = neighbours.get(k);
+                attached = core[j] && labels[j] == labels[i];
+            }
+            assertTrue(attached, "border point " + i + " has no core neighbour in its cluster after batch " + batch);
+        }
+        int clustered = clustering.getNoise().getSize();
+        for(Cluster cluster: clustering.getClusters()){
+            assertTrue(cluster.getSize() > 0, "empty cluster " + cluster.getClusterID() + " after batch " + batch);
+            clustered += cluster.getSize();
+        }
+        assertEquals(n, clustered, "points in the clusters and the noise after batch " + batch);
+    }
+}
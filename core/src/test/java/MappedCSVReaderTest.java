@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the number parser of MappedCSVReader against Double.parseDouble, bit for bit: random doubles as printed
+ * by Double.toString, random decimal texts with signs, long mantissas and exponents, and whole files read
+ * in parallel chunks whose boundaries fall anywhere in the lines
+ * @author Aksh Babbar (300034042)
+ */
+class MappedCSVReaderTest {
+
+    @Test
+    void parsesTheTextOfRandomDoubles(){
+        Random random = new Random(9);
+        for(int n = 0; n < 1000000; n++){
+            double v = Double.longBitsToDouble(random.nextLong());
+            if(!Double.isNaN(v) && !Double.isInfinite(v)){
+                assertParsed(Double.toString(v));
+            }
+        }
+    }
+
+    @Test
+    void parsesRandomDecimalTexts(){
+        Random random = new Random(10);
+        for(int n = 0; n < 1000000; n++){
+            assertParsed(randomDecimal(random));
+        }
+    }
+
+    @Test
+    void parsesEdgeCases(){
+        String[] texts = {"0", "-0", "+0.0", "0.000", "-0.0e10", "1", "-1", "+1.5", "1.", ".5", "-.5", "1e0", "1E+2", "1e-2",
+            "9007199254740992", "9007199254740993", "18014398509481985", "123456789012345678", "1234567890123456789",
+            "0.1", "0.30000000000000004", "1e22", "1e23", "1e-22", "1e-23", "4.9e-324", "2.4703282292062327e-324",
+            "2.4703282292062328e-324", "2.2250738585072011e-308", "2.2250738585072014e-308", "1.7976931348623157e308",
+            "1.7976931348623158e308", "1.8e308", "1e309", "1e-400", "1e100000", "  2.5 ", "2.5\r",
+            "0.000000000000000000000000000001", "100000000000000000000000000000000000000", "7.3177701707893310e+15"};
+        for(String text: texts){
+            assertParsed(text);
+        }
+    }
+
+    @Test
+    void readsFilesSplitInChunks(@TempDir Path dir) throws IOException{
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder("x,y,z\n");
+        ArrayList<double[]> expected = new ArrayList<double[]>();
+        while(text.length() < (3 << 20)){ //larger than MappedCSVReader.MIN_CHUNK, so it is parsed in several chunks
+            String[] fields = new String[3];
+            double[] point = new double[3];
+            for(int a = 0; a < 3; a++){
+                fields[a] = random.nextInt(4) == 0 ? randomDecimal(random) : Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(9) - 4));
+                point[a] = Double.parseDouble(fields[a]);
+            }
+            expected.add(point);
+            text.append(String.join(",", fields)).append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+            if(random.nextInt(50) == 0){
+                text.append("  \n"); //blank lines are skipped
+            }
+        }
+        Path file = dir.resolve("cloud.csv");
+        Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+        for(int threads: new int[]{1, 3, 8}){
+            PointCloud cloud = MappedCSVReader.read(file.toString(), 1, threads);
+            assertEquals(expected.size(), cloud.size(), "points read on " + threads + " thread(s)");
+            for(int i = 0; i < expected.size(); i++){
+                assertEquals(expected.get(i)[0], cloud.getX(i), "x of point " + i);
+                assertEquals(expected.get(i)[1], cloud.getY(i), "y of point " + i);
+                assertEquals(expected.get(i)[2], cloud.getZ(i), "z of point " + i);
+            }
+        }
+    }
+
+/**
+ * Decimal text with an optional sign, up to 25 integer and fraction digits (at least one digit in all)
+ * and an optional exponent from -350 to 350
+ */
+    private static String randomDecimal(Random random){
+        StringBuilder text = new StringBuilder();
+        int sign = random.nextInt(3);
+        text.append(sign == 0 ? "" : sign == 1 ? "-" : "+");
+        int integerDigits = random.nextInt(26);
+        int fractionDigits = random.nextInt(26);
+        if(integerDigits + fractionDigits == 0){
+            integerDigits = 1;
+        }
+        for(int k = 0; k < integerDigits; k++){
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        if(fractionDigits > 0 || random.nextBoolean()){
+            text.append('.');
+        }
+        for(int k = 0; k < fractionDigits; k++){
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        if(random.nextBoolean()){
+            text.append(random.nextBoolean() ? 'e' : 'E');
+            int exponent = random.nextInt(701) - 350;
+            text.append(exponent < 0 ? "-" : random.nextBoolean() ? "+" : "").append(Math.abs(exponent));
+        }
+        return text.toString();
+    }
+
+    private static void assertParsed(String text){
+        byte[] bytes = ("#" + text + ",").getBytes(StandardCharsets.US_ASCII); //the number in the middle of a buffer
+        double parsed = MappedCSVReader.parseDouble(ByteBuffer.wrap(bytes), 1, bytes.length - 1);
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)), Double.doubleToRawLongBits(parsed), text);
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a NeighbourGraph saved to a '.nbg' file loads back with the same neighbourhoods, and that load
+ * gives no graph for other points or another eps, and fails on a file that is cut short
+ * @author Aksh Babbar (300034042)
+ */
+class NeighbourGraphTest {
+
+    private static final double EPS = 1.2;
+
+    private static ArrayList<Point3D> points;
+    private static NearestNeighboursKD index;
+    private static NeighbourGraph graph;
+
+    @BeforeAll
+    static void buildGraph(){
+        points = DBScan.readCloud("PointClouds/Point_Cloud_1.csv", 2, 1).toPoints();
+        index = new NearestNeighboursKD(points);
+        graph = NeighbourGraph.build(points, index, EPS, 2, Long.MAX_VALUE);
+    }
+
+    @Test
+    void loadsTheSavedGraph(@TempDir Path dir) throws IOException{
+        String file = dir.resolve("cloud.nbg").toString();
+        graph.save(file);
+        NeighbourGraph loaded = NeighbourGraph.load(file, points, EPS);
+        assertNotNull(loaded);
+        assertEquals(graph.getEntryCount(), loaded.getEntryCount());
+        assertEquals(EPS, loaded.getMaxEps());
+        IntList expected = new IntList();
+        IntList actual = new IntList();
+        for(double eps: new double[]{EPS, 0.8, 0.3}){ //smaller eps read only the start of every row
+            for(int i = 0; i < points.size(); i++){
+                graph.rangeQuery(i, eps, expected);
+                loaded.rangeQuery(i, eps, actual);
+                assertArrayEquals(expected.toArray(), actual.toArray(), "neighbours of point " + i + " within " + eps);
+                assertEquals(expected.size(), loaded.countWithin(i, eps, Integer.MAX_VALUE), "count of point " + i + " within " + eps);
+                assertEquals(index.countWithin(i, eps, Integer.MAX_VALUE), actual.size(), "KD tree count of point " + i + " within " + eps);
+            }
+        }
+    }
+
+    @Test
+    void givesNoGraphForOtherPointsOrEps(@TempDir Path dir) throws IOException{
+        String file = dir.resolve("cloud.nbg").toString();
+        graph.save(file);
+        ArrayList<Point3D> copy = new ArrayList<Point3D>();
+        for(Point3D point: points){
+            copy.add(new Point3D(point.getX(), point.getY(), point.getZ()));
+        }
+        assertNotNull(NeighbourGraph.load(file, copy, EPS), "graph of a copy of the points");
+        ArrayList<Point3D> moved = new ArrayList<Point3D>(copy);
+        Point3D last = moved.get(moved.size() - 1);
+        moved.set(moved.size() - 1, new Point3D(Math.nextUp(last.getX()), last.getY(), last.getZ()));
+        assertNull(NeighbourGraph.load(file, moved, EPS), "graph of points with one coordinate changed");
+        assertNull(NeighbourGraph.load(file, new ArrayList<Point3D>(points.subList(0, points.size() - 1)), EPS), "graph of fewer points");
+        assertNull(NeighbourGraph.load(file, points, Math.nextDown(EPS)), "graph of another eps");
+        assertNull(NeighbourGraph.load(dir.resolve("missing.nbg").toString(), points, EPS), "graph of a missing file");
+    }
+
+    @Test
+    void failsOnATruncatedFile(@TempDir Path dir) throws IOException{
+        Path file = dir.resolve("cloud.nbg");
+        graph.save(file.toString());
+        long size = Files.size(file);
+        for(long cut: new long[]{size - 1, size / 2, NeighbourGraph.HEADER_SIZE, NeighbourGraph.HEADER_SIZE - 1, 0}){
+            Path truncated = dir.resolve("truncated.nbg");
+            Files.copy(file, truncated, StandardCopyOption.REPLACE_EXISTING);
+            try(FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)){
+                channel.truncate(cut);
+            }
+            assertThrows(IOException.class, () -> NeighbourGraph.load(truncated.toString(), points, EPS), "file cut at " + cut + " of " + size + " bytes");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Checks that ParallelDBScan finds the clustering of the sequential DBScan.findClusters on the bundled clouds,
+ * for every index and thread count: same noise points, same cluster of every core point, and a border point
+ * may only be in another cluster if it has a core neighbour in both
+ * @author Aksh Babbar (300034042)
+ */
+class ParallelDBScanTest {
+
+    private static final double EPS = 1.2;
+    private static final int MIN_PTS = 10;
+    private static final String[] CLOUDS = {"Point_Cloud_1.csv", "Point_Cloud_2.csv", "Point_Cloud_3.csv"};
+    private static final Map<String, Reference> REFERENCES = new HashMap<String, Reference>();
+
+/**
+ * Sequential clustering of a cloud, computed once for all the cases of the cloud
+ */
+    private static final class Reference {
+        private PointCloud cloud;
+        private int[] labels; //cluster id of every point, 0 for noise
+        private boolean[] core;
+        private SpatialIndex index; //KD tree the core flags and the border checks are done with
+    }
+
+    static Stream<Arguments> cases(){
+        ArrayList<Arguments> cases = new ArrayList<Arguments>();
+        for(String cloud: CLOUDS){
+            for(DBScan.IndexType index: DBScan.IndexType.values()){
+                for(int threads: new int[]{1, 2, 4}){
+                    cases.add(Arguments.of(cloud, index, threads));
+                }
+            }
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest(name = "{0} {1} {2} thread(s)")
+    @MethodSource("cases")
+    void matchesSequentialClustering(String fileName, DBScan.IndexType indexType, int threads){
+        Reference reference = reference(fileName);
+        int[] labels = new ParallelDBScan(index(reference.cloud, indexType), reference.cloud.size(), EPS, MIN_PTS, threads).findClusters();
+        int clusters = 0;
+        for(int i = 0; i < labels.length; i++){
+            clusters = Math.max(clusters, labels[i]);
+            assertEquals(reference.labels[i] == 0, labels[i] == 0, "noise flag of point " + i);
+            if(reference.core[i]){
+                assertEquals(reference.labels[i], labels[i], "cluster of core point " + i);
+            }
+            else if(labels[i] != reference.labels[i]){
+                assertTrue(hasCoreNeighbourIn(reference, i, labels[i]), "border point " + i + " has no core neighbour in cluster " + labels[i]);
+                assertTrue(hasCoreNeighbourIn(reference, i, reference.labels[i]), "border point " + i + " has no core neighbour in cluster " + reference.labels[i]);
+            }
+        }
+        int expectedClusters = 0;
+        for(int label: reference.labels){
+            expectedClusters = Math.max(expectedClusters, label);
+        }
+        assertEquals(expectedClusters, clusters, "number of clusters");
+    }
+
+    private static boolean hasCoreNeighbourIn(Reference reference, int i, int cluster){
+        IntList neighbours = new IntList();
+        reference.index.rangeQuery(i, EPS, neighbours);
+        for(int k = 0; k < neighbours.size(); k++){
+            int j = neighbours.get(k);
+            if(reference.core[j] && reference.labels[j] == cluster){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SpatialIndex index(PointCloud cloud, DBScan.IndexType indexType){
+        switch(indexType){
+            case KD: return new NearestNeighboursKD(cloud.toPoints());
+            case FLAT_KD: return new NearestNeighboursFlatKD(cloud, false);
+            case GRID: return new NearestNeighboursGrid(cloud, EPS);
+            case BUCKET_KD: return new NearestNeighboursBucketKD(cloud, NearestNeighboursBucketKD.DEFAULT_BUCKET_SIZE, false);
+            default: throw new IllegalArgumentException("Unknown index: " + indexType);
+        }
+    }
+
+    private static synchronized Reference reference(String fileName){
+        Reference reference = REFERENCES.get(fileName);
+        if(reference != null){
+            return reference;
+        }
+        reference = new Reference();
+        reference.cloud = DBScan.readCloud("PointClouds/" + fileName, 2, 1);
+        DBScan db = new DBScan(reference.cloud);
+        db.setEps(EPS);
+        db.setMinPts(MIN_PTS);
+        db.findClusters();
+        ArrayList<Point3D> points = db.getPoints();
+        reference.labels = new int[points.size()];
+        for(int i = 0; i < points.size(); i++){
+            reference.labels[i] = points.get(i).getClusterId();
+        }
+        reference.index = new NearestNeighboursKD(reference.cloud.toPoints());
+        reference.core = new boolean[points.size()];
+        for(int i = 0; i < points.size(); i++){
+            reference.core[i] = reference.index.countWithin(i, EPS, MIN_PTS) >= MIN_PTS;
+        }
+        REFERENCES.put(fileName, reference);
+        return reference;
+    }
+}
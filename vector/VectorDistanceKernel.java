@@ -0,0 +1,94 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is the distance kernel written with the jdk.incubator.vector API, see DistanceKernel.
+ * The points are read SPECIES.length() at a time (the widest vectors of the CPU, e.g. 4 doubles with AVX2 and 8
+ * with AVX-512) and the remaining points of a run are done one by one. count and collect compare the vector of
+ * squared distances with the bound directly: count adds the lanes of the mask, collect skips the vectors without
+ * any lane set and only writes the others to the scratch array to take their neighbours. The mask is not turned
+ * into bits (VectorMask.toLong), which JDK 17 does not compile to an instruction and allocates for.
+ *
+ * It needs the incubator module, at compile time and at run time (--add-modules jdk.incubator.vector), so it is
+ * kept out of the root directory: the Maven build compiles it, javac *.java does not, and DistanceKernel
+ * only loads it when the module is there
+ * @author Aksh Babbar (300034042)
+ */
+class VectorDistanceKernel implements DistanceKernel.Kernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public void squaredDistances(double[] xs, double[] ys, double[] zs, int from, int to,
+            double x, double y, double z, double[] out){
+        int i = from;
+        int end = from + SPECIES.loopBound(to - from);
+        for(; i < end; i += SPECIES.length()){
+            distances(xs, ys, zs, i, x, y, z).intoArray(out, i - from);
+        }
+        for(; i < to; i++){
+            out[i - from] = distance(xs, ys, zs, i, x, y, z);
+        }
+    }
+
+    public int collect(double[] xs, double[] ys, double[] zs, int[] ids, int from, int to,
+            double x, double y, double z, double bound, double[] scratch, IntList neighbours){
+        int found = 0;
+        int i = from;
+        int end = from + SPECIES.loopBound(to - from);
+        for(; i < end; i += SPECIES.length()){
+            DoubleVector d = distances(xs, ys, zs, i, x, y, z);
+            if(!d.compare(VectorOperators.LE, bound).anyTrue()){ //most vectors of a leaf have no neighbour
+                continue;
+            }
+            d.intoArray(scratch, 0);
+            for(int lane = 0; lane < SPECIES.length(); lane++){
+                if(scratch[lane] <= bound){
+                    neighbours.add(ids[i + lane]);
+                    found++;
+                }
+            }
+        }
+        for(; i < to; i++){
+            if(distance(xs, ys, zs, i, x, y, z) <= bound){
+                neighbours.add(ids[i]);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    public int count(double[] xs, double[] ys, double[] zs, int from, int to,
+            double x, double y, double z, double bound, double[] scratch){
+        int found = 0;
+        int i = from;
+        int end = from + SPECIES.loopBound(to - from);
+        for(; i < end; i += SPECIES.length()){
+            VectorMask<Double> within = distances(xs, ys, zs, i, x, y, z).compare(VectorOperators.LE, bound);
+            found += within.trueCount();
+        }
+        for(; i < to; i++){
+            found += distance(xs, ys, zs, i, x, y, z) <= bound ? 1 : 0;
+        }
+        return found;
+    }
+
+/**
+ * Squared distances from (x, y, z) to the SPECIES.length() points from position i, the squares added in the
+ * same order as distance() so that both give the same values
+ */
+    private static DoubleVector distances(double[] xs, double[] ys, double[] zs, int i, double x, double y, double z){
+        DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, i).sub(x);
+        DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, i).sub(y);
+        DoubleVector dz = DoubleVector.fromArray(SPECIES, zs, i).sub(z);
+        return dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+    }
+
+    private static double distance(double[] xs, double[] ys, double[] zs, int i, double x, double y, double z){
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        double dz = zs[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}